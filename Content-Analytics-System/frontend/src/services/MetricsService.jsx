@@ -89,16 +89,34 @@ class MetricsService {
         }
     }
 
-    // For refreshing the metrics real-time
+    // For refreshing the metrics real-time (the server runs it as a job, this waits until it is done)
     async refreshPlatformMetrics(platformId) {
         try {
             const response = await api.post(`/metrics/platform/${platformId}/refresh`);
-            return response.data;
+            return await this.waitForRefreshJob(response.data.jobId);
         } catch (error) {
             console.error(`Error refreshing metrics for platform ${platformId}:`, error);
             throw error;
         }
     }
+
+    async getRefreshJob(jobId) {
+        const response = await api.get(`/metrics/jobs/${jobId}`);
+        return response.data;
+    }
+
+    // Polls the job progress until it is completed or failed
+    async waitForRefreshJob(jobId, intervalMs = 1000) {
+        let job = await this.getRefreshJob(jobId);
+        while (job.status === 'QUEUED' || job.status === 'RUNNING') {
+            await new Promise(resolve => setTimeout(resolve, intervalMs));
+            job = await this.getRefreshJob(jobId);
+        }
+        if (job.status === 'FAILED') {
+            throw new Error(job.error || 'Refresh job failed');
+        }
+        return job;
+    }
 }
 
 export default new MetricsService();
\ No newline at end of file
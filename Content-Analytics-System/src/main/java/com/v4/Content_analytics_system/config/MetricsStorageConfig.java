@@ -0,0 +1,94 @@
+package com.v4.Content_analytics_system.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+// Where metrics snapshots are stored. ContentMetrics resolves its collection through getCollectionName(),
+// so the repository, bulk writes and index setup all follow the layout picked here
+@Configuration("metricsStorageConfig")
+public class MetricsStorageConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsStorageConfig.class);
+
+    public static final String PLAIN = "plain";
+    public static final String TIME_SERIES = "time-series";
+    public static final String BUCKET = "bucket";
+
+    public static final String PLAIN_COLLECTION = "content_metrics";
+    public static final String TIME_SERIES_COLLECTION = "content_metrics_ts";
+    public static final String BUCKET_COLLECTION = "content_metrics_buckets";
+
+    // Time series meta field: { userId, platform, platformContentId }, so every bucket holds one content item
+    public static final String META_FIELD = "meta";
+    public static final String TIME_FIELD = "retrievalTimestamp";
+
+    private final MongoTemplate mongoTemplate;
+
+    // plain = one document per snapshot in content_metrics, time-series = native time series collection,
+    // bucket = one document per content item and day in content_metrics_buckets (see MetricsBucketStore)
+    @Value("${metrics.storage.layout:plain}")
+    private String layout;
+
+    // Bucket span hint for the time series collection (seconds / minutes / hours), snapshots come minutes to hours apart
+    @Value("${metrics.storage.time-series.granularity:hours}")
+    private String granularity;
+
+    public MetricsStorageConfig(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Has to exist before the first insert, otherwise Mongo creates a plain collection under that name
+    @PostConstruct
+    public void createTimeSeriesCollection() {
+        if (isBuckets()) {
+            log.info("Metrics stored in {} (bucket layout)", BUCKET_COLLECTION);
+            return;
+        }
+        if (!isTimeSeries()) {
+            log.info("Metrics stored in {} (plain layout)", PLAIN_COLLECTION);
+            return;
+        }
+
+        if (!mongoTemplate.collectionExists(TIME_SERIES_COLLECTION)) {
+            mongoTemplate.createCollection(TIME_SERIES_COLLECTION, CollectionOptions.empty().timeSeries(
+                    CollectionOptions.TimeSeriesOptions.timeSeries(TIME_FIELD)
+                            .metaField(META_FIELD)
+                            .granularity(Granularity.valueOf(granularity.toUpperCase()))));
+            log.info("Created time series collection {} ({} granularity)", TIME_SERIES_COLLECTION, granularity);
+        }
+        log.info("Metrics stored in {} (time series layout)", TIME_SERIES_COLLECTION);
+    }
+
+    public boolean isTimeSeries() {
+        return isTimeSeries(layout);
+    }
+
+    // For the components that only see the property (and are also built by hand in benchmarks)
+    public static boolean isTimeSeries(String layout) {
+        return TIME_SERIES.equalsIgnoreCase(layout);
+    }
+
+    public boolean isBuckets() {
+        return BUCKET.equalsIgnoreCase(layout);
+    }
+
+    // Only the plain layout extends the previous document for an unchanged snapshot
+    public static boolean foldsUnchangedSnapshots(String layout) {
+        return layout == null || PLAIN.equalsIgnoreCase(layout);
+    }
+
+    // Collection of the one-document-per-snapshot layouts (the bucket layout leaves content_metrics as it was)
+    public String getCollectionName() {
+        return isTimeSeries() ? TIME_SERIES_COLLECTION : PLAIN_COLLECTION;
+    }
+
+    public String getLayout() {
+        return layout;
+    }
+}
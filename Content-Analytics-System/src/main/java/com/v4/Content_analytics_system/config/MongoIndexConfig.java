@@ -0,0 +1,171 @@
+package com.v4.Content_analytics_system.config;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsBucket;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Indexes for the content_metrics query patterns (and the day buckets in that layout), created at startup and checked
+// against what the collection really has
+@Configuration
+public class MongoIndexConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsStorageConfig storageConfig;
+
+    // false = only check and report, for databases where indexes are rolled out by hand
+    @Value("${metrics.mongo.create-indexes:true}")
+    private boolean createIndexes;
+
+    @Value("${metrics.rollups.enabled:true}")
+    private boolean rollupsEnabled;
+
+    // Storage config first: in the time series layout the collection has to be created as one before any index goes on it
+    public MongoIndexConfig(MongoTemplate mongoTemplate, MetricsStorageConfig storageConfig) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageConfig = storageConfig;
+    }
+
+    // One per query shape of IContentMetricsRepository, equality fields first and the sort / range field last.
+    // Queries on userId alone (sums, platform comparison, top 5) use the prefix of the userId ones.
+    // The same keys work as secondary indexes on the time series collection (the top level fields are kept there)
+    public static List<Index> contentMetricsIndexes() {
+        return List.of(
+                // Snapshot history of one item, latest snapshot, snapshot before a given time
+                new Index().on("platformContentId", Sort.Direction.ASC).on("retrievalTimestamp", Sort.Direction.DESC)
+                        .named("platformContentId_retrievalTimestamp"),
+                // Dashboard time series since a date, user metrics in a range
+                new Index().on("userId", Sort.Direction.ASC).on("retrievalTimestamp", Sort.Direction.ASC)
+                        .named("userId_retrievalTimestamp"),
+                // Per platform metrics of a user and their time series
+                new Index().on("userId", Sort.Direction.ASC).on("platform", Sort.Direction.ASC)
+                        .on("retrievalTimestamp", Sort.Direction.ASC)
+                        .named("userId_platform_retrievalTimestamp"),
+                // Platform wide view totals
+                new Index().on("platform", Sort.Direction.ASC).on("retrievalTimestamp", Sort.Direction.ASC)
+                        .named("platform_retrievalTimestamp"),
+                // Everything retrieved in a time range
+                new Index().on("retrievalTimestamp", Sort.Direction.ASC)
+                        .named("retrievalTimestamp"));
+    }
+
+    // MetricsBucketStore reads: an item's buckets by time (latest / before a time / history), a user's days per platform
+    // or over all platforms, and platform wide totals
+    public static List<Index> bucketIndexes() {
+        return List.of(
+                new Index().on("platformContentId", Sort.Direction.ASC).on("lastAt", Sort.Direction.DESC)
+                        .named("platformContentId_lastAt"),
+                new Index().on("platformContentId", Sort.Direction.ASC).on("firstAt", Sort.Direction.DESC)
+                        .named("platformContentId_firstAt"),
+                new Index().on("userId", Sort.Direction.ASC).on("platform", Sort.Direction.ASC).on("day", Sort.Direction.ASC)
+                        .named("userId_platform_day"),
+                new Index().on("userId", Sort.Direction.ASC).on("day", Sort.Direction.ASC)
+                        .named("userId_day"),
+                new Index().on("platform", Sort.Direction.ASC)
+                        .named("platform"));
+    }
+
+    // MetricsRollupService: a user's / platform's / content item's periods from a date, and whole days for the rebuilds
+    public static List<Index> rollupIndexes() {
+        return List.of(
+                new Index().on("grain", Sort.Direction.ASC).on("level", Sort.Direction.ASC).on("userId", Sort.Direction.ASC)
+                        .on("platform", Sort.Direction.ASC).on("platformContentId", Sort.Direction.ASC)
+                        .on("period", Sort.Direction.ASC)
+                        .named("grain_level_userId_platform_platformContentId_period"),
+                new Index().on("grain", Sort.Direction.ASC).on("period", Sort.Direction.ASC)
+                        .named("grain_period"),
+                // Compacted history of one content item, which only knows its platformContentId
+                new Index().on("grain", Sort.Direction.ASC).on("level", Sort.Direction.ASC)
+                        .on("platformContentId", Sort.Direction.ASC).on("period", Sort.Direction.ASC)
+                        .named("grain_level_platformContentId_period"));
+    }
+
+    @PostConstruct
+    public void ensureContentMetricsIndexes() {
+        ensureIndexes(mongoTemplate.indexOps(ContentMetrics.class), contentMetricsIndexes(), storageConfig.getCollectionName());
+        if (storageConfig.isBuckets()) {
+            ensureIndexes(mongoTemplate.indexOps(ContentMetricsBucket.class), bucketIndexes(), MetricsStorageConfig.BUCKET_COLLECTION);
+        }
+        if (rollupsEnabled) {
+            ensureIndexes(mongoTemplate.indexOps(ContentMetricsRollup.class), rollupIndexes(),
+                    mongoTemplate.getCollectionName(ContentMetricsRollup.class));
+        }
+    }
+
+    private void ensureIndexes(IndexOperations indexOps, List<Index> indexes, String collection) {
+        if (createIndexes) {
+            for (Index index : indexes) {
+                try {
+                    indexOps.ensureIndex(index);
+                } catch (Exception e) {
+                    // Same keys under another name, or Mongo down: the check below says what is missing
+                    log.error("Could not create index {} on {}: {}", index.getIndexKeys().toJson(), collection, e.getMessage());
+                }
+            }
+        }
+
+        List<String> missing = missingIndexes(indexOps, indexes);
+        if (missing.isEmpty()) {
+            log.info("All {} {} indexes present", indexes.size(), collection);
+        } else {
+            log.warn("{} is missing {} indexes, these queries will scan the collection: {}",
+                    collection, missing.size(), missing);
+        }
+    }
+
+    public static List<String> missingIndexes(IndexOperations indexOps) {
+        return missingIndexes(indexOps, contentMetricsIndexes());
+    }
+
+    // Compared by key pattern, the index name doesn't matter
+    public static List<String> missingIndexes(IndexOperations indexOps, List<Index> indexes) {
+        Set<String> existing = indexOps.getIndexInfo().stream()
+                .map(MongoIndexConfig::keyPattern)
+                .collect(Collectors.toSet());
+
+        List<String> missing = new ArrayList<>();
+        for (Index index : indexes) {
+            if (!existing.contains(keyPattern(index))) {
+                missing.add(index.getIndexKeys().toJson());
+            }
+        }
+        return missing;
+    }
+
+    private static String keyPattern(Index index) {
+        return index.getIndexKeys().entrySet().stream()
+                .map(key -> key.getKey() + ":" + key.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    private static String keyPattern(IndexInfo info) {
+        return info.getIndexFields().stream()
+                .map(MongoIndexConfig::keyOf)
+                .collect(Collectors.joining(","));
+    }
+
+    private static String keyOf(IndexField field) {
+        Sort.Direction direction = field.getDirection();
+        if (direction == null) {
+            return field.getKey() + ":special";
+        }
+        return field.getKey() + ":" + (direction == Sort.Direction.ASC ? 1 : -1);
+    }
+}
@@ -1,14 +1,110 @@
 package com.v4.Content_analytics_system.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+
 @Configuration
 public class RestTemplateConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(RestTemplateConfig.class);
+
+    // Platforms that get their own per-route connection limit (uses <platform>.api.base-url)
+    private static final String[] PLATFORMS = {"youtube", "instagram", "tiktok"};
+
+    @Value("${platform.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${platform.http.max-connections-per-route:20}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${platform.http.connect-timeout-ms:3000}")
+    private long connectTimeoutMs;
+
+    @Value("${platform.http.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+
+    // How long a caller may wait for a free pooled connection
+    @Value("${platform.http.pool-wait-timeout-ms:5000}")
+    private long poolWaitTimeoutMs;
+
+    @Value("${platform.http.idle-timeout-seconds:30}")
+    private long idleTimeoutSeconds;
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public PoolingHttpClientConnectionManager platformConnectionManager(Environment environment) {
+        PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+
+        // platform.http.<platform>.max-connections overrides the per-route default for that API host
+        for (String platform : PLATFORMS) {
+            Integer perRoute = environment.getProperty("platform.http." + platform + ".max-connections", Integer.class);
+            String baseUrl = environment.getProperty(platform + ".api.base-url");
+            if (perRoute != null && baseUrl != null) {
+                manager.setMaxPerRoute(routeFor(baseUrl), perRoute);
+                log.info("HTTP pool: up to {} connections for {}", perRoute, baseUrl);
+            }
+        }
+
+        return manager;
+    }
+
+    // Keep-alive pooled client; gzip/deflate is on by default (Accept-Encoding + transparent decompression)
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient platformHttpClient(PoolingHttpClientConnectionManager platformConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(platformConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolWaitTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleTimeoutSeconds))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient platformHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(platformHttpClient));
+    }
+
+    // Pool usage (leased / available / pending / max) under httpcomponents.httpclient.pool.*
+    @Bean
+    public MeterBinder platformHttpPoolMetrics(PoolingHttpClientConnectionManager platformConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(platformConnectionManager, "platform-api");
+    }
+
+    // Route as the client will build it, port spelled out so the pool keys match
+    private HttpRoute routeFor(String baseUrl) {
+        URI uri = URI.create(baseUrl);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(uri.getScheme(), uri.getHost(), port), null, secure);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.v4.Content_analytics_system.config;
+
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// The @Scheduled jobs share the default scheduler (spring.task.scheduling.*). The lease heartbeat gets a thread
+// of its own: a refresh run longer than the lease TTL would otherwise hold it up until the leases run out.
+// The rollup catch-up and the retention compaction run for minutes (and pause between batches), they share
+// another one so they don't hold up the refresh ticks either
+@Configuration
+public class SchedulingConfig {
+
+    public static final String LEASE_SCHEDULER = "leaseHeartbeatScheduler";
+    public static final String MAINTENANCE_SCHEDULER = "metricsMaintenanceScheduler";
+
+    // Same scheduler Spring Boot would set up, declared here because the ones below make it back off
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean(name = LEASE_SCHEDULER)
+    public ThreadPoolTaskScheduler leaseHeartbeatScheduler() {
+        return singleThread("lease-heartbeat-");
+    }
+
+    @Bean(name = MAINTENANCE_SCHEDULER)
+    public ThreadPoolTaskScheduler metricsMaintenanceScheduler() {
+        return singleThread("metrics-maintenance-");
+    }
+
+    private static ThreadPoolTaskScheduler singleThread(String threadNamePrefix) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix(threadNamePrefix);
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+}
@@ -2,6 +2,7 @@ package com.v4.Content_analytics_system.config;
 
 import com.v4.Content_analytics_system.security.JwtAuthenticationFilter;
 import com.v4.Content_analytics_system.security.JwtTokenProvider;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -42,6 +43,10 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers("/api/auth/**").permitAll()
+                        // Runs of every node with their node ids, operators only (ROLE_ADMIN is granted in the users table)
+                        .requestMatchers("/api/metrics/refresh-runs").hasRole("ADMIN")
+                        // Async dispatches finish responses that were already authorized (SSE progress streams)
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session ->
@@ -0,0 +1,49 @@
+package com.v4.Content_analytics_system.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+// Non-blocking client for the reactive ingestion mode, a few event-loop threads serve every connection
+@Configuration
+public class WebClientConfig {
+
+    @Value("${platform.http.reactive.max-connections:500}")
+    private int maxConnections;
+
+    @Value("${platform.http.connect-timeout-ms:3000}")
+    private int connectTimeoutMs;
+
+    @Value("${platform.http.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+
+    @Value("${platform.http.idle-timeout-seconds:30}")
+    private long idleTimeoutSeconds;
+
+    @Bean
+    public WebClient platformWebClient(WebClient.Builder builder) {
+        ConnectionProvider provider = ConnectionProvider.builder("platform-api")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)     // waiting is bounded upstream by the flatMap concurrency
+                .maxIdleTime(Duration.ofSeconds(idleTimeoutSeconds))
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs))
+                .compress(true);
+
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(4 * 1024 * 1024))
+                .build();
+    }
+}
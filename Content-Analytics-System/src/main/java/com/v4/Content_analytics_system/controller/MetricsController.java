@@ -1,28 +1,39 @@
 package com.v4.Content_analytics_system.controller;
 
 import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshRun;
 import com.v4.Content_analytics_system.model.entity.sql.Content;
 import com.v4.Content_analytics_system.model.entity.sql.Platform;
 import com.v4.Content_analytics_system.model.entity.sql.User;
-import com.v4.Content_analytics_system.repository.mongo.IContentMetricsRepository;
 import com.v4.Content_analytics_system.repository.sql.IContentRepository;
 import com.v4.Content_analytics_system.repository.sql.IPlatformRepository;
+import com.v4.Content_analytics_system.scheduler.RefreshCheckpointStore;
+import com.v4.Content_analytics_system.service.ContentMetricsHistory;
 import com.v4.Content_analytics_system.service.ContentService;
+import com.v4.Content_analytics_system.service.MetricsRollupService;
 import com.v4.Content_analytics_system.service.MetricsService;
 import com.v4.Content_analytics_system.service.PlatformService;
+import com.v4.Content_analytics_system.service.RefreshJob;
+import com.v4.Content_analytics_system.service.RefreshJobService;
+import com.v4.Content_analytics_system.service.SingleFlightRefresher;
 import com.v4.Content_analytics_system.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/metrics")
@@ -31,27 +42,37 @@ public class MetricsController {
     private final Logger log = LoggerFactory.getLogger(MetricsController.class);
 
     private final UserService userService;
-    private final IContentMetricsRepository metricsRepository;
+    private final ContentMetricsHistory metricsHistory;
     private final PlatformService platformService;
     private final IContentRepository contentRepository;
     private final MetricsService metricsService;
     private final IPlatformRepository platformRepository;
     private final ContentService contentService;
+    private final RefreshCheckpointStore checkpoints;
+    private final SingleFlightRefresher singleFlight;
+    private final RefreshJobService refreshJobService;
+    private final MetricsRollupService rollups;
 
     @Autowired
     public MetricsController(UserService userService,
-                             IContentMetricsRepository metricsRepository,
+                             ContentMetricsHistory metricsHistory,
                              PlatformService platformService,
                              IContentRepository contentRepository,
                              MetricsService metricsService,
-                             IPlatformRepository platformRepository, ContentService contentService) {
+                             IPlatformRepository platformRepository, ContentService contentService,
+                             RefreshCheckpointStore checkpoints, SingleFlightRefresher singleFlight,
+                             RefreshJobService refreshJobService, MetricsRollupService rollups) {
         this.userService = userService;
-        this.metricsRepository = metricsRepository;
+        this.metricsHistory = metricsHistory;
         this.platformService = platformService;
         this.contentRepository = contentRepository;
         this.metricsService = metricsService;
         this.platformRepository = platformRepository;
         this.contentService = contentService;
+        this.checkpoints = checkpoints;
+        this.singleFlight = singleFlight;
+        this.refreshJobService = refreshJobService;
+        this.rollups = rollups;
     }
 
 
@@ -91,15 +112,17 @@ public class MetricsController {
 
         try {
             // Find all content for this user to get actual platform publish dates
-            List<Content> userContents = contentRepository.findByUserId(userId);
+            List<Content> userContents = contentRepository.findByUserIdWithPlatformAndUser(userId);
 
             // Find earliest platform publish date across all content
             LocalDateTime earliestPublishDate = LocalDateTime.now().minusDays(30);
 
+            // Latest metrics of all the user's content in one query
+            Map<Long, ContentMetrics> latestMetrics = metricsHistory.findLatest(userContents);
+
             for (Content content : userContents) {
                 // Try to get published date from MongoDB metrics (fetched from platforms)
-                Optional<ContentMetrics> metrics = metricsRepository
-                        .findTopByPlatformContentIdOrderByRetrievalTimestampDesc(content.getPlatformContentId());
+                Optional<ContentMetrics> metrics = Optional.ofNullable(latestMetrics.get(content.getId()));
 
                 if (metrics.isPresent() && metrics.get().getPlatformSpecMetrics() != null) {
                     try {
@@ -128,7 +151,7 @@ public class MetricsController {
             }
 
             // Get time series data from MongoDB
-            List<Map<String, Object>> mongoData = metricsRepository.getTimeSeriesData(userId, earliestPublishDate);
+            List<Map<String, Object>> mongoData = metricsHistory.getTimeSeriesData(userId, earliestPublishDate);
             log.info("Found {} data points from MongoDB", mongoData.size());
 
             // If we don't have enough data, generate a complete time series
@@ -148,7 +171,7 @@ public class MetricsController {
         List<Map<String, Object>> result = new ArrayList<>();
 
         // Get any existing metrics data
-        List<Map<String, Object>> existingData = metricsRepository.getTimeSeriesData(userId, publishDate);
+        List<Map<String, Object>> existingData = metricsHistory.getTimeSeriesData(userId, publishDate);
 
         // Create a map of existing data points by date string
         Map<String, Map<String, Object>> dataByDate = new HashMap<>();
@@ -214,15 +237,15 @@ public class MetricsController {
                 metrics.put("platform", platform.getPlatformName());
 
                 // First try to get metrics from MongoDB
-                List<ContentMetrics> platformData = metricsRepository.findByUserIdAndPlatform(
+                List<ContentMetrics> platformData = metricsHistory.findByUserIdAndPlatform(
                         userId, platform.getPlatformName());
 
                 if (!platformData.isEmpty()) {
                     // Calculate average engagement rate from real data
+                    long samples = platformData.stream().mapToLong(ContentMetrics::sampleWeight).sum();
                     double engagementRate = platformData.stream()
-                            .mapToDouble(m -> m.getEngagementRate() != null ? m.getEngagementRate() : 0)
-                            .average()
-                            .orElse(0.0);
+                            .mapToDouble(m -> (m.getEngagementRate() != null ? m.getEngagementRate() : 0) * m.sampleWeight())
+                            .sum() / samples;
 
                     metrics.put("engagementRate", engagementRate);
                 } else {
@@ -283,7 +306,7 @@ public class MetricsController {
         try {
             Optional<Content> contentOpt = contentRepository.findById(contentId);
             if (contentOpt.isPresent()) {
-                ContentMetrics metrics = metricsService.fetchMetricsForContent(contentOpt.get());
+                ContentMetrics metrics = singleFlight.refresh(contentOpt.get());
                 return ResponseEntity.ok(metrics);
             } else {
                 return ResponseEntity.notFound().build();
@@ -333,44 +356,41 @@ public class MetricsController {
     }
 
 
-    // for refreshing the metrics
+    // for refreshing the metrics: runs as a background job, poll /jobs/{jobId} or stream /jobs/{jobId}/events
     @PostMapping("/platform/{platformId}/refresh")
-    public ResponseEntity<?> refreshPlatformMetrics(@PathVariable Long platformId, Authentication authentication) {
+    public ResponseEntity<Map<String, Object>> refreshPlatformMetrics(@PathVariable Long platformId, Authentication authentication) {
         Long userId = getUserId(authentication);
+        log.info("Refreshing metrics for platform ID: {}, User ID: {}", platformId, userId);
+        return submitRefreshJob(() -> refreshJobService.submitPlatformRefresh(userId, platformId));
+    }
 
-        try {
-            log.info("Refreshing metrics for platform ID: {}, User ID: {}", platformId, userId);
-            List<Content> contents = contentRepository.findByPlatformIdAndUserId(platformId, userId);
-            log.info("Found {} content items to refresh", contents.size());
-
-            int successCount = 0;
-            int errorCount = 0;
-
-            for (Content content : contents) {
-                try {
-                    ContentMetrics metrics = metricsService.fetchMetricsForContent(content);
-                    successCount++;
-                    log.info("Successfully refreshed metrics for content ID: {}", content.getId());
-                } catch (Exception e) {
-                    errorCount++;
-                    log.error("Error refreshing metrics for content {}: {}", content.getId(), e.getMessage());
-                }
-            }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", String.format("Refreshed metrics for %d content items (%d failures)", successCount, errorCount));
-            response.put("successCount", successCount);
-            response.put("errorCount", errorCount);
+    // Every content item of the user, as a background job
+    @PostMapping("/refresh")
+    public ResponseEntity<Map<String, Object>> refreshAllMetrics(Authentication authentication) {
+        Long userId = getUserId(authentication);
+        log.info("Refreshing all metrics of user ID: {}", userId);
+        return submitRefreshJob(() -> refreshJobService.submitUserRefresh(userId));
+    }
 
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error refreshing platform metrics: {}", e.getMessage(), e);
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("success", false);
-            errorResponse.put("message", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
-        }
+
+    // Progress of a refresh job: completed, failed and remaining items
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getRefreshJob(@PathVariable String jobId, Authentication authentication) {
+        Long userId = getUserId(authentication);
+        return refreshJobService.findJob(jobId, userId)
+                .map(job -> ResponseEntity.ok(job.toProgress()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+
+    // Same progress as server-sent events ("progress" while running, one "done" at the end)
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamRefreshJob(@PathVariable String jobId, Authentication authentication) {
+        Long userId = getUserId(authentication);
+        return refreshJobService.findJob(jobId, userId)
+                .map(job -> ResponseEntity.ok(refreshJobService.subscribe(job)))
+                .orElse(ResponseEntity.notFound().build());
     }
 
 
@@ -392,8 +412,8 @@ public class MetricsController {
             }
 
             // Getting all metrics for this content
-            List<ContentMetrics> metrics = metricsRepository
-                    .findByPlatformContentId(content.getPlatformContentId());
+            List<ContentMetrics> metrics = metricsHistory
+                    .findByPlatformContentIdOrderByRetrievalTimestampAsc(content.getPlatformContentId());
 
             // Calc averages
             Map<String, Object> avg = new HashMap<>();
@@ -447,6 +467,72 @@ public class MetricsController {
     }
 
 
+    // Daily or weekly (grain=week) totals from the rollups, for the whole account, one platform or one content item
+    @GetMapping("/rollups")
+    public ResponseEntity<List<Map<String, Object>>> getRollupSeries(
+            @RequestParam(defaultValue = "day") String grain,
+            @RequestParam(required = false) Long platformId,
+            @RequestParam(required = false) Long contentId,
+            @RequestParam(defaultValue = "30") int days,
+            Authentication authentication) {
+
+        Long userId = getUserId(authentication);
+        String platform = null;
+        String platformContentId = null;
+
+        if (contentId != null) {
+            Optional<Content> content = contentRepository.findById(contentId);
+            if (content.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            if (!content.get().getUser().getId().equals(userId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            platform = content.get().getPlatform().getPlatformName();
+            platformContentId = content.get().getPlatformContentId();
+        } else if (platformId != null) {
+            Optional<Platform> platformOpt = platformRepository.findById(platformId);
+            if (platformOpt.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            platform = platformOpt.get().getPlatformName();
+        }
+
+        MetricsRollupService.Scope scope = new MetricsRollupService.Scope(userId, platform, platformContentId);
+        LocalDateTime start = LocalDateTime.now().minusDays(Math.max(1, Math.min(days, 730)));
+        return ResponseEntity.ok(MetricsRollupService.WEEK.equalsIgnoreCase(grain)
+                ? rollups.getWeeklySeries(scope, start)
+                : rollups.getDailySeries(scope, start));
+    }
+
+
+    // History of finished full refresh runs (counts, throughput, how often each was resumed), newest first. Admins only
+    @GetMapping("/refresh-runs")
+    public ResponseEntity<List<RefreshRun>> getRefreshRuns(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(checkpoints.recentRuns(Math.min(limit, 200)));
+    }
+
+
+    // HELPER: 202 with the job id, 503 when the job queue is full
+    private ResponseEntity<Map<String, Object>> submitRefreshJob(Supplier<RefreshJob> submit) {
+        try {
+            RefreshJob job = submit.get();
+
+            Map<String, Object> response = new HashMap<>(job.toProgress());
+            response.put("success", true);
+            response.put("message", "Refresh job " + job.getStatus().name().toLowerCase());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/metrics/jobs/" + job.getJobId()))
+                    .body(response);
+        } catch (RejectedExecutionException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", "Too many refresh jobs waiting, try again later");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
+        }
+    }
+
+
     // HELPER for getting the user id from the authentication
     private Long getUserId(Authentication authentication) {
         if (authentication != null) {
@@ -0,0 +1,16 @@
+package com.v4.Content_analytics_system.exception;
+
+// Platform answered with a quota / rate limit error (429, or YouTube's 403 quotaExceeded)
+public class PlatformThrottledException extends MetricsFetchException {
+
+    private final String platform;
+
+    public PlatformThrottledException(String platform, String message) {
+        super(message);
+        this.platform = platform;
+    }
+
+    public String getPlatform() {
+        return platform;
+    }
+}
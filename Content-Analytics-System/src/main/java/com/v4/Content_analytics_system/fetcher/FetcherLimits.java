@@ -0,0 +1,7 @@
+package com.v4.Content_analytics_system.fetcher;
+
+// Rate and concurrency a fetcher declares for its platform, null fields fall back to the metrics.ratelimit.default.* settings
+public record FetcherLimits(Double permitsPerSecond, Integer burst, Integer maxConcurrency) {
+
+    public static final FetcherLimits UNDECLARED = new FetcherLimits(null, null, null);
+}
@@ -0,0 +1,65 @@
+package com.v4.Content_analytics_system.fetcher;
+
+import com.v4.Content_analytics_system.exception.MetricsFetchException;
+import com.v4.Content_analytics_system.ratelimit.PlatformThrottle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Every PlatformMetricsFetcher bean by lower case platform name. Hands their declared limits to PlatformThrottle
+// and works out the batch size to use: the declared max, lowered by metrics.refresh.<platform>.batch-size
+@Component
+public class FetcherRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(FetcherRegistry.class);
+
+    private final Map<String, PlatformMetricsFetcher> fetchers = new HashMap<>();
+    private final Map<String, Integer> batchSizes = new HashMap<>();
+
+    public FetcherRegistry(List<PlatformMetricsFetcher> fetcherBeans, PlatformThrottle platformThrottle, Environment environment) {
+        for (PlatformMetricsFetcher fetcher : fetcherBeans) {
+            String key = fetcher.platform().toLowerCase();
+            PlatformMetricsFetcher previous = fetchers.put(key, fetcher);
+            if (previous != null) {
+                throw new IllegalStateException("Two fetchers for platform " + key + ": "
+                        + previous.getClass().getSimpleName() + " and " + fetcher.getClass().getSimpleName());
+            }
+
+            int maxBatch = Math.max(1, fetcher.maxBatchSize());
+            int configured = environment.getProperty("metrics.refresh." + key + ".batch-size", Integer.class, maxBatch);
+            batchSizes.put(key, Math.max(1, Math.min(configured, maxBatch)));
+
+            platformThrottle.declare(key, fetcher.limits());
+            log.info("Metrics fetcher for {}: batches of {}, conditional requests {}",
+                    key, batchSizes.get(key), fetcher.supportsConditionalRequests() ? "supported" : "not supported");
+        }
+    }
+
+    public PlatformMetricsFetcher fetcherFor(String platform) {
+        PlatformMetricsFetcher fetcher = platform != null ? fetchers.get(platform.toLowerCase()) : null;
+        if (fetcher == null) {
+            throw new MetricsFetchException("Unsupported platform: " + platform);
+        }
+        return fetcher;
+    }
+
+    // Items per call for this platform, 1 for platforms without a fetcher (they fail one by one)
+    public int batchSize(String platform) {
+        return platform != null ? batchSizes.getOrDefault(platform.toLowerCase(), 1) : 1;
+    }
+
+    // Largest batch any platform uses, the engines size their in-flight window to fit one
+    public int maxBatchSize() {
+        return batchSizes.values().stream().mapToInt(Integer::intValue).max().orElse(1);
+    }
+
+    public Set<String> platforms() {
+        return fetchers.keySet();
+    }
+}
@@ -0,0 +1,101 @@
+package com.v4.Content_analytics_system.fetcher;
+
+import com.v4.Content_analytics_system.model.DTO.InstagramMediaResponse;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Instagram Graph API, one media object per call
+@Component
+public class InstagramMetricsFetcher implements PlatformMetricsFetcher {
+
+    private final RestTemplate restTemplate;
+
+    @Value("${instagram.api.base-url}")
+    private String instagramBaseUrl;
+
+    @Value("${instagram.api.access-token:}")
+    private String instagramAccessToken;
+
+    public InstagramMetricsFetcher(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String platform() {
+        return "Instagram";
+    }
+
+    @Override
+    public FetcherLimits limits() {
+        return new FetcherLimits(10.0, 10, 8);
+    }
+
+    @Override
+    public Map<String, ContentMetrics> fetch(List<Content> contents) {
+        Map<String, ContentMetrics> metricsById = new HashMap<>();
+        for (Content content : contents) {
+            ContentMetrics metrics = fetchMedia(content.getPlatformContentId());
+            if (metrics != null) {
+                metricsById.put(content.getPlatformContentId(), metrics);
+            }
+        }
+        return metricsById;
+    }
+
+    private ContentMetrics fetchMedia(String contentId) {
+
+        // No access token configured yet: placeholder numbers
+        if (instagramAccessToken == null || instagramAccessToken.isBlank()) {
+            return placeholderMetrics();
+        }
+
+        InstagramMediaResponse media;
+        try {
+            media = restTemplate.getForObject(String.format(
+                    "%s/%s?fields=id,like_count,comments_count,timestamp,insights.metric(impressions,reach,saved)&access_token=%s",
+                    instagramBaseUrl, contentId, instagramAccessToken), InstagramMediaResponse.class);
+        } catch (HttpStatusCodeException e) {
+            throw PlatformMetricsFetcher.callError("Instagram", e);
+        }
+        if (media == null) {
+            return null;
+        }
+
+        ContentMetrics metrics = new ContentMetrics();
+        metrics.setViews(0L); // Instagram doesn't provide view counts for all content types
+        metrics.setLikes(media.likeCount() != null ? media.likeCount() : 0L);
+        metrics.setComments(media.commentsCount() != null ? media.commentsCount() : 0L);
+
+        Map<String, Object> platformSpecific = new HashMap<>();
+        platformSpecific.put("impressions", media.insight("impressions"));
+        platformSpecific.put("reach", media.insight("reach"));
+        platformSpecific.put("saves", media.insight("saved"));
+        platformSpecific.put("publishedAt", media.timestamp());
+        metrics.setPlatformSpecMetrics(platformSpecific);
+
+        return metrics;
+    }
+
+    private ContentMetrics placeholderMetrics() {
+        ContentMetrics metrics = new ContentMetrics();
+        metrics.setViews(0L);
+        metrics.setLikes((long)(Math.random() * 100 + 10));
+        metrics.setComments((long)(Math.random() * 20 + 5));
+
+        Map<String, Object> platformSpecific = new HashMap<>();
+        platformSpecific.put("impressions", (long)(Math.random() * 500 + 50));
+        platformSpecific.put("reach", (long)(Math.random() * 300 + 30));
+        platformSpecific.put("saves", (long)(Math.random() * 20 + 2));
+        metrics.setPlatformSpecMetrics(platformSpecific);
+
+        return metrics;
+    }
+}
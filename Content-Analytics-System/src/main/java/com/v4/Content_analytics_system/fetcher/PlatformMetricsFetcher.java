@@ -0,0 +1,47 @@
+package com.v4.Content_analytics_system.fetcher;
+
+import com.v4.Content_analytics_system.exception.MetricsFetchException;
+import com.v4.Content_analytics_system.exception.PlatformThrottledException;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.util.List;
+import java.util.Map;
+
+// One platform's metrics API. Every bean of this type is picked up by FetcherRegistry under platform(),
+// so a new platform is a new fetcher bean, MetricsService and the engines plan the calls from what it declares
+public interface PlatformMetricsFetcher {
+
+    // Matched against Platform.platformName, ignoring case
+    String platform();
+
+    // Most items one call can take, 1 = no batching
+    default int maxBatchSize() {
+        return 1;
+    }
+
+    // Limits the platform is known to allow, metrics.ratelimit.<platform>.* / metrics.refresh.concurrency.<platform> still win
+    default FetcherLimits limits() {
+        return FetcherLimits.UNDECLARED;
+    }
+
+    // The API answers If-None-Match / If-Modified-Since with a 304
+    default boolean supportsConditionalRequests() {
+        return false;
+    }
+
+    // One platform call for up to maxBatchSize items. Raw numbers (MetricsService fills in the common fields),
+    // keyed by platform content id; an item missing from the map was not found.
+    // A failure of the whole call throws, throttling as PlatformThrottledException
+    Map<String, ContentMetrics> fetch(List<Content> contents);
+
+    // 429 means slow down, anything else is a plain failed fetch
+    static MetricsFetchException callError(String platform, HttpStatusCodeException e) {
+        int status = e.getStatusCode().value();
+        if (status == 429) {
+            return new PlatformThrottledException(platform, platform + " API throttled the request (HTTP 429)");
+        }
+        return new MetricsFetchException("Failed to fetch " + platform + " metrics: HTTP " + status);
+    }
+}
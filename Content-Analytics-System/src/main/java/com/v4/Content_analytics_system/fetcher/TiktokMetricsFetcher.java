@@ -0,0 +1,119 @@
+package com.v4.Content_analytics_system.fetcher;
+
+import com.v4.Content_analytics_system.model.DTO.TiktokVideoQueryResponse;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// TikTok Display API video/query, up to 20 video ids per call
+@Component
+public class TiktokMetricsFetcher implements PlatformMetricsFetcher {
+
+    // filters.video_ids takes at most 20 ids
+    public static final int MAX_BATCH = 20;
+
+    private final RestTemplate restTemplate;
+
+    @Value("${tiktok.api.base-url}")
+    private String tiktokBaseUrl;
+
+    @Value("${tiktok.api.access-token:}")
+    private String tiktokAccessToken;
+
+    public TiktokMetricsFetcher(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String platform() {
+        return "TikTok";
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return MAX_BATCH;
+    }
+
+    @Override
+    public FetcherLimits limits() {
+        return new FetcherLimits(10.0, 10, 8);
+    }
+
+    @Override
+    public Map<String, ContentMetrics> fetch(List<Content> contents) {
+        Map<String, ContentMetrics> metricsById = new HashMap<>();
+
+        // No access token configured yet: placeholder numbers
+        if (tiktokAccessToken == null || tiktokAccessToken.isBlank()) {
+            for (Content content : contents) {
+                metricsById.put(content.getPlatformContentId(), placeholderMetrics());
+            }
+            return metricsById;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(tiktokAccessToken);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        List<String> ids = contents.stream().map(Content::getPlatformContentId).distinct().toList();
+        Map<String, Object> body = Map.of("filters", Map.of("video_ids", ids));
+
+        TiktokVideoQueryResponse response;
+        try {
+            response = restTemplate.exchange(
+                    tiktokBaseUrl + "/video/query/?fields=id,view_count,like_count,comment_count,share_count,create_time",
+                    HttpMethod.POST, new HttpEntity<>(body, headers), TiktokVideoQueryResponse.class).getBody();
+        } catch (HttpStatusCodeException e) {
+            throw PlatformMetricsFetcher.callError("TikTok", e);
+        }
+        if (response == null || response.data() == null || response.data().videos() == null) {
+            return metricsById;
+        }
+
+        for (TiktokVideoQueryResponse.Video video : response.data().videos()) {
+            metricsById.put(video.id(), toMetrics(video));
+        }
+        return metricsById;
+    }
+
+    private ContentMetrics toMetrics(TiktokVideoQueryResponse.Video video) {
+        ContentMetrics metrics = new ContentMetrics();
+        metrics.setViews(video.viewCount() != null ? video.viewCount() : 0L);
+        metrics.setLikes(video.likeCount() != null ? video.likeCount() : 0L);
+        metrics.setComments(video.commentCount() != null ? video.commentCount() : 0L);
+        metrics.setShares(video.shareCount() != null ? video.shareCount() : 0L);
+
+        Map<String, Object> platformSpecific = new HashMap<>();
+        platformSpecific.put("playCount", metrics.getViews());
+        platformSpecific.put("createTime", video.createTime());
+        metrics.setPlatformSpecMetrics(platformSpecific);
+
+        return metrics;
+    }
+
+    private ContentMetrics placeholderMetrics() {
+        ContentMetrics metrics = new ContentMetrics();
+        metrics.setViews((long)(Math.random() * 1000 + 100));
+        metrics.setLikes((long)(Math.random() * 200 + 20));
+        metrics.setComments((long)(Math.random() * 50 + 5));
+        metrics.setShares((long)(Math.random() * 30 + 3));
+
+        Map<String, Object> platformSpecific = new HashMap<>();
+        platformSpecific.put("playCount", (long)(Math.random() * 1000 + 100));
+        platformSpecific.put("forwardCount", (long)(Math.random() * 30 + 3));
+        platformSpecific.put("whatsappShareCount", (long)(Math.random() * 10 + 1));
+        metrics.setPlatformSpecMetrics(platformSpecific);
+
+        return metrics;
+    }
+}
@@ -0,0 +1,165 @@
+package com.v4.Content_analytics_system.fetcher;
+
+import com.v4.Content_analytics_system.exception.MetricsFetchException;
+import com.v4.Content_analytics_system.exception.PlatformThrottledException;
+import com.v4.Content_analytics_system.model.DTO.YoutubeVideoListResponse;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.service.YoutubeResponseParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// YouTube Data API videos.list: statistics + snippet for up to 50 videos per call
+@Component
+public class YoutubeMetricsFetcher implements PlatformMetricsFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(YoutubeMetricsFetcher.class);
+
+    // videos.list accepts at most 50 comma separated IDs
+    public static final int MAX_BATCH = 50;
+
+    private final RestTemplate restTemplate;
+    private final YoutubeResponseParser youtubeParser;
+
+    @Value("${youtube.api.key}")
+    private String youtubeApiKey;
+
+    @Value("${youtube.api.base-url}")
+    private String youtubeBaseUrl;
+
+    public YoutubeMetricsFetcher(RestTemplate restTemplate, YoutubeResponseParser youtubeParser) {
+        this.restTemplate = restTemplate;
+        this.youtubeParser = youtubeParser;
+    }
+
+    @Override
+    public String platform() {
+        return "YouTube";
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return MAX_BATCH;
+    }
+
+    @Override
+    public FetcherLimits limits() {
+        return new FetcherLimits(20.0, 20, 16);
+    }
+
+    // An item without statistics is left out, so it shows up as a failed item
+    @Override
+    public Map<String, ContentMetrics> fetch(List<Content> contents) {
+        if (contents.size() > MAX_BATCH) {
+            throw new IllegalArgumentException("YouTube accepts at most " + MAX_BATCH + " IDs per call, got " + contents.size());
+        }
+
+        String ids = contents.stream()
+                .map(Content::getPlatformContentId)
+                .distinct()
+                .collect(Collectors.joining(","));
+
+        Map<String, ContentMetrics> metricsById = new HashMap<>();
+        for (YoutubeVideoListResponse.Item item : requestItems(ids)) {
+            try {
+                metricsById.put(item.id(), toMetrics(item));
+            } catch (Exception e) {
+                log.error("Error reading metrics for video {}: {}", item.id(), e.getMessage());
+            }
+        }
+        return metricsById;
+    }
+
+    // videos.list URL for one or more comma separated video IDs
+    public String videosUrl(String ids) {
+        return String.format(
+                "%s/videos?part=statistics,snippet&id=%s&key=%s",
+                youtubeBaseUrl, ids, youtubeApiKey);
+    }
+
+    // Turning one entry of the videos.list items array into a metrics object
+    public ContentMetrics toMetrics(YoutubeVideoListResponse.Item item) {
+        YoutubeVideoListResponse.Statistics stats = item.statistics();
+        YoutubeVideoListResponse.Snippet snipps = item.snippet();
+
+        log.debug("YouTube API statistics: {}", stats);
+
+        if (stats == null) {
+            throw new MetricsFetchException("No statistics returned for video: " + item.id());
+        }
+
+        // metrics object to saving to the collection
+        ContentMetrics metrics = new ContentMetrics();
+
+        // Basic metrics
+        metrics.setViews(orZero(stats.viewCount()));
+
+        // Handle case where likeCount might not be available
+        metrics.setLikes(stats.likeCount() != null ?
+                stats.likeCount() :
+                estimateLikesFromViews(orZero(stats.viewCount())));
+
+        metrics.setComments(orZero(stats.commentCount()));
+
+        // Setting platform specific metrics
+        Map<String, Object> platSpecMetrics = new HashMap<>();
+        platSpecMetrics.put("favoriteCount", stats.favoriteCount());
+        if (snipps != null) {
+            platSpecMetrics.put("channelId", snipps.channelId());
+            platSpecMetrics.put("publishedAt", snipps.publishedAt());
+            platSpecMetrics.put("channelTitle", snipps.channelTitle());
+            platSpecMetrics.put("title", snipps.title());
+        }
+        metrics.setPlatformSpecMetrics(platSpecMetrics);
+
+        return metrics;
+    }
+
+    // Raw videos.list call. The body is parsed as a stream, straight into typed records
+    private List<YoutubeVideoListResponse.Item> requestItems(String ids) {
+        try {
+            List<YoutubeVideoListResponse.Item> items = restTemplate.execute(
+                    videosUrl(ids), HttpMethod.GET, null,
+                    response -> youtubeParser.parseItems(response.getBody()));
+            return items != null ? items : List.of();
+        } catch (HttpStatusCodeException e) {
+            throw callError(e);
+        }
+    }
+
+    private MetricsFetchException callError(HttpStatusCodeException e) {
+        return callError(e.getStatusCode().value(), e.getResponseBodyAsString());
+    }
+
+    // 429, and 403 with a quota reason, mean YouTube wants us to slow down (also used for the reactive engine's calls)
+    public MetricsFetchException callError(int status, String body) {
+        if (status == 429 || (status == 403 && (body.contains("quotaExceeded") || body.contains("rateLimitExceeded")))) {
+            return new PlatformThrottledException("YouTube", "YouTube API throttled the request (HTTP " + status + ")");
+        }
+        return new MetricsFetchException("Failed to fetch Youtube metrics: HTTP " + status);
+    }
+
+    // HELPER method to estimate likes when not available
+    private Long estimateLikesFromViews(Long views) {
+        if (views == null || views == 0) {
+            return 0L;
+        }
+        // Typical YouTube engagement rate is around 2-5% for likes
+        // Use a conservative estimate
+        return Math.round(views * 0.02);
+    }
+
+    private static Long orZero(Long value) {
+        return value != null ? value : 0L;
+    }
+}
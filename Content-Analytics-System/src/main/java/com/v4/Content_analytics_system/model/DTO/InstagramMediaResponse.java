@@ -0,0 +1,41 @@
+package com.v4.Content_analytics_system.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Graph API /{media-id}?fields=id,like_count,comments_count,timestamp,insights.metric(impressions,reach,saved)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record InstagramMediaResponse(
+        String id,
+        @JsonProperty("like_count") Long likeCount,
+        @JsonProperty("comments_count") Long commentsCount,
+        String timestamp,
+        Insights insights) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Insights(List<Insight> data) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Insight(String name, List<InsightValue> values) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record InsightValue(Long value) {
+    }
+
+    // First value of a named insight (impressions, reach, saved), 0 if missing
+    public long insight(String name) {
+        if (insights == null || insights.data() == null) {
+            return 0L;
+        }
+        return insights.data().stream()
+                .filter(i -> name.equals(i.name()) && i.values() != null && !i.values().isEmpty())
+                .map(i -> i.values().get(0).value())
+                .filter(v -> v != null)
+                .findFirst()
+                .orElse(0L);
+    }
+}
@@ -0,0 +1,44 @@
+package com.v4.Content_analytics_system.model.DTO;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Result of fetching metrics for several content items with one platform call
+public class MetricsBatchResult {
+
+    private final List<ContentMetrics> metrics = new ArrayList<>();
+
+    // content ID -> reason, one entry per item that could not be refreshed
+    private final Map<Long, String> failures = new LinkedHashMap<>();
+
+    public void addMetrics(ContentMetrics m) {
+        metrics.add(m);
+    }
+
+    public void addFailure(Long contentId, String reason) {
+        failures.put(contentId, reason);
+    }
+
+
+    // GETTERS
+
+    public List<ContentMetrics> getMetrics() {
+        return metrics;
+    }
+
+    public Map<Long, String> getFailures() {
+        return failures;
+    }
+
+    public int getSuccessCount() {
+        return metrics.size();
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+}
@@ -0,0 +1,25 @@
+package com.v4.Content_analytics_system.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Display API /video/query/ response (fields=id,view_count,like_count,comment_count,share_count,create_time)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record TiktokVideoQueryResponse(Data data) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Data(List<Video> videos) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Video(
+            String id,
+            @JsonProperty("view_count") Long viewCount,
+            @JsonProperty("like_count") Long likeCount,
+            @JsonProperty("comment_count") Long commentCount,
+            @JsonProperty("share_count") Long shareCount,
+            @JsonProperty("create_time") Long createTime) {
+    }
+}
@@ -0,0 +1,23 @@
+package com.v4.Content_analytics_system.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+// videos?part=statistics,snippet response, only the fields we keep (everything else is skipped while parsing)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record YoutubeVideoListResponse(List<Item> items) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Item(String id, Statistics statistics, Snippet snippet) {
+    }
+
+    // YouTube sends the counts as strings, Jackson coerces them
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Statistics(Long viewCount, Long likeCount, Long commentCount, Long favoriteCount) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Snippet(String publishedAt, String channelId, String title, String channelTitle) {
+    }
+}
@@ -7,7 +7,8 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
-@Document(collection = "content_metrics")
+// Indexes are defined (and checked at startup) in MongoIndexConfig, the collection depends on the storage layout
+@Document(collection = "#{@metricsStorageConfig.collectionName}")
 public class ContentMetrics {
 
     @Id
@@ -32,6 +33,18 @@ public class ContentMetrics {
     // Platform-specific metrics
     private Map<String, Object> platformSpecMetrics= new HashMap<>();
 
+    // Unchanged snapshots are folded into the previous document instead of being inserted again:
+    // sampleCount is how many retrievals this document stands for, validUntil the last of them
+    private Integer sampleCount;
+    private LocalDateTime validUntil;
+
+    // Time series layout only (the collection's metaField), so Mongo buckets the snapshots of one item together.
+    // The same values stay in the top level fields, which is what every query filters on
+    private SeriesMeta meta;
+
+    public record SeriesMeta(Long userId, String platform, String platformContentId) {
+    }
+
 
 
     // GETTERS & SETTERS
@@ -124,4 +137,33 @@ public class ContentMetrics {
     public void setPlatformSpecMetrics(Map<String, Object> platformSpecMetrics) {
         this.platformSpecMetrics = platformSpecMetrics;
     }
+
+    public Integer getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(Integer sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public LocalDateTime getValidUntil() {
+        return validUntil;
+    }
+
+    public void setValidUntil(LocalDateTime validUntil) {
+        this.validUntil = validUntil;
+    }
+
+    public SeriesMeta getMeta() {
+        return meta;
+    }
+
+    public void setMeta(SeriesMeta meta) {
+        this.meta = meta;
+    }
+
+    // Documents written before deduplication have no sampleCount and stand for one retrieval
+    public long sampleWeight() {
+        return sampleCount != null ? sampleCount : 1;
+    }
 }
@@ -0,0 +1,156 @@
+package com.v4.Content_analytics_system.model.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Bucket layout: one document per content item per (UTC) day, every retrieval of that day is one compact sample in it.
+// Written with $push upserts by MetricsBucketStore, _id is platform:platformContentId:day
+@Document(collection = "content_metrics_buckets")
+public class ContentMetricsBucket {
+
+    @Id
+    private String id;
+
+    private Long userId;
+    private String platform;
+    private String platformContentId;
+
+    // yyyy-MM-dd, same key the time series aggregations group by
+    private String day;
+
+    private Integer count;
+    private LocalDateTime firstAt;
+    private LocalDateTime lastAt;
+
+    private List<Sample> samples = new ArrayList<>();
+
+    // Running values over the day's samples
+    private Values min;
+    private Values max;
+    private Sample last;
+
+    // Only the last sample's, the samples themselves keep just the counters
+    private Map<String, Object> platformSpecMetrics;
+
+    public record Sample(@Field("t") LocalDateTime timestamp, @Field("v") Long views, @Field("l") Long likes,
+                         @Field("c") Long comments, @Field("s") Long shares) {
+    }
+
+    public record Values(Long views, Long likes, Long comments, Long shares) {
+    }
+
+
+
+    // GETTERS & SETTERS
+
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getPlatform() {
+        return platform;
+    }
+
+    public void setPlatform(String platform) {
+        this.platform = platform;
+    }
+
+    public String getPlatformContentId() {
+        return platformContentId;
+    }
+
+    public void setPlatformContentId(String platformContentId) {
+        this.platformContentId = platformContentId;
+    }
+
+    public String getDay() {
+        return day;
+    }
+
+    public void setDay(String day) {
+        this.day = day;
+    }
+
+    public Integer getCount() {
+        return count;
+    }
+
+    public void setCount(Integer count) {
+        this.count = count;
+    }
+
+    public LocalDateTime getFirstAt() {
+        return firstAt;
+    }
+
+    public void setFirstAt(LocalDateTime firstAt) {
+        this.firstAt = firstAt;
+    }
+
+    public LocalDateTime getLastAt() {
+        return lastAt;
+    }
+
+    public void setLastAt(LocalDateTime lastAt) {
+        this.lastAt = lastAt;
+    }
+
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    public void setSamples(List<Sample> samples) {
+        this.samples = samples;
+    }
+
+    public Values getMin() {
+        return min;
+    }
+
+    public void setMin(Values min) {
+        this.min = min;
+    }
+
+    public Values getMax() {
+        return max;
+    }
+
+    public void setMax(Values max) {
+        this.max = max;
+    }
+
+    public Sample getLast() {
+        return last;
+    }
+
+    public void setLast(Sample last) {
+        this.last = last;
+    }
+
+    public Map<String, Object> getPlatformSpecMetrics() {
+        return platformSpecMetrics;
+    }
+
+    public void setPlatformSpecMetrics(Map<String, Object> platformSpecMetrics) {
+        this.platformSpecMetrics = platformSpecMetrics;
+    }
+}
@@ -0,0 +1,165 @@
+package com.v4.Content_analytics_system.model.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Pre-aggregated totals of the snapshots of one period (UTC day, or ISO week starting Monday) for one user,
+// one user + platform, or one content item. Maintained by MetricsRollupIngest and MetricsRollupRebuilder,
+// _id is grain:level:key:period
+@Document(collection = "content_metrics_rollups")
+public class ContentMetricsRollup {
+
+    @Id
+    private String id;
+
+    // day / week
+    private String grain;
+    // user / platform / content
+    private String level;
+    // yyyy-MM-dd of the day, or of the Monday the week starts on
+    private String period;
+
+    private Long userId;
+    private String platform;
+    private String platformContentId;
+
+    // Sums over every snapshot of the period, the same numbers the time series pipelines add up
+    private Long views;
+    private Long likes;
+    private Long comments;
+    private Long samples;
+
+    // Highest counters seen in the period
+    private Long maxViews;
+    private Long maxLikes;
+    private Long maxComments;
+
+    private LocalDateTime lastAt;
+
+
+
+    // GETTERS & SETTERS
+
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getGrain() {
+        return grain;
+    }
+
+    public void setGrain(String grain) {
+        this.grain = grain;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public void setLevel(String level) {
+        this.level = level;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(String period) {
+        this.period = period;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getPlatform() {
+        return platform;
+    }
+
+    public void setPlatform(String platform) {
+        this.platform = platform;
+    }
+
+    public String getPlatformContentId() {
+        return platformContentId;
+    }
+
+    public void setPlatformContentId(String platformContentId) {
+        this.platformContentId = platformContentId;
+    }
+
+    public Long getViews() {
+        return views;
+    }
+
+    public void setViews(Long views) {
+        this.views = views;
+    }
+
+    public Long getLikes() {
+        return likes;
+    }
+
+    public void setLikes(Long likes) {
+        this.likes = likes;
+    }
+
+    public Long getComments() {
+        return comments;
+    }
+
+    public void setComments(Long comments) {
+        this.comments = comments;
+    }
+
+    public Long getSamples() {
+        return samples;
+    }
+
+    public void setSamples(Long samples) {
+        this.samples = samples;
+    }
+
+    public Long getMaxViews() {
+        return maxViews;
+    }
+
+    public void setMaxViews(Long maxViews) {
+        this.maxViews = maxViews;
+    }
+
+    public Long getMaxLikes() {
+        return maxLikes;
+    }
+
+    public void setMaxLikes(Long maxLikes) {
+        this.maxLikes = maxLikes;
+    }
+
+    public Long getMaxComments() {
+        return maxComments;
+    }
+
+    public void setMaxComments(Long maxComments) {
+        this.maxComments = maxComments;
+    }
+
+    public LocalDateTime getLastAt() {
+        return lastAt;
+    }
+
+    public void setLastAt(LocalDateTime lastAt) {
+        this.lastAt = lastAt;
+    }
+}
@@ -0,0 +1,53 @@
+package com.v4.Content_analytics_system.model.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// One slice of the content id space (content id mod partitions) and the node refreshing it until expiresAt
+@Document(collection = "refresh_leases")
+public class PartitionLease {
+
+    @Id
+    private Integer partition;
+
+    private String owner;
+    private LocalDateTime renewedAt;
+    private LocalDateTime expiresAt;
+
+
+    // GETTERS & SETTERS
+
+    public Integer getPartition() {
+        return partition;
+    }
+
+    public void setPartition(Integer partition) {
+        this.partition = partition;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public LocalDateTime getRenewedAt() {
+        return renewedAt;
+    }
+
+    public void setRenewedAt(LocalDateTime renewedAt) {
+        this.renewedAt = renewedAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
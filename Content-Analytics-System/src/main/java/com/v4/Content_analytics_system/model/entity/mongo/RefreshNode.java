@@ -0,0 +1,44 @@
+package com.v4.Content_analytics_system.model.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// App instance taking part in the refresh, kept alive by its heartbeat so the others know how many ways to split
+@Document(collection = "refresh_nodes")
+public class RefreshNode {
+
+    @Id
+    private String nodeId;
+
+    private LocalDateTime lastSeen;
+    private LocalDateTime expiresAt;
+
+
+    // GETTERS & SETTERS
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public LocalDateTime getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(LocalDateTime lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
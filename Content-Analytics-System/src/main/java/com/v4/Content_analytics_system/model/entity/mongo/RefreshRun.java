@@ -0,0 +1,172 @@
+package com.v4.Content_analytics_system.model.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// One full metrics refresh pass with its progress checkpoint. A pass cut short by a restart stays RUNNING and is
+// picked up again from lastContentId, finished ones stay as the throughput history
+@Document(collection = "refresh_runs")
+public class RefreshRun {
+
+    public enum Status {
+        RUNNING, COMPLETED, ABANDONED
+    }
+
+    @Id
+    private String runId;
+
+    private String nodeId;
+    private String mode;
+    private Status status;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime checkpointAt;
+    private LocalDateTime finishedAt;
+
+    // Every content id up to this one is done (items above it may be done too, they are just fetched again on resume)
+    private long lastContentId;
+
+    private int successCount;
+    private int errorCount;
+    private int storedCount;
+    private int unchangedCount;
+    private int storeErrorCount;
+
+    // Time actually spent refreshing, without the downtime between a crash and the resume
+    private long activeMs;
+    private double throughput;
+    private int resumeCount;
+
+
+    // GETTERS & SETTERS
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getCheckpointAt() {
+        return checkpointAt;
+    }
+
+    public void setCheckpointAt(LocalDateTime checkpointAt) {
+        this.checkpointAt = checkpointAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getLastContentId() {
+        return lastContentId;
+    }
+
+    public void setLastContentId(long lastContentId) {
+        this.lastContentId = lastContentId;
+    }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(int successCount) {
+        this.successCount = successCount;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(int errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public int getStoredCount() {
+        return storedCount;
+    }
+
+    public void setStoredCount(int storedCount) {
+        this.storedCount = storedCount;
+    }
+
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    public void setUnchangedCount(int unchangedCount) {
+        this.unchangedCount = unchangedCount;
+    }
+
+    public int getStoreErrorCount() {
+        return storeErrorCount;
+    }
+
+    public void setStoreErrorCount(int storeErrorCount) {
+        this.storeErrorCount = storeErrorCount;
+    }
+
+    public long getActiveMs() {
+        return activeMs;
+    }
+
+    public void setActiveMs(long activeMs) {
+        this.activeMs = activeMs;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public void setThroughput(double throughput) {
+        this.throughput = throughput;
+    }
+
+    public int getResumeCount() {
+        return resumeCount;
+    }
+
+    public void setResumeCount(int resumeCount) {
+        this.resumeCount = resumeCount;
+    }
+}
@@ -0,0 +1,85 @@
+package com.v4.Content_analytics_system.model.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// When a content item is next due for a metrics refresh, persisted so the priority queue survives restarts
+@Document(collection = "refresh_schedule")
+public class RefreshSchedule {
+
+    // Same as the SQL content id
+    @Id
+    private Long contentId;
+
+    private LocalDateTime nextRefreshAt;
+    private long intervalSeconds;
+
+    // Last observed views and when, to get the view velocity on the next refresh
+    private Long lastViews;
+    private LocalDateTime lastViewsAt;
+
+    // Smoothed views per hour
+    private Double viewsPerHour;
+
+    public RefreshSchedule() {
+    }
+
+    public RefreshSchedule(Long contentId, LocalDateTime nextRefreshAt, long intervalSeconds) {
+        this.contentId = contentId;
+        this.nextRefreshAt = nextRefreshAt;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+
+    // GETTERS & SETTERS
+
+    public Long getContentId() {
+        return contentId;
+    }
+
+    public void setContentId(Long contentId) {
+        this.contentId = contentId;
+    }
+
+    public LocalDateTime getNextRefreshAt() {
+        return nextRefreshAt;
+    }
+
+    public void setNextRefreshAt(LocalDateTime nextRefreshAt) {
+        this.nextRefreshAt = nextRefreshAt;
+    }
+
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public void setIntervalSeconds(long intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public Long getLastViews() {
+        return lastViews;
+    }
+
+    public void setLastViews(Long lastViews) {
+        this.lastViews = lastViews;
+    }
+
+    public LocalDateTime getLastViewsAt() {
+        return lastViewsAt;
+    }
+
+    public void setLastViewsAt(LocalDateTime lastViewsAt) {
+        this.lastViewsAt = lastViewsAt;
+    }
+
+    public Double getViewsPerHour() {
+        return viewsPerHour;
+    }
+
+    public void setViewsPerHour(Double viewsPerHour) {
+        this.viewsPerHour = viewsPerHour;
+    }
+}
@@ -0,0 +1,158 @@
+package com.v4.Content_analytics_system.ratelimit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.function.LongConsumer;
+import java.util.concurrent.locks.ReentrantLock;
+
+// AIMD concurrency limit: grows by about one slot per "window" of healthy calls, halves on throttling.
+// It backs off at most once per round trip: a throttled call that started before the last decrease was sent under
+// the old limit, so it says nothing about the new one and is ignored (the burst of 429s from calls already in flight
+// counts once). Every acquire returns the current generation, release gets it back.
+// Blocking callers wait in acquire(), non-blocking ones queue a callback with acquireAsync() and are served first
+public class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    // Bumped on every decrease
+    private long generation;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    public long acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit || !waiters.isEmpty()) {
+                slotFreed.await();
+            }
+            inFlight++;
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Runs onSlot with the generation (on this thread) if a slot is free, else queues it for the release that frees
+    // one, onSlot then runs on the releasing thread. Never blocks
+    public Waiter acquireAsync(LongConsumer onSlot) {
+        Waiter waiter = new Waiter(onSlot);
+        lock.lock();
+        try {
+            if (inFlight < (int) limit && waiters.isEmpty()) {
+                inFlight++;
+                waiter.grant(generation);
+            } else {
+                waiters.add(waiter);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (waiter.granted) {
+            onSlot.accept(waiter.generation);
+        }
+        return waiter;
+    }
+
+    public void release(long acquiredGeneration, boolean throttled) {
+        List<Waiter> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            inFlight--;
+            if (throttled) {
+                if (acquiredGeneration == generation) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    generation++;
+                }
+            } else {
+                // +1/limit per success, so a full window of successes adds one slot
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            while (!waiters.isEmpty() && inFlight < (int) limit) {
+                Waiter waiter = waiters.poll();
+                waiter.grant(generation);
+                inFlight++;
+                granted.add(waiter);
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // Outside the lock, the callbacks go on to start their calls
+        granted.forEach(waiter -> waiter.onSlot.accept(waiter.generation));
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A queued acquireAsync
+    public final class Waiter {
+
+        private final LongConsumer onSlot;
+        private boolean granted;
+        private long generation;
+
+        private Waiter(LongConsumer onSlot) {
+            this.onSlot = onSlot;
+        }
+
+        private void grant(long generation) {
+            this.granted = true;
+            this.generation = generation;
+        }
+
+        // What release wants back once the slot is granted
+        public long generation() {
+            lock.lock();
+            try {
+                return generation;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Leaves the queue. False when the slot was granted already, then the caller holds it and has to release it
+        public boolean cancel() {
+            lock.lock();
+            try {
+                if (granted) {
+                    return false;
+                }
+                waiters.remove(this);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.v4.Content_analytics_system.ratelimit;
+
+import com.v4.Content_analytics_system.exception.MetricsFetchException;
+import com.v4.Content_analytics_system.exception.PlatformThrottledException;
+import com.v4.Content_analytics_system.fetcher.FetcherLimits;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Guards every outbound platform call: a token bucket for the request rate plus an AIMD concurrency limit.
+// The blocking fetchers go through call(), the reactive engine through callReactive()
+@Component
+public class PlatformThrottle {
+
+    private static final Logger log = LoggerFactory.getLogger(PlatformThrottle.class);
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Limits> limitsByPlatform = new ConcurrentHashMap<>();
+    private final Map<String, FetcherLimits> declaredLimits = new ConcurrentHashMap<>();
+
+    public PlatformThrottle(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T call(String platform, Supplier<T> call) {
+        Limits limits = limitsFor(platform);
+        long generation = acquire(platform, limits);
+
+        boolean throttled = false;
+        try {
+            return call.get();
+        } catch (PlatformThrottledException e) {
+            throttled = true;
+            log.warn("{} is throttling us, backing off (limit was {})", platform, limits.concurrency.getLimit());
+            throw e;
+        } finally {
+            limits.concurrency.release(generation, throttled);
+        }
+    }
+
+    // Same limits for the reactive engine, without parking a thread per waiting call: the slot is a queued callback
+    // completed by the release that frees it, the rate token a Mono.delay for as long as the bucket says. The slot
+    // goes back when the call completes, fails or is cancelled, also when it is cancelled while still queued
+    public <T> Mono<T> callReactive(String platform, Supplier<Mono<T>> call) {
+        Limits limits = limitsFor(platform);
+        return Mono.defer(() -> {
+            ReactivePermit permit = new ReactivePermit(limits.concurrency);
+            limits.waiting.incrementAndGet();
+            Mono<Void> acquired = permit.slot()
+                    .then(Mono.defer(() -> {
+                        long waitNanos = limits.rate.reserve();
+                        return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).then() : Mono.<Void>empty();
+                    }))
+                    .doFinally(signal -> limits.waiting.decrementAndGet());
+
+            return acquired
+                    .then(Mono.defer(call))
+                    .doOnError(PlatformThrottledException.class, e -> {
+                        permit.throttled = true;
+                        log.warn("{} is throttling us, backing off (limit was {})", platform, limits.concurrency.getLimit());
+                    })
+                    .doFinally(signal -> permit.release());
+        });
+    }
+
+    // What the platform's fetcher says it allows, used where no metrics.ratelimit.<platform>.* property is set
+    public void declare(String platform, FetcherLimits limits) {
+        declaredLimits.put(platform.toLowerCase(), limits);
+    }
+
+    public int getLimit(String platform) {
+        return limitsFor(platform).concurrency.getLimit();
+    }
+
+    public int getWaiting(String platform) {
+        return limitsFor(platform).waiting.get();
+    }
+
+    // A concurrency slot, then a rate token. The slot is given back if the wait for the token is interrupted.
+    // Returns the limit's generation for the release
+    private long acquire(String platform, Limits limits) {
+        long generation;
+        limits.waiting.incrementAndGet();
+        try {
+            generation = limits.concurrency.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetricsFetchException("Interrupted while waiting for a " + platform + " call slot");
+        } finally {
+            limits.waiting.decrementAndGet();
+        }
+
+        limits.waiting.incrementAndGet();
+        try {
+            limits.rate.acquire();
+        } catch (InterruptedException e) {
+            limits.concurrency.release(generation, false);
+            Thread.currentThread().interrupt();
+            throw new MetricsFetchException("Interrupted while waiting for a " + platform + " rate token");
+        } finally {
+            limits.waiting.decrementAndGet();
+        }
+        return generation;
+    }
+
+    private Limits limitsFor(String platform) {
+        return limitsByPlatform.computeIfAbsent(platform.toLowerCase(), this::createLimits);
+    }
+
+    // Rates come from metrics.ratelimit.<platform>.*, concurrency from metrics.refresh.concurrency.<platform>,
+    // then what the fetcher declared, then the defaults
+    private Limits createLimits(String key) {
+        FetcherLimits declared = declaredLimits.getOrDefault(key, FetcherLimits.UNDECLARED);
+        double permitsPerSecond = property("metrics.ratelimit." + key + ".permits-per-second", declared.permitsPerSecond(),
+                "metrics.ratelimit.default.permits-per-second", Double.class, 10.0);
+        int burst = property("metrics.ratelimit." + key + ".burst", declared.burst(),
+                "metrics.ratelimit.default.burst", Integer.class, 10);
+        int maxConcurrency = property("metrics.refresh.concurrency." + key, declared.maxConcurrency(),
+                "metrics.refresh.concurrency.default", Integer.class, 8);
+        int minConcurrency = environment.getProperty("metrics.ratelimit.min-concurrency", Integer.class, 1);
+        double backoff = environment.getProperty("metrics.ratelimit.backoff-ratio", Double.class, 0.5);
+        // Start well below the ceiling and let the additive increase find out how far the platform lets us go
+        double initialFraction = environment.getProperty("metrics.ratelimit.initial-concurrency-fraction", Double.class, 0.25);
+        int initialConcurrency = Math.max(minConcurrency, (int) Math.ceil(maxConcurrency * initialFraction));
+
+        Limits limits = new Limits(
+                new TokenBucket(permitsPerSecond, burst),
+                new AdaptiveConcurrencyLimit(initialConcurrency, minConcurrency, maxConcurrency, backoff));
+
+        Gauge.builder("platform.calls.limit", limits.concurrency, AdaptiveConcurrencyLimit::getLimit)
+                .description("Current adaptive concurrency limit for platform API calls")
+                .tag("platform", key)
+                .register(meterRegistry);
+        Gauge.builder("platform.calls.in-flight", limits.concurrency, AdaptiveConcurrencyLimit::getInFlight)
+                .description("Platform API calls currently running")
+                .tag("platform", key)
+                .register(meterRegistry);
+        Gauge.builder("platform.calls.waiting", limits.waiting, AtomicInteger::get)
+                .description("Platform API calls waiting for a slot or a rate token")
+                .tag("platform", key)
+                .register(meterRegistry);
+
+        log.info("Platform limits for {}: {} calls/s (burst {}), concurrency starting at {} up to {}",
+                key, permitsPerSecond, burst, initialConcurrency, maxConcurrency);
+        return limits;
+    }
+
+    private <T> T property(String key, T declared, String fallbackKey, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(key, type);
+        if (value != null) {
+            return value;
+        }
+        return declared != null ? declared : environment.getProperty(fallbackKey, type, defaultValue);
+    }
+
+    // One reactive call's concurrency slot, released once whatever way the call ends
+    private static class ReactivePermit {
+        private final AdaptiveConcurrencyLimit concurrency;
+        private volatile AdaptiveConcurrencyLimit.Waiter waiter;
+        private volatile boolean granted;
+        private volatile long generation;
+        private volatile boolean throttled;
+
+        private ReactivePermit(AdaptiveConcurrencyLimit concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        private Mono<Void> slot() {
+            return Mono.create(sink -> waiter = concurrency.acquireAsync(acquiredGeneration -> {
+                generation = acquiredGeneration;
+                granted = true;
+                sink.success();
+            }));
+        }
+
+        // Still queued: just leave the queue. Granted (even if the callback hasn't run yet): give the slot back.
+        // A slot granted right away can run the whole call before acquireAsync has returned the waiter
+        private void release() {
+            AdaptiveConcurrencyLimit.Waiter held = waiter;
+            if (granted) {
+                concurrency.release(generation, throttled);
+            } else if (held != null && !held.cancel()) {
+                concurrency.release(held.generation(), throttled);
+            }
+        }
+    }
+
+    private static class Limits {
+        private final TokenBucket rate;
+        private final AdaptiveConcurrencyLimit concurrency;
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private Limits(TokenBucket rate, AdaptiveConcurrencyLimit concurrency) {
+            this.rate = rate;
+            this.concurrency = concurrency;
+        }
+    }
+}
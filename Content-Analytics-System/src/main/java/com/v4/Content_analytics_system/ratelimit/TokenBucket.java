@@ -0,0 +1,51 @@
+package com.v4.Content_analytics_system.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+// Classic token bucket: refills at a fixed rate up to a burst size, callers wait for their token
+// (blocking in acquire(), or for the time reserve() returns)
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Takes a token only if one is there right now, never waits
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    // Takes a token now (possibly going into debt) and returns how long the caller has to wait for it
+    public synchronized long reserve() {
+        refill(System.nanoTime());
+
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -31,30 +31,39 @@ public interface IContentMetricsRepository extends MongoRepository<ContentMetric
 
     Optional<ContentMetrics> findTopByPlatformContentIdOrderByRetrievalTimestampDesc(String platformContentId);
 
+    // Snapshot before the given one, for the view velocity of content the refresh queue hasn't seen yet
+    Optional<ContentMetrics> findTopByPlatformContentIdAndRetrievalTimestampBeforeOrderByRetrievalTimestampDesc(
+            String platformContentId, LocalDateTime before);
+
     List<ContentMetrics> findByUserIdAndRetrievalTimestampAfter(Long userId, LocalDateTime startDate);
 
     // Aggregate queries
+    // Unchanged snapshots are folded into one document with a sampleCount, so sums / averages weight by it
+    // (documents from before that have no sampleCount and count once)
     @Aggregation(pipeline = {
             "{ $match: { userId: ?0 }}",
-            "{ $group: { _id:  null, totalViews:  { $sum: '$views' } } }"
+            "{ $group: { _id:  null, totalViews:  { $sum: { $multiply: ['$views', { $ifNull: ['$sampleCount', 1] }] } } } }"
     })
     Long sumViewsByUserId(Long userId);
 
     @Aggregation(pipeline = {
             "{ $match:  { userId:  ?0 } }",
-            "{ $group:  { _id:  null, totalLikes:  { $sum:  '$likes' } } }"
+            "{ $group:  { _id:  null, totalLikes:  { $sum: { $multiply: ['$likes', { $ifNull: ['$sampleCount', 1] }] } } } }"
     })
     Long sumLikesByUserId(Long userId);
 
     @Aggregation(pipeline = {
             "{ $match: { userId: ?0 } }",
-            "{ $group: { _id: null, totalComments: { $sum: '$comments' } } }"
+            "{ $group: { _id: null, totalComments: { $sum: { $multiply: ['$comments', { $ifNull: ['$sampleCount', 1] }] } } } }"
     })
     Long sumCommentsByUserId(Long userId);
 
     @Aggregation(pipeline = {
             "{ $match: { userId: ?0 } }",
-            "{ $group: { _id: null, avgEngagementRate: { $avg: '$engagementRate' } } }"
+            "{ $group: { _id: null, " +
+                    "weightedRate: { $sum: { $multiply: ['$engagementRate', { $ifNull: ['$sampleCount', 1] }] } }, " +
+                    "samples: { $sum: { $cond: [{ $isNumber: '$engagementRate' }, { $ifNull: ['$sampleCount', 1] }, 0] } } } }",
+            "{ $project: { _id: 0, avgEngagementRate: { $cond: [{ $eq: ['$samples', 0] }, null, { $divide: ['$weightedRate', '$samples'] }] } } }"
     })
     Double averageEngagementRateByUserId(Long userId);
 
@@ -63,9 +72,9 @@ public interface IContentMetricsRepository extends MongoRepository<ContentMetric
     @Aggregation(pipeline = {
             "{ $match:  { userId:  ?0, retrievalTimestamp:  { $gte:  ?1 } } }",
             "{ $group:  { _id:  { $dateToString:  { format:  '%Y-%m-%d', date:  '$retrievalTimestamp' } }," +
-                    "views: { $sum:  '$views' }," +
-                    "likes: { $sum:  '$likes' }," +
-                    "comments: { $sum:  '$comments' } } }",
+                    "views: { $sum: { $multiply: ['$views', { $ifNull: ['$sampleCount', 1] }] } }," +
+                    "likes: { $sum: { $multiply: ['$likes', { $ifNull: ['$sampleCount', 1] }] } }," +
+                    "comments: { $sum: { $multiply: ['$comments', { $ifNull: ['$sampleCount', 1] }] } } } }",
             "{ $project: { _id: 0, date: '$_id', views: 1, likes: 1, comments: 1 } }",
             "{ $sort:  { 'date':  1 } }"
     })
@@ -75,9 +84,9 @@ public interface IContentMetricsRepository extends MongoRepository<ContentMetric
     @Aggregation(pipeline = {
             "{ $match: { userId: ?0, platform: ?1, retrievalTimestamp: { $gte: ?2 } } }",
             "{ $group: { _id: { $dateToString: { format: '%Y-%m-%d', date: '$retrievalTimestamp' } }," +
-                    "views: { $sum: '$views' }," +
-                    "likes: { $sum: '$likes'}," +
-                    "comments: { $sum: '$comments'} } }",
+                    "views: { $sum: { $multiply: ['$views', { $ifNull: ['$sampleCount', 1] }] } }," +
+                    "likes: { $sum: { $multiply: ['$likes', { $ifNull: ['$sampleCount', 1] }] } }," +
+                    "comments: { $sum: { $multiply: ['$comments', { $ifNull: ['$sampleCount', 1] }] } } } }",
             "{ $project: { _id: 0, date: '$_id', views: 1, likes: 1, comments: 1 } }",
             "{ $sort: { 'date': 1 } }"
     })
@@ -87,20 +96,31 @@ public interface IContentMetricsRepository extends MongoRepository<ContentMetric
     @Aggregation(pipeline = {
             "{ $match: { userId: ?0 } }",
             "{ $group: { _id:  '$platform', " +
-                    "views: { $sum: '$views' }, " +
-                    "likes: { $sum: '$likes' }, " +
-                    "comments: { $sum: '$comments' }, " +
-                    "engagementRate: { $avg: '$engagementRate' } } }"
+                    "views: { $sum: { $multiply: ['$views', { $ifNull: ['$sampleCount', 1] }] } }, " +
+                    "likes: { $sum: { $multiply: ['$likes', { $ifNull: ['$sampleCount', 1] }] } }, " +
+                    "comments: { $sum: { $multiply: ['$comments', { $ifNull: ['$sampleCount', 1] }] } }, " +
+                    "weightedRate: { $sum: { $multiply: ['$engagementRate', { $ifNull: ['$sampleCount', 1] }] } }, " +
+                    "samples: { $sum: { $cond: [{ $isNumber: '$engagementRate' }, { $ifNull: ['$sampleCount', 1] }, 0] } } } }",
+            "{ $project: { views: 1, likes: 1, comments: 1, " +
+                    "engagementRate: { $cond: [{ $eq: ['$samples', 0] }, null, { $divide: ['$weightedRate', '$samples'] }] } } }"
     })
     List<Object[]> getMetricsByPlatform(Long userId);
 
     @Aggregation(pipeline = {
             "{ $match: { platform: ?0 } }",
-            "{ $group: { _id: null, totalViews: { $sum: '$views' } } }",
+            "{ $group: { _id: null, totalViews: { $sum: { $multiply: ['$views', { $ifNull: ['$sampleCount', 1] }] } } } }",
             "{ $project: { _id: 0, totalViews: 1 } }"
     })
     long sumViewsByPlatform(String platformType);
 
+    // Only the raw snapshots from the given time on, the days before it are counted from their compacted rollups
+    @Aggregation(pipeline = {
+            "{ $match: { platform: ?0, retrievalTimestamp: { $gte: ?1 } } }",
+            "{ $group: { _id: null, totalViews: { $sum: { $multiply: ['$views', { $ifNull: ['$sampleCount', 1] }] } } } }",
+            "{ $project: { _id: 0, totalViews: 1 } }"
+    })
+    Long sumViewsByPlatformSince(String platformType, LocalDateTime from);
+
     // Getting metrics for specific content ID
     List<ContentMetrics> findByPlatformContentId(String platformContentId);
 
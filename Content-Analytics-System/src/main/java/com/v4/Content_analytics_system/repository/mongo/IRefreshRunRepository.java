@@ -0,0 +1,18 @@
+package com.v4.Content_analytics_system.repository.mongo;
+
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshRun;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface IRefreshRunRepository extends MongoRepository<RefreshRun, String> {
+
+    // Unfinished runs, newest first (the first one is resumed)
+    List<RefreshRun> findByModeAndStatusOrderByStartedAtDesc(String mode, RefreshRun.Status status);
+
+    List<RefreshRun> findByModeAndStatusAndNodeIdOrderByStartedAtDesc(String mode, RefreshRun.Status status, String nodeId);
+
+    // Run history for throughput over time
+    List<RefreshRun> findByStatusOrderByStartedAtDesc(RefreshRun.Status status, Pageable pageable);
+}
@@ -0,0 +1,7 @@
+package com.v4.Content_analytics_system.repository.mongo;
+
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshSchedule;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface IRefreshScheduleRepository extends MongoRepository<RefreshSchedule, Long> {
+}
@@ -2,12 +2,15 @@ package com.v4.Content_analytics_system.repository.sql;
 
 import com.v4.Content_analytics_system.model.entity.sql.Content;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,11 +38,55 @@ public interface IContentRepository extends JpaRepository<Content, Long> {
     List<Content> findByPlatform_PlatformNameAndUserId(String platformName, Long userId);
 
     // Custom query for limited results
-    @Query("SELECT c FROM Content c WHERE c.user.id = :userId ORDER BY c.publishedDate DESC")
+    @Query("SELECT c FROM Content c JOIN FETCH c.platform JOIN FETCH c.user WHERE c.user.id = :userId ORDER BY c.publishedDate DESC")
     List<Content> findRecentContentByUserId(@Param("userId") Long userId, Pageable pageable);
 
     Optional<Content> findByPlatformContentId(String platformContentId);
 
+    // Fetch-join variants: platform and user come back in the same select,
+    // so reading getPlatform()/getUser() per item doesn't fire extra queries.
+    // User.roles is an EAGER collection, fetched along too or every user costs a user_roles select
+    @Query("SELECT DISTINCT c FROM Content c JOIN FETCH c.platform JOIN FETCH c.user u LEFT JOIN FETCH u.roles")
+    List<Content> findAllWithPlatformAndUser();
+
+    @Query("SELECT DISTINCT c FROM Content c JOIN FETCH c.platform JOIN FETCH c.user u LEFT JOIN FETCH u.roles " +
+            "WHERE u.id = :userId")
+    List<Content> findByUserIdWithPlatformAndUser(@Param("userId") Long userId);
+
+    @Query("SELECT DISTINCT c FROM Content c JOIN FETCH c.platform JOIN FETCH c.user u LEFT JOIN FETCH u.roles " +
+            "WHERE c.platform.id = :platformId AND u.id = :userId")
+    List<Content> findByPlatformIdAndUserIdWithPlatformAndUser(@Param("platformId") Long platformId,
+                                                               @Param("userId") Long userId);
+
+    // Keyset page for the scheduler: the next items by id after afterId (page size comes from the Pageable).
+    // No roles fetch here, a collection fetch would page in memory; their selects are batched (User.roles @BatchSize)
+    @Query("SELECT c FROM Content c JOIN FETCH c.platform JOIN FETCH c.user WHERE c.id > :afterId ORDER BY c.id ASC")
+    List<Content> findRefreshPageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Same fetch join for the ids the priority scheduler says are due
+    @Query("SELECT DISTINCT c FROM Content c JOIN FETCH c.platform JOIN FETCH c.user u LEFT JOIN FETCH u.roles " +
+            "WHERE c.id IN :ids")
+    List<Content> findAllByIdWithPlatformAndUser(@Param("ids") Collection<Long> ids);
+
+    // Just the ids, keyset paged, for syncing the refresh queue with the table
+    @Query("SELECT c.id FROM Content c WHERE c.id > :afterId ORDER BY c.id ASC")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // All content ids, read in keyset pages of pageSize
+    default List<Long> findAllIds(int pageSize) {
+        List<Long> ids = new ArrayList<>();
+        long lastId = 0L;
+        List<Long> page;
+        do {
+            page = findIdsAfter(lastId, PageRequest.of(0, pageSize));
+            ids.addAll(page);
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1);
+            }
+        } while (page.size() == pageSize);
+        return ids;
+    }
+
     // Count content items by platform name
     long countByPlatform_PlatformName(String platformName);
 
@@ -0,0 +1,57 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.repository.sql.IContentRepository;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Walks the contents table in id order, one keyset page at a time, so only a page is held in memory
+public class ContentPageIterator implements Iterator<List<Content>> {
+
+    private final IContentRepository contentRepository;
+    private final int pageSize;
+
+    private long lastId;
+    private List<Content> next;
+    private boolean exhausted;
+
+    public ContentPageIterator(IContentRepository contentRepository, int pageSize, long afterId) {
+        this.contentRepository = contentRepository;
+        this.pageSize = pageSize;
+        this.lastId = afterId;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !exhausted) {
+            List<Content> page = contentRepository.findRefreshPageAfter(lastId, PageRequest.of(0, pageSize));
+            if (page.isEmpty()) {
+                exhausted = true;
+            } else {
+                next = page;
+                lastId = page.get(page.size() - 1).getId();
+                // A short page is the last one, no need for another query
+                exhausted = page.size() < pageSize;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public List<Content> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<Content> page = next;
+        next = null;
+        return page;
+    }
+
+    // Highest content id handed out so far
+    public long getLastId() {
+        return lastId;
+    }
+}
@@ -0,0 +1,219 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.fetcher.FetcherRegistry;
+import com.v4.Content_analytics_system.model.DTO.MetricsBatchResult;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.service.MetricsBulkWriter;
+import com.v4.Content_analytics_system.service.MetricsService;
+import com.v4.Content_analytics_system.service.SingleFlightRefresher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Runs the metrics refresh for a set of content items, either one by one or fanned out on virtual threads
+@Component
+public class MetricsRefreshEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRefreshEngine.class);
+
+    private final MetricsService metricsService;
+    private final MetricsBulkWriter bulkWriter;
+    private final SingleFlightRefresher singleFlight;
+    private final FetcherRegistry fetchers;
+
+    @Value("${metrics.refresh.parallel:true}")
+    private boolean parallel;
+
+    @Value("${metrics.refresh.max-in-flight:500}")
+    private int maxInFlight;
+
+    public MetricsRefreshEngine(MetricsService metricsService, MetricsBulkWriter bulkWriter,
+                                SingleFlightRefresher singleFlight, FetcherRegistry fetchers) {
+        this.metricsService = metricsService;
+        this.bulkWriter = bulkWriter;
+        this.singleFlight = singleFlight;
+        this.fetchers = fetchers;
+    }
+
+    public RefreshRunSummary refresh(List<Content> contents) {
+        return refreshPages(List.of(contents).iterator());
+    }
+
+    public RefreshRunSummary refresh(List<Content> contents, RefreshListener listener) {
+        return refreshPages(List.of(contents).iterator(), listener);
+    }
+
+    public RefreshRunSummary refreshPages(Iterator<List<Content>> pages) {
+        return refreshPages(pages, metrics -> { });
+    }
+
+    // Pages are pulled only as fast as the workers free up, so memory stays at about max-in-flight items.
+    // The listener sees every fetched snapshot and every finished item
+    public RefreshRunSummary refreshPages(Iterator<List<Content>> pages, RefreshListener listener) {
+        RefreshRunSummary summary = new RefreshRunSummary(parallel ? "parallel" : "sequential");
+
+        if (parallel) {
+            refreshParallel(pages, summary, listener);
+        } else {
+            refreshSequential(pages, summary, listener);
+        }
+
+        summary.finish();
+        return summary;
+    }
+
+    // Same behaviour as the old scheduler loop (one call per item), kept for comparison runs
+    private void refreshSequential(Iterator<List<Content>> pages, RefreshRunSummary summary,
+                                   RefreshListener listener) {
+        while (pages.hasNext()) {
+            for (Content content : pages.next()) {
+                summary.recordSubmitted();
+                refreshOne(content, summary, listener);
+            }
+        }
+    }
+
+    // One virtual thread per item, or per batch for platforms whose fetcher takes several items per call.
+    // PlatformThrottle caps how many calls are really in flight. Snapshots are handed to the bulk writer's thread,
+    // so a slow Mongo doesn't hold up the next fetch
+    private void refreshParallel(Iterator<List<Content>> pages, RefreshRunSummary summary,
+                                 RefreshListener listener) {
+        Semaphore inFlight = new Semaphore(Math.max(maxInFlight, fetchers.maxBatchSize()));
+
+        try (MetricsBulkWriter.Batch writes = bulkWriter.openBatch(summary::recordFlush);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Open batch per platform (lower case name)
+            Map<String, List<Content>> batches = new HashMap<>();
+
+            while (pages.hasNext()) {
+                for (Content content : pages.next()) {
+                    summary.recordSubmitted();
+
+                    String platform = content.getPlatform().getPlatformName();
+                    int batchSize = fetchers.batchSize(platform);
+                    if (batchSize <= 1) {
+                        submit(executor, inFlight, 1, () -> fetchOne(content, writes, summary, listener));
+                        continue;
+                    }
+
+                    List<Content> batch = batches.computeIfAbsent(platform.toLowerCase(), key -> new ArrayList<>());
+                    batch.add(content);
+                    if (batch.size() >= batchSize) {
+                        submitBatch(executor, inFlight, batch, writes, summary, listener);
+                        batches.remove(platform.toLowerCase());
+                    }
+                }
+            }
+
+            for (List<Content> batch : batches.values()) {
+                submitBatch(executor, inFlight, batch, writes, summary, listener);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Refresh run interrupted while waiting for free workers");
+        }   // executor close() waits for every task, then the writes close() waits until the writer has stored the rest
+    }
+
+    private void submitBatch(ExecutorService executor, Semaphore inFlight, List<Content> batch,
+                             MetricsBulkWriter.Batch writes, RefreshRunSummary summary,
+                             RefreshListener listener) throws InterruptedException {
+        submit(executor, inFlight, batch.size(), () -> fetchBatch(batch, writes, summary, listener));
+    }
+
+    // Blocks the page reader until the run has room for these items
+    private void submit(ExecutorService executor, Semaphore inFlight, int items, Runnable work) throws InterruptedException {
+        inFlight.acquire(items);
+        executor.submit(() -> {
+            try {
+                work.run();
+            } finally {
+                inFlight.release(items);
+            }
+        });
+    }
+
+    private void fetchBatch(List<Content> batch, MetricsBulkWriter.Batch writes, RefreshRunSummary summary,
+                            RefreshListener listener) {
+        long start = System.nanoTime();
+        MetricsBatchResult result;
+        try {
+            result = metricsService.fetchMetricsBatch(batch);
+        } catch (Exception e) {
+            // The whole call failed (throttled, interrupted...), every item of the batch counts as failed
+            for (Content content : batch) {
+                summary.recordFailure();
+                listener.onFinished(content, false);
+            }
+            log.error("Error updating metrics for a batch of {} items: {}", batch.size(), e.getMessage());
+            return;
+        } finally {
+            summary.recordFetch(System.nanoTime() - start);
+        }
+
+        for (ContentMetrics metrics : result.getMetrics()) {
+            writes.add(metrics);
+            singleFlight.remember(metrics);
+            summary.recordSuccess();
+            listener.onFetched(metrics);
+        }
+        result.getFailures().forEach((contentId, reason) -> {
+            summary.recordFailure();
+            log.error("Error updating metrics for content ID: {}: {}", contentId, reason);
+        });
+        for (Content content : batch) {
+            listener.onFinished(content, !result.getFailures().containsKey(content.getId()));
+        }
+    }
+
+    private void fetchOne(Content content, MetricsBulkWriter.Batch writes, RefreshRunSummary summary,
+                          RefreshListener listener) {
+        try {
+            // A manual refresh of the same item may be running (or just done), then its snapshot is already stored
+            SingleFlightRefresher.Result result = singleFlight.execute(content, () -> {
+                long start = System.nanoTime();
+                try {
+                    return metricsService.fetchMetrics(content);
+                } finally {
+                    summary.recordFetch(System.nanoTime() - start);
+                }
+            });
+            ContentMetrics metrics = result.metrics();
+            if (!result.shared()) {
+                writes.add(metrics);
+            }
+            summary.recordSuccess();
+            listener.onFetched(metrics);
+            listener.onFinished(content, true);
+            log.debug("Fetched metrics for content ID: {}", content.getId());
+        } catch (Exception e) {
+            summary.recordFailure();
+            listener.onFinished(content, false);
+            log.error("Error updating metrics for content ID: {}: {}", content.getId(), e.getMessage());
+        }
+    }
+
+    private void refreshOne(Content content, RefreshRunSummary summary, RefreshListener listener) {
+        try {
+            ContentMetrics metrics = singleFlight.refresh(content);
+            summary.recordSuccess();
+            listener.onFetched(metrics);
+            listener.onFinished(content, true);
+            log.debug("Updated metrics for content ID: {}", content.getId());
+        } catch (Exception e) {
+            summary.recordFailure();
+            listener.onFinished(content, false);
+            log.error("Error updating metrics for content ID: {}: {}", content.getId(), e.getMessage());
+        }
+    }
+}
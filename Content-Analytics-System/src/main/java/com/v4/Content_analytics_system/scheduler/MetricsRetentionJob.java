@@ -0,0 +1,45 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.config.SchedulingConfig;
+import com.v4.Content_analytics_system.service.MetricsRetentionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Background compaction of the metrics history (see MetricsRetentionService), a few days per run
+@Component
+public class MetricsRetentionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRetentionJob.class);
+
+    private final MetricsRetentionService retention;
+    private final PartitionLeaseManager leases;
+
+    // Days compacted per run, a long first backlog is worked off over several runs
+    @Value("${metrics.retention.max-days:3}")
+    private int maxDays;
+
+    public MetricsRetentionJob(MetricsRetentionService retention, PartitionLeaseManager leases) {
+        this.retention = retention;
+        this.leases = leases;
+    }
+
+    // Same node as the rollup catch-up, whose rebuilt days it waits for
+    @Scheduled(initialDelayString = "${metrics.retention.initial-delay-ms:300000}",
+            fixedDelayString = "${metrics.retention.interval-ms:3600000}",
+            scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void compact() {
+        if (!retention.isActive() || !leases.owns(0)) {
+            return;
+        }
+        try {
+            retention.compact(maxDays);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Metrics compaction failed: {}", e.getMessage(), e);
+        }
+    }
+}
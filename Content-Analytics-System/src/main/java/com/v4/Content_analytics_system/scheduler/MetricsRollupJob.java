@@ -0,0 +1,47 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.config.SchedulingConfig;
+import com.v4.Content_analytics_system.service.MetricsRollupRebuilder;
+import com.v4.Content_analytics_system.service.MetricsRollupState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Catch-up for the metrics rollups: rebuilds closed days (and their weeks) from the raw snapshots a few days per run,
+// the backfill of existing history included
+@Component
+public class MetricsRollupJob {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRollupJob.class);
+
+    private final MetricsRollupRebuilder rebuilder;
+    private final MetricsRollupState rollupState;
+    private final PartitionLeaseManager leases;
+
+    // Days rebuilt per run, keeps a long backfill from hogging Mongo
+    @Value("${metrics.rollups.catch-up.max-days:7}")
+    private int maxDays;
+
+    public MetricsRollupJob(MetricsRollupRebuilder rebuilder, MetricsRollupState rollupState, PartitionLeaseManager leases) {
+        this.rebuilder = rebuilder;
+        this.rollupState = rollupState;
+        this.leases = leases;
+    }
+
+    // In a cluster only the node holding partition 0 runs it, the others would repeat the same rebuilds
+    @Scheduled(initialDelayString = "${metrics.rollups.catch-up.initial-delay-ms:60000}",
+            fixedDelayString = "${metrics.rollups.catch-up.interval-ms:600000}",
+            scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void catchUp() {
+        if (!rollupState.isActive() || !leases.owns(0)) {
+            return;
+        }
+        try {
+            rebuilder.catchUp(maxDays);
+        } catch (Exception e) {
+            log.error("Metrics rollup catch-up failed: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package com.v4.Content_analytics_system.scheduler;
 
 import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshRun;
 import com.v4.Content_analytics_system.model.entity.sql.Content;
 import com.v4.Content_analytics_system.repository.sql.IContentRepository;
 import com.v4.Content_analytics_system.service.MetricsService;
+import com.v4.Content_analytics_system.service.ReactiveMetricsIngestionService;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Component
 @EnableScheduling
@@ -22,36 +33,251 @@ public class MetricsScheduler {
 
     private final MetricsService metricsService;
     private final IContentRepository contentRepository;
+    private final MetricsRefreshEngine refreshEngine;
+    private final ReactiveMetricsIngestionService reactiveIngestion;
+    private final RefreshQueue refreshQueue;
+    private final PartitionLeaseManager leases;
+    private final RefreshCheckpointStore checkpoints;
+
+    private volatile RefreshRunSummary lastRunSummary;
+
+    // One refresh run at a time: a run that outlasts its interval (or a manual trigger on top of a scheduled one)
+    // makes the next start skip instead of fetching the same items twice
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    private PacedRefreshCycle pacedCycle;
+
+    // Lease version the refresh queue was last built for
+    private volatile int queueLeaseVersion = -1;
+
+    @Value("${metrics.refresh.page-size:200}")
+    private int pageSize;
+
+    // How often a full sweep saves how far it got
+    @Value("${metrics.refresh.checkpoint.interval-ms:5000}")
+    private long checkpointIntervalMs;
+
+    // blocking = MetricsRefreshEngine (RestTemplate + virtual threads), reactive = WebClient + reactive Mongo
+    @Value("${metrics.refresh.engine:blocking}")
+    private String engine;
+
+    // fixed = everything at every 5 minute mark, paced = everything once per interval spread evenly,
+    // priority = RefreshQueue decides what is due (velocity based intervals)
+    @Value("${metrics.refresh.schedule:fixed}")
+    private String schedule;
+
+    @Value("${metrics.refresh.paced.interval-ms:300000}")
+    private long pacedIntervalMs;
+
+    @Value("${metrics.refresh.paced.jitter-ms:5000}")
+    private long pacedJitterMs;
+
+    @Value("${metrics.refresh.paced.max-per-tick:2000}")
+    private int pacedMaxPerTick;
+
+    // Cap on the due items taken per tick, the rest waits for the next one
+    @Value("${metrics.refresh.priority.max-per-tick:5000}")
+    private int maxPerTick;
 
     @Autowired
-    public MetricsScheduler(MetricsService metricsService, IContentRepository contentRepository) {
+    public MetricsScheduler(MetricsService metricsService, IContentRepository contentRepository,
+                            MetricsRefreshEngine refreshEngine,
+                            ReactiveMetricsIngestionService reactiveIngestion,
+                            RefreshQueue refreshQueue, PartitionLeaseManager leases,
+                            RefreshCheckpointStore checkpoints) {
         this.metricsService = metricsService;
         this.contentRepository = contentRepository;
+        this.refreshEngine = refreshEngine;
+        this.reactiveIngestion = reactiveIngestion;
+        this.refreshQueue = refreshQueue;
+        this.leases = leases;
+        this.checkpoints = checkpoints;
     }
 
-    // Run every 5 minutes for near real-time updates
+    // Run every 5 minutes for near real-time updates (fixed schedule only, paced does the same pass spread out)
     @Scheduled(cron = "0 */5 * * * *")
+    public void scheduledFullRefresh() {
+        if ("fixed".equalsIgnoreCase(schedule)) {
+            updateAllMetrics();
+        }
+    }
+
+    // Full sweep over every content item
     public void updateAllMetrics() {
-        log.info("Starting scheduled metrics update at {}", LocalDateTime.now());
+        if (!runLock.tryLock()) {
+            log.warn("Previous metrics refresh still running, not starting another one");
+            return;
+        }
+        try {
+            log.info("Starting scheduled metrics update at {}", LocalDateTime.now());
 
-        List<Content> contents = contentRepository.findAll();
-        log.info("Found {} content items to update", contents.size());
+            // Continues after the checkpoint of a run that didn't finish (restart, crash), or starts from the first id
+            RefreshRun run = checkpoints.startOrResume("full");
 
-        int successCount = 0;
-        int errorCount = 0;
+            // Keyset pages by id instead of the whole table at once, only the partitions this node holds
+            ContentPageIterator pages = new ContentPageIterator(contentRepository, pageSize, run.getLastContentId());
+            RunProgress progress = new RunProgress(run, ownedOnly(pages), checkpoints, checkpointIntervalMs);
 
-        for (Content content : contents) {
+            RefreshRunSummary summary = null;
             try {
-                metricsService.fetchMetricsForContent(content);
-                successCount++;
-                log.debug("Updated metrics for content ID: {}", content.getId());
-            } catch (Exception e) {
-                errorCount++;
-                log.error("Error updating metrics for content ID: {}: {}", content.getId(), e.getMessage());
+                summary = runEngine(progress, progress);
+                lastRunSummary = summary;
+            } finally {
+                // Also when the run broke off, the next one picks up from here
+                progress.finish(summary);
+            }
+
+            log.info("Completed metrics update: {} (run {}, {})", summary, run.getRunId(), run.getStatus());
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    @PostConstruct
+    public void initPacedCycle() {
+        pacedCycle = new PacedRefreshCycle(pacedIntervalMs, pacedJitterMs);
+    }
+
+    // Restores the queue from refresh_schedule and adds whatever content it doesn't know yet
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRefreshQueue() {
+        if (isPriorityMode()) {
+            rebuildRefreshQueue();
+        }
+    }
+
+    private void rebuildRefreshQueue() {
+        queueLeaseVersion = leases.getVersion();
+        refreshQueue.load(leases::owns);
+        refreshQueue.syncWithContent(leases::owns);
+    }
+
+    // Picks up content added or deleted since the last sync
+    @Scheduled(initialDelayString = "${metrics.refresh.priority.sync-interval-ms:600000}",
+            fixedDelayString = "${metrics.refresh.priority.sync-interval-ms:600000}")
+    public void syncRefreshQueue() {
+        if (isPriorityMode() && refreshQueue.isLoaded()) {
+            refreshQueue.syncWithContent(leases::owns);
+        }
+    }
+
+    // Refreshes only the items that are due, then puts them back with an interval from their view velocity
+    @Scheduled(fixedDelayString = "${metrics.refresh.priority.tick-ms:15000}")
+    public void refreshDueContent() {
+        if (!isPriorityMode() || !refreshQueue.isLoaded() || !runLock.tryLock()) {
+            return;
+        }
+
+        List<Long> due = List.of();
+        List<Content> loaded = new ArrayList<>();
+        Map<String, ContentMetrics> fetched = new ConcurrentHashMap<>();
+        try {
+            // Partitions moved between nodes: start over from the persisted schedule of what we hold now
+            if (queueLeaseVersion != leases.getVersion()) {
+                rebuildRefreshQueue();
+            }
+
+            due = refreshQueue.pollDue(LocalDateTime.now(), maxPerTick);
+            if (due.isEmpty()) {
+                return;
+            }
+
+            RefreshRunSummary summary = refreshIds(due, loaded, metrics -> fetched.put(
+                    RefreshQueue.keyOf(metrics.getPlatform(), metrics.getPlatformContentId()), metrics));
+            lastRunSummary = summary;
+
+            log.info("Refreshed {} due items: {}", due.size(), summary);
+        } finally {
+            // Also on failure, otherwise the polled items would never come back
+            if (!due.isEmpty()) {
+                refreshQueue.complete(due, loaded, fetched);
+            }
+            runLock.unlock();
+        }
+        log.debug("{} items scheduled, next due at {}", refreshQueue.size(), refreshQueue.nextDueAt());
+    }
+
+    // Paced schedule: every item once per interval, each at its own slot, a few at every tick instead of all at :00
+    @Scheduled(fixedDelayString = "${metrics.refresh.paced.tick-ms:1000}")
+    public void refreshPacedSlots() {
+        if (!"paced".equalsIgnoreCase(schedule) || !runLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (pacedCycle.needsPlan(now)) {
+                List<Long> contentIds = new ArrayList<>(contentRepository.findAllIds(pageSize));
+                contentIds.removeIf(id -> !leases.owns(id));
+                pacedCycle.plan(contentIds, now);
+                log.info("Planned paced metrics refresh of {} items over {} ms", pacedCycle.remaining(), pacedIntervalMs);
             }
+
+            // A partition lost in the middle of the cycle is skipped, its new owner does it
+            List<Long> due = new ArrayList<>(pacedCycle.takeDue(now, pacedMaxPerTick));
+            due.removeIf(id -> !leases.owns(id));
+            if (due.isEmpty()) {
+                return;
+            }
+
+            RefreshRunSummary summary = refreshIds(due, new ArrayList<>(), metrics -> { });
+            lastRunSummary = summary;
+            log.debug("Paced refresh of {} items ({} left this cycle): {}", due.size(), pacedCycle.remaining(), summary);
+        } finally {
+            runLock.unlock();
         }
+    }
+
+    // Runs the given content ids, loaded page by page as the engine asks for them (and collected into loaded)
+    private RefreshRunSummary refreshIds(List<Long> contentIds, List<Content> loaded, RefreshListener listener) {
+        List<List<Long>> idPages = new ArrayList<>();
+        for (int i = 0; i < contentIds.size(); i += pageSize) {
+            idPages.add(contentIds.subList(i, Math.min(i + pageSize, contentIds.size())));
+        }
+
+        Iterator<List<Content>> pages = idPages.stream()
+                .map(ids -> {
+                    List<Content> page = contentRepository.findAllByIdWithPlatformAndUser(ids);
+                    loaded.addAll(page);
+                    return page;
+                })
+                .iterator();
+
+        return runEngine(pages, listener);
+    }
+
+    // Drops content whose partition another node holds (pass-through when the cluster mode is off)
+    private Iterator<List<Content>> ownedOnly(Iterator<List<Content>> pages) {
+        if (!leases.isEnabled()) {
+            return pages;
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return pages.hasNext();
+            }
+
+            @Override
+            public List<Content> next() {
+                return pages.next().stream()
+                        .filter(content -> leases.owns(content.getId()))
+                        .toList();
+            }
+        };
+    }
+
+    private RefreshRunSummary runEngine(Iterator<List<Content>> pages, RefreshListener listener) {
+        return "reactive".equalsIgnoreCase(engine)
+                ? reactiveIngestion.refresh(pages, listener).block()
+                : refreshEngine.refreshPages(pages, listener);
+    }
+
+    private boolean isPriorityMode() {
+        return "priority".equalsIgnoreCase(schedule);
+    }
 
-        log.info("Completed metrics update: {} successful, {} failed", successCount, errorCount);
+    // Summary of the most recent run (null until the first run finishes)
+    public RefreshRunSummary getLastRunSummary() {
+        return lastRunSummary;
     }
 
     // Optional: Add an immediate trigger method that can be called via API
@@ -0,0 +1,71 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Spreads one pass over all content across the refresh interval instead of doing it all at the start.
+// Every id gets a slot in the interval (hash of the id plus a bit of jitter) and each tick takes the items
+// whose slot has passed. Not thread safe, the scheduler only uses it from its own tick
+public class PacedRefreshCycle {
+
+    private final long intervalMs;
+    private final long jitterMs;
+
+    private long cycleStart = -1;
+    private List<Slot> plan = List.of();
+    private int cursor;
+
+    public PacedRefreshCycle(long intervalMs, long jitterMs) {
+        this.intervalMs = Math.max(1, intervalMs);
+        this.jitterMs = Math.max(0, jitterMs);
+    }
+
+    // A new plan is needed at the start and once the interval is over and every item of the last one went out.
+    // A cycle that fell behind finishes its overdue items first, it is never started again on top of itself
+    public boolean needsPlan(long nowMs) {
+        return cycleStart < 0 || (cursor >= plan.size() && nowMs >= cycleStart + intervalMs);
+    }
+
+    public void plan(List<Long> contentIds, long nowMs) {
+        List<Slot> slots = new ArrayList<>(contentIds.size());
+        for (Long contentId : contentIds) {
+            slots.add(new Slot(slotOf(contentId), contentId));
+        }
+        slots.sort(Comparator.comparingLong(Slot::offsetMs));
+
+        plan = slots;
+        cursor = 0;
+        // Offsets count from the plan, so a fresh start doesn't find half the slots already due
+        cycleStart = nowMs;
+    }
+
+    // Items whose slot is not later than now, at most max of them
+    public List<Long> takeDue(long nowMs, int max) {
+        long elapsed = nowMs - cycleStart;
+        List<Long> due = new ArrayList<>();
+        while (cursor < plan.size() && due.size() < max && plan.get(cursor).offsetMs() <= elapsed) {
+            due.add(plan.get(cursor).contentId());
+            cursor++;
+        }
+        return due;
+    }
+
+    public int remaining() {
+        return plan.size() - cursor;
+    }
+
+    // Mixed so that consecutive ids land far apart, then a little jitter so the same ids don't always go together
+    private long slotOf(long contentId) {
+        long mixed = contentId * 0x9E3779B97F4A7C15L;
+        long slot = Math.floorMod(mixed ^ (mixed >>> 32), intervalMs);
+        if (jitterMs > 0) {
+            slot += ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1);
+        }
+        return Math.clamp(slot, 0, intervalMs - 1);
+    }
+
+    private record Slot(long offsetMs, long contentId) {
+    }
+}
@@ -0,0 +1,205 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.mongodb.client.result.UpdateResult;
+import com.v4.Content_analytics_system.config.SchedulingConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.PartitionLease;
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Splits the refresh between app instances: content id mod partitions gives the partition, and each partition
+// is leased to one node through refresh_leases. Leases are renewed by the heartbeat and run out after lease-ttl-ms,
+// so a node that dies loses them and the others pick them up on their next heartbeat.
+// A node that can't heartbeat in time stops owning anything locally before its leases run out in Mongo,
+// and the heartbeat has its own scheduler thread (SchedulingConfig) so long jobs don't hold it up.
+// With the cluster mode off every node owns everything (the single instance behaviour)
+@Component
+public class PartitionLeaseManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionLeaseManager.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final int partitions;
+    private final Duration leaseTtl;
+    private final String nodeId;
+
+    private volatile Set<Integer> owned = Set.of();
+    // System.nanoTime() until which the owned set is safe to use: the start of the last successful heartbeat
+    // plus the lease TTL, minus a margin for the clock differences between the nodes
+    private volatile long ownedUntilNanos;
+    private final long localTtlNanos;
+    // Bumped whenever the owned set changes, so the schedulers know to rebuild what they hold
+    private final AtomicInteger version = new AtomicInteger();
+
+    public PartitionLeaseManager(MongoTemplate mongoTemplate,
+                                 @Value("${metrics.refresh.cluster.enabled:false}") boolean enabled,
+                                 @Value("${metrics.refresh.cluster.partitions:16}") int partitions,
+                                 @Value("${metrics.refresh.cluster.lease-ttl-ms:30000}") long leaseTtlMs,
+                                 @Value("${metrics.refresh.cluster.node-id:}") String nodeId) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.partitions = Math.max(1, partitions);
+        this.leaseTtl = Duration.ofMillis(leaseTtlMs);
+        this.localTtlNanos = leaseTtl.minus(leaseTtl.dividedBy(10)).toNanos();
+        this.nodeId = nodeId == null || nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    // TTL indexes only clean up, a lease counts as free as soon as expiresAt has passed
+    @PostConstruct
+    public void createIndexes() {
+        if (enabled) {
+            mongoTemplate.indexOps(PartitionLease.class).ensureIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(Duration.ofMinutes(5)));
+            mongoTemplate.indexOps(RefreshNode.class).ensureIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
+            log.info("Cluster refresh enabled, node {} sharing {} partitions", nodeId, partitions);
+        }
+    }
+
+    public boolean owns(long contentId) {
+        return !enabled || (leasesValid() && owned.contains(partitionOf(contentId)));
+    }
+
+    public int partitionOf(long contentId) {
+        return (int) Math.floorMod(contentId, (long) partitions);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getVersion() {
+        return version.get();
+    }
+
+    public Set<Integer> getOwnedPartitions() {
+        return leasesValid() ? owned : Set.of();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Renews what this node holds, gives back partitions above its fair share and claims free or expired ones up to it
+    @Scheduled(fixedDelayString = "${metrics.refresh.cluster.heartbeat-ms:10000}", scheduler = SchedulingConfig.LEASE_SCHEDULER)
+    public synchronized void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plus(leaseTtl);
+
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(nodeId)),
+                    new Update().set("lastSeen", now).set("expiresAt", expiresAt), RefreshNode.class);
+            long liveNodes = mongoTemplate.count(Query.query(Criteria.where("expiresAt").gt(now)), RefreshNode.class);
+            int fairShare = (int) Math.ceil(partitions / (double) Math.max(1, liveNodes));
+
+            TreeSet<Integer> held = new TreeSet<>();
+            for (Integer partition : owned) {
+                if (tryClaim(partition, now, expiresAt)) {
+                    held.add(partition);
+                }
+            }
+
+            // Another node joined: hand back the extras so it can take them
+            while (held.size() > fairShare) {
+                release(held.pollLast());
+            }
+
+            // Start at a node specific offset so nodes don't all race for partition 0 first
+            int offset = Math.floorMod(nodeId.hashCode(), partitions);
+            for (int i = 0; i < partitions && held.size() < fairShare; i++) {
+                int partition = (offset + i) % partitions;
+                if (!held.contains(partition) && tryClaim(partition, now, expiresAt)) {
+                    held.add(partition);
+                }
+            }
+
+            updateOwned(held);
+            ownedUntilNanos = started + localTtlNanos;
+        } catch (Exception e) {
+            // Without Mongo we can't prove we still hold anything, stop refreshing until it is back
+            log.error("Lease heartbeat of node {} failed: {}", nodeId, e.getMessage());
+            updateOwned(Set.of());
+        }
+    }
+
+    // Lets the other nodes take over right away instead of waiting for the leases to run out
+    @PreDestroy
+    public synchronized void releaseAll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("owner").is(nodeId)), PartitionLease.class);
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(nodeId)), RefreshNode.class);
+        } catch (Exception e) {
+            log.warn("Could not release leases of node {}: {}", nodeId, e.getMessage());
+        }
+        updateOwned(Set.of());
+    }
+
+    // Ours already, free, or expired: take it. The upsert hits the _id unique index when someone else holds it
+    private boolean tryClaim(int partition, LocalDateTime now, LocalDateTime expiresAt) {
+        Query query = Query.query(Criteria.where("_id").is(partition)
+                .orOperator(Criteria.where("owner").is(nodeId), Criteria.where("expiresAt").lt(now)));
+        Update update = new Update()
+                .set("owner", nodeId)
+                .set("renewedAt", now)
+                .set("expiresAt", expiresAt);
+        try {
+            UpdateResult result = mongoTemplate.upsert(query, update, PartitionLease.class);
+            return result.getMatchedCount() > 0 || result.getUpsertedId() != null;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private boolean leasesValid() {
+        return System.nanoTime() - ownedUntilNanos < 0;
+    }
+
+    private void release(int partition) {
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(partition).and("owner").is(nodeId)), PartitionLease.class);
+    }
+
+    private void updateOwned(Set<Integer> held) {
+        if (!held.equals(owned)) {
+            log.info("Node {} now refreshes partitions {} (was {})", nodeId, held, owned);
+            owned = Set.copyOf(held);
+            version.incrementAndGet();
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
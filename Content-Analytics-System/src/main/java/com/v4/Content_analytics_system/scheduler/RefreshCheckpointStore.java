@@ -0,0 +1,80 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshRun;
+import com.v4.Content_analytics_system.repository.mongo.IRefreshRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Keeps the refresh_runs documents: starts or resumes a run, saves its checkpoints and serves the run history
+@Component
+public class RefreshCheckpointStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshCheckpointStore.class);
+
+    private final IRefreshRunRepository runRepository;
+    private final PartitionLeaseManager leases;
+
+    public RefreshCheckpointStore(IRefreshRunRepository runRepository, PartitionLeaseManager leases) {
+        this.runRepository = runRepository;
+        this.leases = leases;
+    }
+
+    // The newest unfinished run of this mode is continued, older leftovers are marked abandoned.
+    // In cluster mode only this node's own runs, the other nodes resume theirs
+    public RefreshRun startOrResume(String mode) {
+        List<RefreshRun> unfinished = leases.isEnabled()
+                ? runRepository.findByModeAndStatusAndNodeIdOrderByStartedAtDesc(mode, RefreshRun.Status.RUNNING, leases.getNodeId())
+                : runRepository.findByModeAndStatusOrderByStartedAtDesc(mode, RefreshRun.Status.RUNNING);
+
+        for (RefreshRun stale : unfinished.subList(Math.min(1, unfinished.size()), unfinished.size())) {
+            stale.setStatus(RefreshRun.Status.ABANDONED);
+            stale.setFinishedAt(LocalDateTime.now());
+            runRepository.save(stale);
+        }
+
+        if (!unfinished.isEmpty()) {
+            RefreshRun run = unfinished.get(0);
+            run.setResumeCount(run.getResumeCount() + 1);
+            run.setNodeId(leases.getNodeId());
+            log.info("Resuming refresh run {} after content ID {} ({} done so far)",
+                    run.getRunId(), run.getLastContentId(), run.getSuccessCount() + run.getErrorCount());
+            return runRepository.save(run);
+        }
+
+        RefreshRun run = new RefreshRun();
+        run.setRunId(UUID.randomUUID().toString());
+        run.setNodeId(leases.getNodeId());
+        run.setMode(mode);
+        run.setStatus(RefreshRun.Status.RUNNING);
+        run.setStartedAt(LocalDateTime.now());
+        run.setCheckpointAt(run.getStartedAt());
+        return runRepository.save(run);
+    }
+
+    // A failed checkpoint only costs some repeated fetches after a crash, so it doesn't stop the run
+    public void checkpoint(RefreshRun run) {
+        run.setCheckpointAt(LocalDateTime.now());
+        try {
+            runRepository.save(run);
+        } catch (Exception e) {
+            log.warn("Could not save checkpoint of refresh run {}: {}", run.getRunId(), e.getMessage());
+        }
+    }
+
+    public void complete(RefreshRun run) {
+        run.setStatus(RefreshRun.Status.COMPLETED);
+        run.setFinishedAt(LocalDateTime.now());
+        checkpoint(run);
+    }
+
+    // Latest finished runs, newest first
+    public List<RefreshRun> recentRuns(int limit) {
+        return runRepository.findByStatusOrderByStartedAtDesc(RefreshRun.Status.COMPLETED, PageRequest.of(0, Math.max(1, limit)));
+    }
+}
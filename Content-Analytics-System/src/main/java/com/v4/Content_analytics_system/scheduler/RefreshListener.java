@@ -0,0 +1,16 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+
+// Hooks into a refresh run, called from the worker threads
+@FunctionalInterface
+public interface RefreshListener {
+
+    // Every snapshot that was fetched, before it is written
+    void onFetched(ContentMetrics metrics);
+
+    // Once per item when it is done with, whether the fetch worked or not
+    default void onFinished(Content content, boolean success) {
+    }
+}
@@ -0,0 +1,254 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshSchedule;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.service.ContentMetricsHistory;
+import com.v4.Content_analytics_system.repository.mongo.IRefreshScheduleRepository;
+import com.v4.Content_analytics_system.repository.sql.IContentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongPredicate;
+
+// Min-heap of content ids by next refresh time. The interval follows each item's view velocity:
+// a video that is taking off comes back every few minutes, a flat old one about once a day.
+// The schedule is mirrored in the refresh_schedule collection and reloaded on startup
+@Component
+public class RefreshQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshQueue.class);
+
+    // Weight of the newest velocity sample against the running value
+    private static final double VELOCITY_SMOOTHING = 0.5;
+
+    private final IRefreshScheduleRepository scheduleRepository;
+    private final IContentRepository contentRepository;
+    private final ContentMetricsHistory metricsHistory;
+
+    // Entries are never removed in place: a reschedule pushes a new one and the stale one is skipped when it comes up
+    private final PriorityQueue<Due> heap = new PriorityQueue<>(Comparator.comparing(Due::at));
+    private final Map<Long, RefreshSchedule> schedules = new HashMap<>();
+    private volatile boolean loaded;
+
+    @Value("${metrics.refresh.priority.min-interval-minutes:5}")
+    private long minIntervalMinutes;
+
+    @Value("${metrics.refresh.priority.max-interval-minutes:1440}")
+    private long maxIntervalMinutes;
+
+    // Aim for about this many new views between two refreshes of the same item
+    @Value("${metrics.refresh.priority.views-per-refresh:100}")
+    private double viewsPerRefresh;
+
+    @Value("${metrics.refresh.priority.jitter-ratio:0.1}")
+    private double jitterRatio;
+
+    @Value("${metrics.refresh.page-size:200}")
+    private int pageSize;
+
+    public RefreshQueue(IRefreshScheduleRepository scheduleRepository, IContentRepository contentRepository,
+                        ContentMetricsHistory metricsHistory) {
+        this.scheduleRepository = scheduleRepository;
+        this.contentRepository = contentRepository;
+        this.metricsHistory = metricsHistory;
+    }
+
+    // Rebuilds the heap from the persisted schedule, keeping only the content this node refreshes
+    public synchronized void load(LongPredicate owned) {
+        schedules.clear();
+        heap.clear();
+        for (RefreshSchedule schedule : scheduleRepository.findAll()) {
+            if (!owned.test(schedule.getContentId())) {
+                continue;
+            }
+            schedules.put(schedule.getContentId(), schedule);
+            heap.add(new Due(schedule.getContentId(), schedule.getNextRefreshAt()));
+        }
+        loaded = true;
+        log.info("Loaded refresh schedule for {} content items", schedules.size());
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // New content is due within the first interval, deleted content drops out.
+    // Content another node owns is only dropped from this queue, its schedule stays for that node
+    public void syncWithContent(LongPredicate owned) {
+        Set<Long> contentIds = new HashSet<>(contentRepository.findAllIds(pageSize));
+
+        LocalDateTime now = LocalDateTime.now();
+        List<RefreshSchedule> added = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+
+        synchronized (this) {
+            for (Long contentId : contentIds) {
+                if (owned.test(contentId) && !schedules.containsKey(contentId)) {
+                    // Spread over the first interval, so a big batch of new content doesn't all go at once
+                    LocalDateTime dueAt = now.plusSeconds(ThreadLocalRandom.current().nextLong(minInterval().toSeconds() + 1));
+                    RefreshSchedule schedule = new RefreshSchedule(contentId, dueAt, minInterval().toSeconds());
+                    schedules.put(contentId, schedule);
+                    heap.add(new Due(contentId, dueAt));
+                    added.add(schedule);
+                }
+            }
+            for (Iterator<Long> it = schedules.keySet().iterator(); it.hasNext(); ) {
+                Long contentId = it.next();
+                if (!contentIds.contains(contentId)) {
+                    it.remove();
+                    removed.add(contentId);
+                } else if (!owned.test(contentId)) {
+                    it.remove();
+                }
+            }
+        }
+
+        scheduleRepository.saveAll(added);
+        scheduleRepository.deleteAllById(removed);
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            log.info("Refresh queue synced: {} added, {} removed, {} scheduled", added.size(), removed.size(), size());
+        }
+    }
+
+    // Takes up to max items whose time has come, earliest first. They stay out of the heap until complete()
+    public synchronized List<Long> pollDue(LocalDateTime now, int max) {
+        List<Long> due = new ArrayList<>();
+        while (due.size() < max && !heap.isEmpty() && !heap.peek().at().isAfter(now)) {
+            Due next = heap.poll();
+            RefreshSchedule schedule = schedules.get(next.contentId());
+            if (schedule != null && schedule.getNextRefreshAt().equals(next.at())) {
+                due.add(next.contentId());
+            }
+        }
+        return due;
+    }
+
+    // Puts the polled items back with an interval from their new velocity. Items whose fetch failed keep their interval,
+    // fetched is keyed by platform:platformContentId
+    public void complete(List<Long> dueIds, List<Content> contents, Map<String, ContentMetrics> fetched) {
+        Map<Long, Content> contentById = new HashMap<>();
+        for (Content content : contents) {
+            contentById.put(content.getId(), content);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<RefreshSchedule> updated = new ArrayList<>();
+
+        for (Long contentId : dueIds) {
+            RefreshSchedule schedule;
+            synchronized (this) {
+                schedule = schedules.get(contentId);
+            }
+            if (schedule == null) {
+                continue;   // dropped by a sync in the meantime
+            }
+
+            // Not loaded (deleted, or the run broke off) keeps its interval, a sync drops it if it is really gone
+            Content content = contentById.get(contentId);
+            ContentMetrics metrics = content != null
+                    ? fetched.get(keyOf(content.getPlatform().getPlatformName(), content.getPlatformContentId()))
+                    : null;
+            if (metrics != null) {
+                observe(schedule, content, metrics);
+            }
+
+            synchronized (this) {
+                schedule.setNextRefreshAt(now.plusSeconds(withJitter(schedule.getIntervalSeconds())));
+                heap.add(new Due(contentId, schedule.getNextRefreshAt()));
+            }
+            updated.add(schedule);
+        }
+
+        scheduleRepository.saveAll(updated);
+    }
+
+    public synchronized int size() {
+        return schedules.size();
+    }
+
+    // When the earliest item is due (null when nothing is scheduled)
+    public synchronized LocalDateTime nextDueAt() {
+        return heap.isEmpty() ? null : heap.peek().at();
+    }
+
+    public static String keyOf(String platform, String platformContentId) {
+        return platform + ":" + platformContentId;
+    }
+
+    private void observe(RefreshSchedule schedule, Content content, ContentMetrics metrics) {
+        long views = metrics.getViews() != null ? metrics.getViews() : 0;
+        // An unchanged snapshot comes back as the extended document, validUntil is when it was seen
+        LocalDateTime seenAt = metrics.getValidUntil() != null ? metrics.getValidUntil() : metrics.getRetrievalTimestamp();
+
+        // First time through the queue: take the previous snapshot from the history
+        if (schedule.getLastViews() == null) {
+            Optional<ContentMetrics> previous = metricsHistory
+                    .findLatestBefore(
+                            content.getPlatformContentId(), metrics.getRetrievalTimestamp());
+            previous.ifPresent(p -> {
+                schedule.setLastViews(p.getViews() != null ? p.getViews() : 0);
+                schedule.setLastViewsAt(p.getValidUntil() != null ? p.getValidUntil() : p.getRetrievalTimestamp());
+            });
+        }
+
+        if (schedule.getLastViews() != null && schedule.getLastViewsAt() != null && seenAt.isAfter(schedule.getLastViewsAt())) {
+            double hours = Duration.between(schedule.getLastViewsAt(), seenAt).toMillis() / 3_600_000.0;
+            double sample = Math.max(0, views - schedule.getLastViews()) / hours;
+            Double current = schedule.getViewsPerHour();
+            schedule.setViewsPerHour(current == null ? sample : current + VELOCITY_SMOOTHING * (sample - current));
+        }
+
+        schedule.setLastViews(views);
+        schedule.setLastViewsAt(seenAt);
+        schedule.setIntervalSeconds(intervalFor(schedule.getViewsPerHour()).toSeconds());
+    }
+
+    // Time until about viewsPerRefresh new views are expected, between the min and max interval.
+    // No velocity yet means check again soon, no growth at all means the max interval
+    Duration intervalFor(Double viewsPerHour) {
+        if (viewsPerHour == null) {
+            return minInterval();
+        }
+        if (viewsPerHour <= 0) {
+            return maxInterval();
+        }
+        long seconds = Math.round(viewsPerRefresh / viewsPerHour * 3600);
+        return Duration.ofSeconds(Math.clamp(seconds, minInterval().toSeconds(), maxInterval().toSeconds()));
+    }
+
+    // +/- jitter-ratio of the interval, so items refreshed in the same tick drift apart instead of staying in step
+    private long withJitter(long intervalSeconds) {
+        long spread = Math.round(intervalSeconds * jitterRatio);
+        if (spread <= 0) {
+            return intervalSeconds;
+        }
+        return Math.max(1, intervalSeconds + ThreadLocalRandom.current().nextLong(-spread, spread + 1));
+    }
+
+    private Duration minInterval() {
+        return Duration.ofMinutes(minIntervalMinutes);
+    }
+
+    private Duration maxInterval() {
+        return Duration.ofMinutes(Math.max(minIntervalMinutes, maxIntervalMinutes));
+    }
+
+    private record Due(Long contentId, LocalDateTime at) {
+    }
+}
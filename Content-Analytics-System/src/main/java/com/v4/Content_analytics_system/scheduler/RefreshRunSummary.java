@@ -0,0 +1,141 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Outcome of one refresh run, shared between the worker threads of that run
+public class RefreshRunSummary {
+
+    private final String mode;
+    private final LocalDateTime startedAt;
+    private final long startNanos;
+
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger successCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    // From the bulk writer flushes
+    private final AtomicInteger storedCount = new AtomicInteger();
+    private final AtomicInteger storeErrorCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+
+    // Fetch (platform call) and write (bulk write) latency, kept apart since the writer runs behind the fetchers
+    private final AtomicInteger fetchCount = new AtomicInteger();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicInteger flushCount = new AtomicInteger();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong maxWriteNanos = new AtomicLong();
+
+    private volatile long wallTimeMs;
+
+    public RefreshRunSummary(String mode) {
+        this.mode = mode;
+        this.startedAt = LocalDateTime.now();
+        this.startNanos = System.nanoTime();
+    }
+
+    public void recordSubmitted() {
+        totalCount.incrementAndGet();
+    }
+
+    public void recordSuccess() {
+        successCount.incrementAndGet();
+    }
+
+    public void recordFailure() {
+        errorCount.incrementAndGet();
+    }
+
+    // One platform call, single item or batch
+    public void recordFetch(long nanos) {
+        fetchCount.incrementAndGet();
+        fetchNanos.addAndGet(nanos);
+    }
+
+    // unchanged = snapshots that only extended the previous document
+    public void recordFlush(int inserted, int unchanged, int failed, long nanos) {
+        storedCount.addAndGet(inserted);
+        unchangedCount.addAndGet(unchanged);
+        storeErrorCount.addAndGet(failed);
+        flushCount.incrementAndGet();
+        writeNanos.addAndGet(nanos);
+        maxWriteNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Called once every item of the run has finished
+    public void finish() {
+        wallTimeMs = (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+
+    // GETTERS
+
+    public String getMode() {
+        return mode;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+
+    public int getSuccessCount() {
+        return successCount.get();
+    }
+
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    public int getStoredCount() {
+        return storedCount.get();
+    }
+
+    public int getStoreErrorCount() {
+        return storeErrorCount.get();
+    }
+
+    public int getUnchangedCount() {
+        return unchangedCount.get();
+    }
+
+    public double getAvgFetchMs() {
+        int count = fetchCount.get();
+        return count > 0 ? fetchNanos.get() / 1_000_000.0 / count : 0;
+    }
+
+    public double getAvgWriteMs() {
+        int count = flushCount.get();
+        return count > 0 ? writeNanos.get() / 1_000_000.0 / count : 0;
+    }
+
+    public double getMaxWriteMs() {
+        return maxWriteNanos.get() / 1_000_000.0;
+    }
+
+    public long getWallTimeMs() {
+        return wallTimeMs;
+    }
+
+    // Items processed (successful or not) per second of wall time
+    public double getThroughput() {
+        int processed = successCount.get() + errorCount.get();
+        if (wallTimeMs <= 0) {
+            return processed;
+        }
+        return processed * 1000.0 / wallTimeMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s run: %d items, %d successful, %d failed, %d stored, %d unchanged, %d store errors in %d ms (%.1f items/s), "
+                        + "fetch %.1f ms avg over %d calls, write %.1f ms avg / %.1f ms max over %d flushes",
+                mode, getTotalCount(), getSuccessCount(), getErrorCount(),
+                getStoredCount(), getUnchangedCount(), getStoreErrorCount(), wallTimeMs, getThroughput(),
+                getAvgFetchMs(), fetchCount.get(), getAvgWriteMs(), getMaxWriteMs(), flushCount.get());
+    }
+}
@@ -0,0 +1,127 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshRun;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sits between the pages and the engine of a checkpointed run. Items are handed out in id order but finish in any
+// order, so the checkpoint is a low watermark: the id just below the oldest item still being worked on.
+// Saved from the page reader every checkpoint interval and once more at the end
+public class RunProgress implements Iterator<List<Content>>, RefreshListener {
+
+    private final RefreshRun run;
+    private final Iterator<List<Content>> pages;
+    private final RefreshCheckpointStore store;
+    private final long checkpointIntervalMs;
+
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+    private volatile long handedOutUpTo;
+
+    private final AtomicInteger successCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    // Counts from before a resume
+    private final int baseSuccess;
+    private final int baseErrors;
+    private final int baseStored;
+    private final int baseUnchanged;
+    private final int baseStoreErrors;
+    private final long baseActiveMs;
+
+    private final long startNanos = System.nanoTime();
+    private long lastCheckpointAt = System.currentTimeMillis();
+
+    public RunProgress(RefreshRun run, Iterator<List<Content>> pages, RefreshCheckpointStore store, long checkpointIntervalMs) {
+        this.run = run;
+        this.pages = pages;
+        this.store = store;
+        this.checkpointIntervalMs = checkpointIntervalMs;
+        this.handedOutUpTo = run.getLastContentId();
+        this.baseSuccess = run.getSuccessCount();
+        this.baseErrors = run.getErrorCount();
+        this.baseStored = run.getStoredCount();
+        this.baseUnchanged = run.getUnchangedCount();
+        this.baseStoreErrors = run.getStoreErrorCount();
+        this.baseActiveMs = run.getActiveMs();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pages.hasNext();
+    }
+
+    @Override
+    public List<Content> next() {
+        if (System.currentTimeMillis() - lastCheckpointAt >= checkpointIntervalMs) {
+            checkpoint(null);
+        }
+
+        List<Content> page = pages.next();
+        for (Content content : page) {
+            pending.add(content.getId());
+        }
+        if (!page.isEmpty()) {
+            handedOutUpTo = Math.max(handedOutUpTo, page.get(page.size() - 1).getId());
+        }
+        return page;
+    }
+
+    @Override
+    public void onFetched(ContentMetrics metrics) {
+    }
+
+    @Override
+    public void onFinished(Content content, boolean success) {
+        pending.remove(content.getId());
+        if (success) {
+            successCount.incrementAndGet();
+        } else {
+            errorCount.incrementAndGet();
+        }
+    }
+
+    // Completed only when every page was read and every item came back, otherwise the run stays resumable
+    public void finish(RefreshRunSummary summary) {
+        if (!pages.hasNext() && pending.isEmpty()) {
+            update(summary);
+            store.complete(run);
+        } else {
+            checkpoint(summary);
+        }
+    }
+
+    public RefreshRun getRun() {
+        return run;
+    }
+
+    private void checkpoint(RefreshRunSummary summary) {
+        update(summary);
+        store.checkpoint(run);
+        lastCheckpointAt = System.currentTimeMillis();
+    }
+
+    private void update(RefreshRunSummary summary) {
+        // Read the high end before the pending items, an id handed out in between is then above the answer
+        long upTo = handedOutUpTo;
+        Long oldestPending = pending.isEmpty() ? null : pending.first();
+        run.setLastContentId(oldestPending != null ? oldestPending - 1 : upTo);
+
+        run.setSuccessCount(baseSuccess + successCount.get());
+        run.setErrorCount(baseErrors + errorCount.get());
+        if (summary != null) {
+            run.setStoredCount(baseStored + summary.getStoredCount());
+            run.setUnchangedCount(baseUnchanged + summary.getUnchangedCount());
+            run.setStoreErrorCount(baseStoreErrors + summary.getStoreErrorCount());
+        }
+
+        long activeMs = baseActiveMs + (System.nanoTime() - startNanos) / 1_000_000;
+        int processed = run.getSuccessCount() + run.getErrorCount();
+        run.setActiveMs(activeMs);
+        run.setThroughput(activeMs > 0 ? processed * 1000.0 / activeMs : processed);
+    }
+}
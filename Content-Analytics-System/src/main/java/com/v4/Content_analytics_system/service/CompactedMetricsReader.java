@@ -0,0 +1,161 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.v4.Content_analytics_system.service.MetricsRollupService.COLLECTION;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.CONTENT;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.DAY;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.HOUR;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.HOUR_FORMAT;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.PLATFORM;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.numberOf;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.utcStart;
+
+// The metrics of compacted days, whose raw snapshots are gone, read back from the hour and day rollups. Used by
+// ContentMetricsHistory to fill in what the raw collection no longer has
+@Component
+public class CompactedMetricsReader {
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsRollupState state;
+
+    public CompactedMetricsReader(MongoTemplate mongoTemplate, MetricsRollupState state) {
+        this.mongoTemplate = mongoTemplate;
+        this.state = state;
+    }
+
+    // The compacted history of the matching content items as snapshots, oldest first: one per hour in the hourly
+    // tier, one per day before it. Each stands for the retrievals of its period (sampleCount) with their mean
+    // counters, held from the period start until the last retrieval (validUntil)
+    public List<ContentMetrics> compactedHistory(Long userId, String platform, String platformContentId) {
+        MetricsRollupState.State current = state.readState();
+        if (current.compactedThrough() == null) {
+            return List.of();
+        }
+        String rawFrom = current.compactedThrough().plusDays(1).toString();
+        String hoursFrom = current.hoursKeptFrom() != null ? current.hoursKeptFrom().toString() : null;
+
+        List<ContentMetrics> history = new ArrayList<>();
+        if (hoursFrom != null) {
+            Criteria days = contentCriteria(DAY, userId, platform, platformContentId)
+                    .and("period").lt(hoursFrom.compareTo(rawFrom) < 0 ? hoursFrom : rawFrom);
+            for (ContentMetricsRollup rollup : mongoTemplate.find(Query.query(days), ContentMetricsRollup.class)) {
+                history.add(toSnapshot(rollup, utcStart(LocalDate.parse(rollup.getPeriod()))));
+            }
+        }
+
+        Criteria hours = contentCriteria(HOUR, userId, platform, platformContentId).and("period").lt(rawFrom);
+        if (hoursFrom != null) {
+            hours.gte(hoursFrom);
+        }
+        for (ContentMetricsRollup rollup : mongoTemplate.find(Query.query(hours), ContentMetricsRollup.class)) {
+            history.add(toSnapshot(rollup, hourStart(rollup.getPeriod())));
+        }
+
+        history.sort(Comparator.comparing(ContentMetrics::getRetrievalTimestamp));
+        return history;
+    }
+
+    // Last compacted hour (or day) of each of the items, one aggregate for all of them. For items not fetched since
+    // their raw snapshots were compacted
+    public List<ContentMetrics> lastCompacted(Collection<String> platformContentIds) {
+        MetricsRollupState.State current = state.readState();
+        if (current.compactedThrough() == null || platformContentIds.isEmpty()) {
+            return List.of();
+        }
+        String rawFrom = current.compactedThrough().plusDays(1).toString();
+        String hoursFrom = current.hoursKeptFrom() != null ? current.hoursKeptFrom().toString() : null;
+
+        Document hours = new Document("grain", HOUR).append("period", hoursFrom != null
+                ? new Document("$gte", hoursFrom).append("$lt", rawFrom) : new Document("$lt", rawFrom));
+        List<Document> tiers = new ArrayList<>(List.of(hours));
+        if (hoursFrom != null) {
+            tiers.add(new Document("grain", DAY).append("period",
+                    new Document("$lt", hoursFrom.compareTo(rawFrom) < 0 ? hoursFrom : rawFrom)));
+        }
+
+        // An hour (yyyy-MM-ddTHH) sorts after its day, and the day tier ends where the hour tier starts
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("level", CONTENT)
+                        .append("platformContentId", new Document("$in", platformContentIds))
+                        .append("$or", tiers)),
+                new Document("$sort", new Document("period", -1)),
+                new Document("$group", new Document("_id", new Document("p", "$platform").append("c", "$platformContentId"))
+                        .append("doc", new Document("$first", "$$ROOT"))),
+                new Document("$replaceRoot", new Document("newRoot", "$doc")));
+
+        List<ContentMetrics> last = new ArrayList<>();
+        for (Document doc : mongoTemplate.getCollection(COLLECTION).aggregate(pipeline)) {
+            ContentMetricsRollup rollup = mongoTemplate.getConverter().read(ContentMetricsRollup.class, doc);
+            last.add(toSnapshot(rollup, HOUR.equals(rollup.getGrain())
+                    ? hourStart(rollup.getPeriod()) : utcStart(LocalDate.parse(rollup.getPeriod()))));
+        }
+        return last;
+    }
+
+    // Views summed over the compacted days of the platform, the part the raw sum no longer sees
+    public long compactedViews(String platform) {
+        LocalDate compactedThrough = state.readState().compactedThrough();
+        if (compactedThrough == null) {
+            return 0;
+        }
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("grain", DAY).append("level", PLATFORM).append("platform", platform)
+                        .append("period", new Document("$lte", compactedThrough.toString()))),
+                new Document("$group", new Document("_id", null).append("views", new Document("$sum", "$views"))));
+        Document total = mongoTemplate.getCollection(COLLECTION).aggregate(pipeline).first();
+        return total != null ? numberOf(total.get("views")) : 0;
+    }
+
+    private static Criteria contentCriteria(String grain, Long userId, String platform, String platformContentId) {
+        Criteria criteria = Criteria.where("grain").is(grain).and("level").is(CONTENT);
+        if (userId != null) {
+            criteria.and("userId").is(userId);
+        }
+        if (platform != null) {
+            criteria.and("platform").is(platform);
+        }
+        if (platformContentId != null) {
+            criteria.and("platformContentId").is(platformContentId);
+        }
+        return criteria;
+    }
+
+    private static LocalDateTime hourStart(String period) {
+        return LocalDateTime.parse(period, HOUR_FORMAT).atZone(ZoneOffset.UTC)
+                .withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    private static ContentMetrics toSnapshot(ContentMetricsRollup rollup, LocalDateTime start) {
+        long samples = rollup.getSamples() != null && rollup.getSamples() > 0 ? rollup.getSamples() : 1;
+        ContentMetrics metrics = new ContentMetrics();
+        metrics.setId(rollup.getId());
+        metrics.setUserId(rollup.getUserId());
+        metrics.setPlatform(rollup.getPlatform());
+        metrics.setPlatformContentId(rollup.getPlatformContentId());
+        metrics.setRetrievalTimestamp(start);
+        metrics.setValidUntil(rollup.getLastAt());
+        metrics.setSampleCount((int) samples);
+        metrics.setViews(rollup.getViews() != null ? rollup.getViews() / samples : null);
+        metrics.setLikes(rollup.getLikes() != null ? rollup.getLikes() / samples : null);
+        // Comments only when the platform sent them
+        metrics.setComments(rollup.getMaxComments() != null && rollup.getComments() != null ? rollup.getComments() / samples : null);
+        MetricsService.calculateEngagementRate(metrics);
+        return metrics;
+    }
+}
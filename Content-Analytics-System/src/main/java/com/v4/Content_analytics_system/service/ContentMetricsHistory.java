@@ -0,0 +1,236 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.repository.mongo.IContentMetricsRepository;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// The snapshot history reads and writes the services use, answered by the repository (plain / time-series layout)
+// or by the day buckets (bucket layout), so callers don't care how the snapshots are stored.
+// Time series come from the rollups when they are on, latest snapshots from content_metrics_latest.
+// Once retention has compacted old days, the history reads put the hourly / daily documents in front of the raw snapshots
+@Service
+public class ContentMetricsHistory {
+
+    private final IContentMetricsRepository metricsRepository;
+    private final MetricsBucketStore bucketStore;
+    private final MetricsRollupService rollups;
+    private final MetricsRollupIngest rollupIngest;
+    private final CompactedMetricsReader compactedReader;
+    private final MetricsRollupState rollupState;
+    private final LatestMetricsStore latest;
+    private final MongoTemplate mongoTemplate;
+    private final MetricsStorageConfig storageConfig;
+
+    public ContentMetricsHistory(IContentMetricsRepository metricsRepository, MetricsBucketStore bucketStore,
+                                 MetricsRollupService rollups, MetricsRollupIngest rollupIngest,
+                                 CompactedMetricsReader compactedReader, MetricsRollupState rollupState,
+                                 LatestMetricsStore latest, MongoTemplate mongoTemplate, MetricsStorageConfig storageConfig) {
+        this.metricsRepository = metricsRepository;
+        this.bucketStore = bucketStore;
+        this.rollups = rollups;
+        this.rollupIngest = rollupIngest;
+        this.compactedReader = compactedReader;
+        this.rollupState = rollupState;
+        this.latest = latest;
+        this.mongoTemplate = mongoTemplate;
+        this.storageConfig = storageConfig;
+    }
+
+    public ContentMetrics save(ContentMetrics metrics) {
+        ContentMetrics saved = buckets() ? bucketStore.save(metrics) : metricsRepository.save(metrics);
+        written(List.of(metrics));
+        return saved;
+    }
+
+    // Folded into the previous document instead of saved, still a snapshot for the rollups and the latest one
+    public void recordUnchanged(ContentMetrics metrics) {
+        written(List.of(metrics));
+    }
+
+    // After the bulk writers stored a batch
+    public void written(List<ContentMetrics> docs) {
+        rollupIngest.record(docs);
+        latest.record(docs);
+    }
+
+    // After a bulk write that may not have fully landed
+    public void writeFailed(List<ContentMetrics> docs) {
+        rollupIngest.markDirty(docs);
+        latest.forget(docs.stream().map(LatestMetricsStore::keyOf).distinct().toList());
+    }
+
+    public List<ContentMetrics> findByPlatformContentIdOrderByRetrievalTimestampAsc(String platformContentId) {
+        return withCompacted(compactedReader.compactedHistory(null, null, platformContentId), buckets()
+                ? bucketStore.findByPlatformContentIdOrderByRetrievalTimestampAsc(platformContentId)
+                : metricsRepository.findByPlatformContentIdOrderByRetrievalTimestampAsc(platformContentId));
+    }
+
+    public List<ContentMetrics> findByUserIdAndPlatform(Long userId, String platform) {
+        return withCompacted(compactedReader.compactedHistory(userId, platform, null), buckets()
+                ? bucketStore.findByUserIdAndPlatform(userId, platform)
+                : metricsRepository.findByUserIdAndPlatform(userId, platform));
+    }
+
+    public Optional<ContentMetrics> findLatest(Content content) {
+        return Optional.ofNullable(findLatest(List.of(content)).get(content.getId()));
+    }
+
+    // Latest snapshot of every item in one $in query, by content id. Items stored before content_metrics_latest
+    // existed (or whose write failed) are looked up in the history and put there, all of them in one aggregate
+    // (plus one over the compacted tiers for the ones still missing). Items without any snapshot are left out.
+    // The contents' platforms have to be loaded
+    public Map<Long, ContentMetrics> findLatest(Collection<Content> contents) {
+        Map<String, Content> byKey = new LinkedHashMap<>();
+        for (Content content : contents) {
+            if (content.getPlatformContentId() != null) {
+                byKey.put(LatestMetricsStore.keyOf(content.getPlatform().getPlatformName(), content.getPlatformContentId()), content);
+            }
+        }
+        Map<String, ContentMetrics> found = new HashMap<>(latest.find(byKey.keySet()));
+
+        Set<String> missing = new HashSet<>(byKey.keySet());
+        missing.removeAll(found.keySet());
+        if (!missing.isEmpty()) {
+            List<ContentMetrics> backfill = new ArrayList<>();
+            collect(buckets() ? bucketStore.findLatest(idsOf(missing)) : findLatestRaw(idsOf(missing)), missing, found, backfill);
+            if (!missing.isEmpty()) {
+                collect(compactedReader.lastCompacted(idsOf(missing)), missing, found, backfill);
+            }
+            if (!backfill.isEmpty()) {
+                latest.record(backfill);
+            }
+        }
+
+        Map<Long, ContentMetrics> byContent = new HashMap<>();
+        byKey.forEach((key, content) -> {
+            ContentMetrics metrics = found.get(key);
+            if (metrics != null) {
+                byContent.put(content.getId(), metrics);
+            }
+        });
+        return byContent;
+    }
+
+    public Optional<ContentMetrics> findLatestBefore(String platformContentId, LocalDateTime before) {
+        Optional<ContentMetrics> raw = buckets()
+                ? bucketStore.findLatestBefore(platformContentId, before)
+                : metricsRepository.findTopByPlatformContentIdAndRetrievalTimestampBeforeOrderByRetrievalTimestampDesc(platformContentId, before);
+        return raw.isPresent() ? raw : lastCompacted(platformContentId, before);
+    }
+
+    public List<Map<String, Object>> getTimeSeriesData(Long userId, LocalDateTime startDate) {
+        if (rollupState.isActive()) {
+            return rollups.getTimeSeriesData(userId, null, startDate);
+        }
+        return buckets()
+                ? bucketStore.getTimeSeriesData(userId, null, startDate)
+                : metricsRepository.getTimeSeriesData(userId, startDate);
+    }
+
+    public List<Map<String, Object>> getTimeSeriesDataByPlatform(Long userId, String platform, LocalDateTime startDate) {
+        if (rollupState.isActive()) {
+            return rollups.getTimeSeriesData(userId, platform, startDate);
+        }
+        return buckets()
+                ? bucketStore.getTimeSeriesData(userId, platform, startDate)
+                : metricsRepository.getTimeSeriesDataByPlatform(userId, platform, startDate);
+    }
+
+    // Compacted days from their day rollups, the raw snapshots only after them (the ones of compacted days still
+    // waiting for their delete are left out, like in withCompacted)
+    public long sumViewsByPlatform(String platform) {
+        LocalDateTime rawKeptFrom = rollupState.rawKeptFrom();
+        if (rawKeptFrom == null) {
+            return buckets() ? bucketStore.sumViewsByPlatform(platform) : metricsRepository.sumViewsByPlatform(platform);
+        }
+        long raw;
+        if (buckets()) {
+            raw = bucketStore.sumViewsByPlatform(platform, MetricsBucketStore.utcDay(rawKeptFrom));
+        } else {
+            Long since = metricsRepository.sumViewsByPlatformSince(platform, rawKeptFrom);
+            raw = since != null ? since : 0;
+        }
+        return raw + compactedReader.compactedViews(platform);
+    }
+
+    // Newest snapshot document of each of the items, one aggregate on the platformContentId_retrievalTimestamp index
+    private List<ContentMetrics> findLatestRaw(Collection<String> platformContentIds) {
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("platformContentId", new Document("$in", platformContentIds))),
+                new Document("$sort", new Document("platformContentId", 1).append("retrievalTimestamp", -1)),
+                new Document("$group", new Document("_id", new Document("p", "$platform").append("c", "$platformContentId"))
+                        .append("doc", new Document("$first", "$$ROOT"))),
+                new Document("$replaceRoot", new Document("newRoot", "$doc")));
+
+        List<ContentMetrics> newest = new ArrayList<>();
+        for (Document doc : mongoTemplate.getCollection(storageConfig.getCollectionName()).aggregate(pipeline)) {
+            newest.add(mongoTemplate.getConverter().read(ContentMetrics.class, doc));
+        }
+        return newest;
+    }
+
+    // The history results for the still missing keys (an id can match the same id on another platform)
+    private static void collect(List<ContentMetrics> results, Set<String> missing, Map<String, ContentMetrics> found,
+                                List<ContentMetrics> backfill) {
+        for (ContentMetrics metrics : results) {
+            String key = LatestMetricsStore.keyOf(metrics);
+            if (missing.remove(key)) {
+                found.put(key, metrics);
+                backfill.add(metrics);
+            }
+        }
+    }
+
+    private static Set<String> idsOf(Set<String> keys) {
+        Set<String> ids = new HashSet<>();
+        for (String key : keys) {
+            ids.add(key.substring(key.indexOf(':') + 1));
+        }
+        return ids;
+    }
+
+    // Item not fetched since its raw snapshots were compacted: its last hour (or day) stands in
+    private Optional<ContentMetrics> lastCompacted(String platformContentId, LocalDateTime before) {
+        List<ContentMetrics> compacted = compactedReader.compactedHistory(null, null, platformContentId);
+        for (int i = compacted.size() - 1; i >= 0; i--) {
+            if (before == null || compacted.get(i).getRetrievalTimestamp().isBefore(before)) {
+                return Optional.of(compacted.get(i));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Raw snapshots of compacted days that are still waiting for their delete are already in the compacted tiers
+    private List<ContentMetrics> withCompacted(List<ContentMetrics> compacted, List<ContentMetrics> raw) {
+        LocalDateTime rawKeptFrom = rollupState.rawKeptFrom();
+        if (rawKeptFrom == null) {
+            return raw;
+        }
+        List<ContentMetrics> merged = new ArrayList<>(compacted);
+        for (ContentMetrics metrics : raw) {
+            if (metrics.getRetrievalTimestamp() != null && !metrics.getRetrievalTimestamp().isBefore(rawKeptFrom)) {
+                merged.add(metrics);
+            }
+        }
+        return merged;
+    }
+
+    private boolean buckets() {
+        return bucketStore != null && bucketStore.isActive();
+    }
+}
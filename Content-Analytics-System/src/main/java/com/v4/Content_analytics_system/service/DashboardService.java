@@ -53,7 +53,7 @@ public class DashboardService {
         Map<String, Object> summ = new HashMap<>();
 
         // Getting user's content
-        List<Content> contents = contentRepository.findByUserId(userId);
+        List<Content> contents = contentRepository.findByUserIdWithPlatformAndUser(userId);
         System.out.println("Found " + contents.size() + " total content items for user ID: " + userId);
         contents.forEach(c -> System.out.println("- Content: " + c.getTitle() + ", Platform: " + c.getPlatform().getPlatformName()));
 
@@ -0,0 +1,135 @@
+package com.v4.Content_analytics_system.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// content_metrics_latest: the newest snapshot of every content item, _id = platform:platformContentId (the same key
+// as the dedupe and single-flight caches, ids are only unique within a platform), replaced on ingest.
+// A content list reads all its items with one $in query instead of a sorted history query per item.
+// The copy is the newest retrieval on its own: retrievalTimestamp is when it was last seen, an unchanged snapshot
+// folded into the previous history document replaces it like any other. sampleCount / validUntil of the history
+// document are not kept here
+@Component
+public class LatestMetricsStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestMetricsStore.class);
+
+    public static final String COLLECTION = "content_metrics_latest";
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    public LatestMetricsStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Newest snapshot per item of the batch replaces the stored one, unless that one is newer already
+    public void record(List<ContentMetrics> docs) {
+        Map<String, ContentMetrics> newest = new LinkedHashMap<>();
+        for (ContentMetrics doc : docs) {
+            if (doc.getPlatformContentId() != null && doc.getRetrievalTimestamp() != null) {
+                newest.merge(keyOf(doc), doc, (a, b) -> seenAt(b).isBefore(seenAt(a)) ? a : b);
+            }
+        }
+        if (newest.isEmpty()) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>(newest.keySet());
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetrics.class, COLLECTION);
+        for (ContentMetrics metrics : newest.values()) {
+            ops.replaceOne(olderThan(metrics), toDocument(metrics), FindAndReplaceOptions.options().upsert());
+        }
+
+        try {
+            ops.execute();
+        } catch (BulkOperationException e) {
+            // A newer (or the same) snapshot already stored makes the guarded upsert insert a duplicate _id, that's fine.
+            // Anything else: drop those items, the next read takes them from the history again
+            List<String> failed = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    failed.add(keys.get(error.getIndex()));
+                }
+            }
+            if (!failed.isEmpty()) {
+                log.error("Latest metrics update failed for {} of {} items: {}", failed.size(), keys.size(), e.getMessage());
+                forget(failed);
+            }
+        } catch (Exception e) {
+            log.error("Latest metrics update of {} items failed: {}", keys.size(), e.getMessage());
+            forget(keys);
+        }
+    }
+
+    // The write of these snapshots may not have landed, so what is stored for them can't be trusted either way
+    public void forget(Collection<String> keys) {
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(keys)), COLLECTION);
+        } catch (Exception e) {
+            log.error("Could not drop latest metrics of {} items: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    // One round trip for any number of items (keyOf keys), the ones without a stored latest snapshot are left out
+    public Map<String, ContentMetrics> find(Collection<String> keys) {
+        Map<String, ContentMetrics> found = new HashMap<>();
+        if (keys.isEmpty()) {
+            return found;
+        }
+        Query query = Query.query(Criteria.where("_id").in(keys));
+        for (ContentMetrics metrics : mongoTemplate.find(query, ContentMetrics.class, COLLECTION)) {
+            found.put(keyOf(metrics), metrics);
+        }
+        return found;
+    }
+
+    public static String keyOf(String platform, String platformContentId) {
+        return platform + ":" + platformContentId;
+    }
+
+    public static String keyOf(ContentMetrics metrics) {
+        return keyOf(metrics.getPlatform(), metrics.getPlatformContentId());
+    }
+
+    private Query olderThan(ContentMetrics metrics) {
+        return Query.query(Criteria.where("_id").is(keyOf(metrics))
+                .and("retrievalTimestamp").lt(seenAt(metrics)));
+    }
+
+    // The whole snapshot under the item's key, so fields the newer one doesn't have don't stay behind
+    private Document toDocument(ContentMetrics metrics) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(metrics, document);
+        document.remove("_class");
+        document.remove("sampleCount");
+        document.remove("validUntil");
+        document.put("_id", keyOf(metrics));
+        document.put("retrievalTimestamp", mongoTemplate.getConverter().convertToMongoType(seenAt(metrics)));
+        return document;
+    }
+
+    // A history document backfilled from a folded run was last seen at its validUntil
+    private static LocalDateTime seenAt(ContentMetrics metrics) {
+        return metrics.getValidUntil() != null ? metrics.getValidUntil() : metrics.getRetrievalTimestamp();
+    }
+}
@@ -0,0 +1,245 @@
+package com.v4.Content_analytics_system.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsBucket;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Bucket layout: every snapshot is $push-ed into the document of its content item and day (upserted on the first one).
+// Reads turn the samples back into ContentMetrics, so callers see the same snapshots as with one document each
+@Component
+public class MetricsBucketStore {
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsStorageConfig storageConfig;
+
+    public MetricsBucketStore(MongoTemplate mongoTemplate, MetricsStorageConfig storageConfig) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageConfig = storageConfig;
+    }
+
+    public boolean isActive() {
+        return storageConfig.isBuckets();
+    }
+
+    // Bucket of the snapshot's content item and UTC day ($dateToString in the raw pipelines groups by UTC day too)
+    public static Query bucketOf(ContentMetrics metrics) {
+        return Query.query(Criteria.where("_id").is(bucketId(metrics)));
+    }
+
+    // Appends the snapshot as a sample and moves the running values, creating the bucket on its first sample
+    public static Update sampleUpdate(ContentMetrics metrics) {
+        Document sample = new Document("t", toDate(metrics.getRetrievalTimestamp()))
+                .append("v", metrics.getViews())
+                .append("l", metrics.getLikes())
+                .append("c", metrics.getComments())
+                .append("s", metrics.getShares());
+
+        Update update = new Update()
+                .setOnInsert("userId", metrics.getUserId())
+                .setOnInsert("platform", metrics.getPlatform())
+                .setOnInsert("platformContentId", metrics.getPlatformContentId())
+                .setOnInsert("day", utcDay(metrics.getRetrievalTimestamp()).toString())
+                .push("samples", sample)
+                .inc("count", 1)
+                .min("firstAt", metrics.getRetrievalTimestamp())
+                .max("lastAt", metrics.getRetrievalTimestamp())
+                .set("last", sample)
+                .set("platformSpecMetrics", metrics.getPlatformSpecMetrics());
+
+        // $min / $max with a null would put the null in, counters the platform didn't send are left out
+        minMax(update, "views", metrics.getViews());
+        minMax(update, "likes", metrics.getLikes());
+        minMax(update, "comments", metrics.getComments());
+        minMax(update, "shares", metrics.getShares());
+        return update;
+    }
+
+    public ContentMetrics save(ContentMetrics metrics) {
+        mongoTemplate.upsert(bucketOf(metrics), sampleUpdate(metrics), ContentMetricsBucket.class);
+        return metrics;
+    }
+
+    // One unordered bulk of upserts, every snapshot touches exactly one bucket
+    public BulkWriteResult write(List<ContentMetrics> docs) {
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetricsBucket.class);
+        for (ContentMetrics doc : docs) {
+            ops.upsert(bucketOf(doc), sampleUpdate(doc));
+        }
+        return ops.execute();
+    }
+
+
+    // READS
+
+    // Every snapshot of the item, oldest first (one document per day instead of one per retrieval)
+    public List<ContentMetrics> findByPlatformContentIdOrderByRetrievalTimestampAsc(String platformContentId) {
+        Query query = Query.query(Criteria.where("platformContentId").is(platformContentId))
+                .with(Sort.by(Sort.Direction.ASC, "day"));
+        return unpack(mongoTemplate.find(query, ContentMetricsBucket.class));
+    }
+
+    public List<ContentMetrics> findByUserIdAndPlatform(Long userId, String platform) {
+        Query query = Query.query(Criteria.where("userId").is(userId).and("platform").is(platform))
+                .with(Sort.by(Sort.Direction.ASC, "day"));
+        return unpack(mongoTemplate.find(query, ContentMetricsBucket.class));
+    }
+
+    // Newest bucket of each of the items in one aggregate, items without any are left out
+    public List<ContentMetrics> findLatest(Collection<String> platformContentIds) {
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("platformContentId", new Document("$in", platformContentIds))),
+                new Document("$sort", new Document("platformContentId", 1).append("lastAt", -1)),
+                new Document("$group", new Document("_id", new Document("p", "$platform").append("c", "$platformContentId"))
+                        .append("doc", new Document("$first", "$$ROOT"))),
+                new Document("$replaceRoot", new Document("newRoot", "$doc")));
+
+        List<ContentMetrics> latest = new ArrayList<>();
+        for (Document doc : mongoTemplate.getCollection(MetricsStorageConfig.BUCKET_COLLECTION).aggregate(pipeline)) {
+            ContentMetricsBucket bucket = mongoTemplate.getConverter().read(ContentMetricsBucket.class, doc);
+            if (bucket.getLast() != null) {
+                ContentMetrics metrics = toMetrics(bucket, bucket.getLast());
+                metrics.setPlatformSpecMetrics(bucket.getPlatformSpecMetrics());
+                latest.add(metrics);
+            }
+        }
+        return latest;
+    }
+
+    // Latest snapshot strictly before the given time, the bucket holding it may also hold later ones
+    public Optional<ContentMetrics> findLatestBefore(String platformContentId, LocalDateTime before) {
+        Query query = Query.query(Criteria.where("platformContentId").is(platformContentId).and("firstAt").lt(before))
+                .with(Sort.by(Sort.Direction.DESC, "firstAt"))
+                .limit(1);
+        ContentMetricsBucket bucket = mongoTemplate.findOne(query, ContentMetricsBucket.class);
+        if (bucket == null) {
+            return Optional.empty();
+        }
+        return bucket.getSamples().stream()
+                .filter(sample -> sample.timestamp() != null && sample.timestamp().isBefore(before))
+                .max(Comparator.comparing(ContentMetricsBucket.Sample::timestamp))
+                .map(sample -> toMetrics(bucket, sample));
+    }
+
+    // Same output as IContentMetricsRepository.getTimeSeriesData / getTimeSeriesDataByPlatform (platform null = all).
+    // Buckets already are per day, so only the first (and last) day needs its samples filtered by time
+    public List<Map<String, Object>> getTimeSeriesData(Long userId, String platform, LocalDateTime startDate) {
+        Document match = new Document("userId", userId);
+        if (platform != null) {
+            match.append("platform", platform);
+        }
+        return dailyTotals(match, startDate, null);
+    }
+
+    // Per day sums of the samples in [from, to) (to null = open ended) of the buckets matching the given fields
+    public List<Map<String, Object>> dailyTotals(Document scope, LocalDateTime from, LocalDateTime to) {
+        Document days = new Document("$gte", utcDay(from).toString());
+        List<Document> inRange = new ArrayList<>(List.of(new Document("$gte", List.of("$$this.t", toDate(from)))));
+        if (to != null) {
+            days.append("$lte", utcDay(to).toString());
+            inRange.add(new Document("$lt", List.of("$$this.t", toDate(to))));
+        }
+        Document match = new Document(scope).append("day", days);
+
+        List<Document> pipeline = List.of(
+                new Document("$match", match),
+                new Document("$project", new Document("day", 1)
+                        .append("samples", new Document("$filter", new Document("input", "$samples")
+                                .append("cond", new Document("$and", inRange))))),
+                new Document("$match", new Document("samples.0", new Document("$exists", true))),
+                new Document("$group", new Document("_id", "$day")
+                        .append("views", new Document("$sum", new Document("$sum", "$samples.v")))
+                        .append("likes", new Document("$sum", new Document("$sum", "$samples.l")))
+                        .append("comments", new Document("$sum", new Document("$sum", "$samples.c")))),
+                new Document("$project", new Document("_id", 0).append("date", "$_id")
+                        .append("views", 1).append("likes", 1).append("comments", 1)),
+                new Document("$sort", new Document("date", 1)));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        mongoTemplate.getCollection(MetricsStorageConfig.BUCKET_COLLECTION).aggregate(pipeline).forEach(result::add);
+        return result;
+    }
+
+    public long sumViewsByPlatform(String platform) {
+        return sumViewsByPlatform(platform, null);
+    }
+
+    // Buckets from the given day on only (null = all of them)
+    public long sumViewsByPlatform(String platform, LocalDate fromDay) {
+        Document match = new Document("platform", platform);
+        if (fromDay != null) {
+            match.append("day", new Document("$gte", fromDay.toString()));
+        }
+        List<Document> pipeline = List.of(
+                new Document("$match", match),
+                new Document("$group", new Document("_id", null)
+                        .append("totalViews", new Document("$sum", new Document("$sum", "$samples.v")))));
+
+        Document total = mongoTemplate.getCollection(MetricsStorageConfig.BUCKET_COLLECTION).aggregate(pipeline).first();
+        return total != null ? total.get("totalViews", Number.class).longValue() : 0;
+    }
+
+    private List<ContentMetrics> unpack(List<ContentMetricsBucket> buckets) {
+        List<ContentMetrics> result = new ArrayList<>();
+        for (ContentMetricsBucket bucket : buckets) {
+            bucket.getSamples().stream()
+                    .sorted(Comparator.comparing(ContentMetricsBucket.Sample::timestamp,
+                            Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .forEach(sample -> result.add(toMetrics(bucket, sample)));
+        }
+        return result;
+    }
+
+    private ContentMetrics toMetrics(ContentMetricsBucket bucket, ContentMetricsBucket.Sample sample) {
+        ContentMetrics metrics = new ContentMetrics();
+        metrics.setUserId(bucket.getUserId());
+        metrics.setPlatform(bucket.getPlatform());
+        metrics.setPlatformContentId(bucket.getPlatformContentId());
+        metrics.setRetrievalTimestamp(sample.timestamp());
+        metrics.setViews(sample.views());
+        metrics.setLikes(sample.likes());
+        metrics.setComments(sample.comments());
+        metrics.setShares(sample.shares());
+        MetricsService.calculateEngagementRate(metrics);
+        return metrics;
+    }
+
+    private static void minMax(Update update, String field, Long value) {
+        if (value != null) {
+            update.min("min." + field, value).max("max." + field, value);
+        }
+    }
+
+    private static String bucketId(ContentMetrics metrics) {
+        return metrics.getPlatform() + ":" + metrics.getPlatformContentId() + ":" + utcDay(metrics.getRetrievalTimestamp());
+    }
+
+    static LocalDate utcDay(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+    }
+
+    // Same conversion Spring uses for LocalDateTime fields, the raw sample documents bypass the mapping
+    static Date toDate(LocalDateTime timestamp) {
+        return Date.from(timestamp.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
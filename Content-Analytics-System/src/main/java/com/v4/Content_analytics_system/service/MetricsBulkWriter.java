@@ -0,0 +1,352 @@
+package com.v4.Content_analytics_system.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsBucket;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Write-behind persistence stage for metrics snapshots. Fetcher threads drop snapshots into a bounded ring buffer
+// and go back to fetching, one writer thread drains it into unordered bulk writes on content_metrics (or the day buckets).
+// A slow Mongo only fills the buffer, fetchers block once it is full
+@Component
+public class MetricsBulkWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsBulkWriter.class);
+
+    // Longest the writer or a blocked fetcher sleeps before looking again
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Longest park of the writer while a producer finishes writing the slot it claimed
+    private static final long MAX_STALL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final MongoTemplate mongoTemplate;
+    private final SnapshotDeduplicator deduplicator;
+    private final MetricsBucketStore bucketStore;
+    private final ContentMetricsHistory metricsHistory;
+    private final MeterRegistry meterRegistry;
+
+    private MetricsRingBuffer<Pending> ring;
+    private Thread writerThread;
+    private Timer flushTimer;
+    private Timer backpressureTimer;
+
+    private volatile boolean running;
+    private volatile boolean writerIdle;
+    private volatile boolean flushRequested;
+
+    // Producers between "is the writer still running" and their item being in the ring, the writer waits for them on shutdown
+    private final AtomicInteger publishing = new AtomicInteger();
+
+    @Value("${metrics.write.batch-size:500}")
+    private int batchSize;
+
+    @Value("${metrics.write.flush-interval-ms:2000}")
+    private long flushIntervalMs;
+
+    // Snapshots that can wait for the writer before fetchers have to stop (rounded up to a power of two)
+    @Value("${metrics.write.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${metrics.write.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    public MetricsBulkWriter(MongoTemplate mongoTemplate, SnapshotDeduplicator deduplicator, MetricsBucketStore bucketStore,
+                             ContentMetricsHistory metricsHistory, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.deduplicator = deduplicator;
+        this.bucketStore = bucketStore;
+        this.metricsHistory = metricsHistory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Called with (inserted, unchanged, failed) and how long the bulk write took, after every flush of a batch
+    public interface FlushListener {
+        void onFlush(int inserted, int unchanged, int failed, long writeNanos);
+    }
+
+    @PostConstruct
+    public void start() {
+        ring = new MetricsRingBuffer<>(bufferSize);
+
+        Gauge.builder("metrics.write.buffer.size", ring, MetricsRingBuffer::size)
+                .description("Metrics snapshots waiting for the writer thread")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("metrics.write.flush")
+                .description("Bulk writes of metrics snapshots to content_metrics")
+                .register(meterRegistry);
+        backpressureTimer = Timer.builder("metrics.write.backpressure")
+                .description("Time fetcher threads waited for room in the write buffer")
+                .register(meterRegistry);
+
+        running = true;
+        writerThread = Thread.ofPlatform().name("metrics-writer").start(this::drainLoop);
+        log.info("Metrics writer started (buffer {}, batch {}, flush every {} ms)", ring.capacity(), batchSize, flushIntervalMs);
+    }
+
+    // Lets the writer finish what is buffered, fetchers that still publish after this write inline
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Metrics writer still busy after {} ms, {} snapshots not written", shutdownTimeoutMs, ring.size());
+        }
+    }
+
+    public Batch openBatch(FlushListener listener) {
+        return new Batch(listener);
+    }
+
+    // Size threshold: a full batch goes out right away. Time threshold: whatever waited longer than the interval
+    // goes out once the ring is empty. A closing run asks for everything to go out
+    private void drainLoop() {
+        List<Pending> pending = new ArrayList<>();
+        long oldestAt = 0;
+        boolean flushing = false;
+        int stalled = 0;
+
+        while (running || publishing.get() > 0 || !ring.isEmpty() || !pending.isEmpty()) {
+            try {
+                // Stays on until the ring has been emptied once, so the whole run goes out and not just one slice
+                if (flushRequested) {
+                    flushRequested = false;
+                    flushing = true;
+                }
+
+                boolean wasEmpty = pending.isEmpty();
+                int drained = ring.drainTo(pending, batchSize - pending.size());
+                if (wasEmpty && drained > 0) {
+                    oldestAt = System.nanoTime();
+                }
+
+                boolean caughtUp = ring.isEmpty();
+                long waitedNanos = System.nanoTime() - oldestAt;
+                if (pending.size() >= batchSize
+                        || (!pending.isEmpty() && caughtUp
+                            && (flushing || !running || waitedNanos >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMs)))) {
+                    writeAll(pending);
+                    pending = new ArrayList<>();
+                }
+                if (caughtUp && pending.isEmpty()) {
+                    flushing = false;
+                }
+                if (drained > 0) {
+                    stalled = 0;
+                    continue;
+                }
+                if (!caughtUp) {
+                    // A producer claimed the next slot but hasn't written it yet
+                    MetricsRingBuffer.backOff(stalled++, MAX_STALL_NANOS);
+                    continue;
+                }
+                stalled = 0;
+
+                idle(pending.isEmpty() ? MAX_IDLE_NANOS
+                        : Math.min(MAX_IDLE_NANOS, TimeUnit.MILLISECONDS.toNanos(flushIntervalMs) - waitedNanos));
+            } catch (Exception e) {
+                // Never let the writer die, the fetchers would block on a full ring forever
+                log.error("Metrics writer failed on {} snapshots: {}", pending.size(), e.getMessage(), e);
+                pending.forEach(p -> p.batch.persisted(1, 0, 0, 1, 0));
+                pending = new ArrayList<>();
+            }
+        }
+        log.info("Metrics writer stopped");
+    }
+
+    private void idle(long nanos) {
+        writerIdle = true;
+        // A producer that published before seeing the flag is caught here, one after it unparks us
+        if (ring.isEmpty() && !flushRequested && running) {
+            LockSupport.parkNanos(this, Math.max(1, nanos));
+        }
+        writerIdle = false;
+    }
+
+    private void wakeWriter() {
+        if (writerIdle) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    // One bulk write per run in the drained slice, so each run gets its own counts
+    private void writeAll(List<Pending> pending) {
+        Map<Batch, List<ContentMetrics>> byBatch = new LinkedHashMap<>();
+        for (Pending p : pending) {
+            byBatch.computeIfAbsent(p.batch, key -> new ArrayList<>()).add(p.metrics);
+        }
+        byBatch.forEach((batch, docs) -> write(docs, batch));
+    }
+
+    private void write(List<ContentMetrics> docs, Batch batch) {
+        long start = System.nanoTime();
+        boolean buckets = bucketStore.isActive();
+        BulkOperations ops;
+        int inserts = 0;
+        int extensions = 0;
+
+        if (buckets) {
+            // Every snapshot is a $push into its day bucket, nothing to fold there
+            ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetricsBucket.class);
+            for (ContentMetrics doc : docs) {
+                ops.upsert(MetricsBucketStore.bucketOf(doc), MetricsBucketStore.sampleUpdate(doc));
+                inserts++;
+            }
+        } else {
+            ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetrics.class);
+
+            // Snapshots equal to the last stored one only bump that document's sampleCount / validUntil
+            for (ContentMetrics doc : docs) {
+                String previousId = deduplicator.matchPrevious(doc);
+                if (previousId != null) {
+                    ops.updateOne(deduplicator.previousDocument(previousId), deduplicator.extension(doc));
+                    extensions++;
+                } else {
+                    ops.insert(doc);
+                    inserts++;
+                }
+            }
+        }
+
+        int inserted;
+        int unchanged;
+        int failed;
+
+        try {
+            BulkWriteResult result = ops.execute();
+            inserted = stored(result, buckets);
+            unchanged = buckets ? 0 : result.getMatchedCount();
+            failed = docs.size() - inserted - unchanged;
+        } catch (BulkOperationException e) {
+            // Unordered mode keeps going past bad documents, so part of the batch may be in
+            inserted = stored(e.getResult(), buckets);
+            unchanged = buckets ? 0 : e.getResult().getMatchedCount();
+            failed = e.getErrors().size();
+            log.error("Bulk write of {} metrics had {} errors: {}", docs.size(), failed, e.getMessage());
+        } catch (Exception e) {
+            inserted = 0;
+            unchanged = 0;
+            failed = docs.size();
+            log.error("Bulk write of {} metrics failed: {}", docs.size(), e.getMessage());
+        }
+
+        // Not sure which documents are missing, next snapshot of these gets inserted fresh,
+        // their days get rebuilt in the rollups and their latest snapshot is read from the history again
+        if (inserted < inserts || unchanged < extensions) {
+            docs.forEach(deduplicator::forget);
+            metricsHistory.writeFailed(docs);
+        } else {
+            metricsHistory.written(docs);
+        }
+
+        long writeNanos = System.nanoTime() - start;
+        flushTimer.record(writeNanos, TimeUnit.NANOSECONDS);
+        log.debug("Flushed {} metrics in {} ms: {} inserted, {} unchanged, {} failed",
+                docs.size(), writeNanos / 1_000_000, inserted, unchanged, failed);
+        batch.persisted(docs.size(), inserted, unchanged, failed, writeNanos);
+    }
+
+    // A sample pushed into a bucket is an upsert that either created the bucket or matched it
+    private static int stored(BulkWriteResult result, boolean buckets) {
+        return buckets ? result.getUpserts().size() + result.getMatchedCount() : result.getInsertedCount();
+    }
+
+    private record Pending(ContentMetrics metrics, Batch batch) { }
+
+
+    // Snapshots of one refresh run, safe to add to from several threads. close() returns once all of them are written
+    public class Batch implements AutoCloseable {
+
+        private final FlushListener listener;
+        private final AtomicLong published = new AtomicLong();
+        private long persisted;
+
+        private Batch(FlushListener listener) {
+            this.listener = listener;
+        }
+
+        // Returns as soon as the snapshot is in the ring, blocks only while the ring is full
+        public void add(ContentMetrics metrics) {
+            published.incrementAndGet();
+            publishing.incrementAndGet();
+            try {
+                if (!running) {
+                    write(List.of(metrics), this);
+                    return;
+                }
+                publish(new Pending(metrics, this));
+            } finally {
+                publishing.decrementAndGet();
+            }
+            wakeWriter();
+        }
+
+        private void publish(Pending item) {
+            if (ring.offer(item)) {
+                return;
+            }
+
+            // Backpressure: the writer is behind, wait for it instead of piling up snapshots
+            long start = System.nanoTime();
+            LockSupport.unpark(writerThread);
+            int attempt = 0;
+            while (!ring.offer(item)) {
+                wakeWriter();
+                MetricsRingBuffer.backOff(attempt++, MAX_IDLE_NANOS);
+            }
+            backpressureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        // Writes out whatever this run still has in the ring
+        public void flush() {
+            flushRequested = true;
+            LockSupport.unpark(writerThread);
+        }
+
+        private synchronized void persisted(int count, int inserted, int unchanged, int failed, long writeNanos) {
+            listener.onFlush(inserted, unchanged, failed, writeNanos);
+            persisted += count;
+            notifyAll();
+        }
+
+        @Override
+        public void close() {
+            flush();
+            synchronized (this) {
+                while (persisted < published.get() && writerThread.isAlive()) {
+                    try {
+                        wait(flushIntervalMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        log.warn("Interrupted while waiting for {} metrics to be written", published.get() - persisted);
+                        return;
+                    }
+                    flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsBucket;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Retention policy of the metrics history, three tiers:
+//   raw snapshots for raw-days, then per hour content documents until hourly-days, then the day rollups forever.
+// Compaction works a closed UTC day at a time and only on days the rollup catch-up has rebuilt: hour documents
+// from the raw snapshots, the day marked compacted, then the raw snapshots deleted. Deletes go in batches with a
+// pause in between so they don't crowd out the refresh writes and the dashboard reads.
+// Reads merge the tiers in MetricsRollupService / ContentMetricsHistory. Needs the rollups on, and MongoDB 7+
+// for the time series layout (deletes by _id from a time series collection)
+@Service
+public class MetricsRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRetentionService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsStorageConfig storageConfig;
+    private final MetricsRollupState rollupState;
+    private final MetricsRollupRebuilder rebuilder;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Off by default, it deletes raw snapshots
+    @Value("${metrics.retention.enabled:false}")
+    private boolean enabled;
+
+    // Full resolution for the last raw-days closed days (today included on top)
+    @Value("${metrics.retention.raw-days:7}")
+    private int rawDays;
+
+    // Hour documents until this many days back, the day rollups after that
+    @Value("${metrics.retention.hourly-days:90}")
+    private int hourlyDays;
+
+    @Value("${metrics.retention.batch-size:1000}")
+    private int batchSize;
+
+    // Pause between delete batches
+    @Value("${metrics.retention.pause-ms:100}")
+    private long pauseMs;
+
+    public MetricsRetentionService(MongoTemplate mongoTemplate, MetricsStorageConfig storageConfig,
+                                   MetricsRollupState rollupState, MetricsRollupRebuilder rebuilder) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageConfig = storageConfig;
+        this.rollupState = rollupState;
+        this.rebuilder = rebuilder;
+    }
+
+    @PostConstruct
+    public void checkPolicy() {
+        if (!enabled) {
+            return;
+        }
+        if (!rollupState.isActive()) {
+            log.warn("Metrics retention needs the rollups (metrics.rollups.enabled), nothing will be compacted");
+            return;
+        }
+        if (hourlyDays < rawDays) {
+            log.warn("metrics.retention.hourly-days ({}) is below raw-days ({}), using {}", hourlyDays, rawDays, rawDays);
+            hourlyDays = rawDays;
+        }
+        log.info("Metrics retention: raw snapshots for {} days, hourly for {} days, then daily", rawDays, hourlyDays);
+    }
+
+    public boolean isActive() {
+        return enabled && rollupState.isActive();
+    }
+
+    // Compacts up to maxDays days, then deletes what the tiers no longer need. Returns the number of days compacted
+    public int compact(int maxDays) throws InterruptedException {
+        if (!isActive()) {
+            return 0;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Metrics compaction already running");
+            return 0;
+        }
+        try {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            LocalDate lastCompactable = today.minusDays(rawDays + 1L);
+            LocalDate hoursFrom = today.minusDays(hourlyDays);
+
+            // Before the days are compacted, so a day past the hourly horizon goes straight to its day rollups
+            rollupState.markHoursDroppedBefore(hoursFrom);
+
+            LocalDate compactedThrough = rollupState.compactedThrough();
+            LocalDate day = compactedThrough != null ? compactedThrough.plusDays(1) : rebuilder.earliestRawDay();
+            int compacted = 0;
+            while (day != null && compacted < maxDays && !day.isAfter(lastCompactable)) {
+                if (!rollupState.isRebuilt(day)) {
+                    // The catch-up job gets to it first, its day documents have to be final
+                    log.debug("Compaction waits for the rollups of {}", day);
+                    break;
+                }
+                if (!day.isBefore(hoursFrom)) {
+                    rebuilder.rebuildHours(day);
+                }
+                rollupState.markCompacted(day);
+                compacted++;
+                day = day.plusDays(1);
+            }
+
+            long raw = deleteRaw();
+            long hours = deleteInBatches(Query.query(Criteria.where("grain").is(MetricsRollupService.HOUR)
+                    .and("period").lt(hoursFrom.toString())), ContentMetricsRollup.class, MetricsRollupService.COLLECTION);
+
+            if (compacted > 0 || raw > 0 || hours > 0) {
+                log.info("Metrics compaction: {} days compacted (through {}), {} raw documents and {} hour documents deleted",
+                        compacted, rollupState.compactedThrough(), raw, hours);
+            }
+            return compacted;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Everything before the first raw day kept, crash leftovers of earlier runs included
+    private long deleteRaw() throws InterruptedException {
+        LocalDate compactedThrough = rollupState.compactedThrough();
+        if (compactedThrough == null) {
+            return 0;
+        }
+        if (storageConfig.isBuckets()) {
+            return deleteInBatches(Query.query(Criteria.where("day").lt(compactedThrough.plusDays(1).toString())),
+                    ContentMetricsBucket.class, MetricsStorageConfig.BUCKET_COLLECTION);
+        }
+        LocalDateTime rawKeptFrom = rollupState.rawKeptFrom();
+        return deleteInBatches(Query.query(Criteria.where("retrievalTimestamp").lt(rawKeptFrom)),
+                ContentMetrics.class, storageConfig.getCollectionName());
+    }
+
+    // batchSize _ids at a time, so no single delete holds up the collection for long
+    private long deleteInBatches(Query match, Class<?> type, String collection) throws InterruptedException {
+        long deleted = 0;
+        while (true) {
+            Query batch = Query.of(match).limit(batchSize);
+            batch.fields().include("_id");
+            List<Object> ids = mongoTemplate.find(batch, Document.class, collection).stream()
+                    .map(doc -> doc.get("_id"))
+                    .toList();
+            if (ids.isEmpty()) {
+                return deleted;
+            }
+
+            deleted += mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), type, collection).getDeletedCount();
+            if (ids.size() < batchSize) {
+                return deleted;
+            }
+            Thread.sleep(pauseMs);
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+}
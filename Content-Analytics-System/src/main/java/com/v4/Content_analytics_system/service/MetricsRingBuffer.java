@@ -0,0 +1,97 @@
+package com.v4.Content_analytics_system.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded lock-free ring for handing snapshots from the fetcher threads to the writer thread.
+// Each slot has a sequence number saying whose turn it is (producer claims it with a CAS on the tail,
+// the consumer frees it by moving the sequence one lap ahead), so nobody ever takes a lock
+class MetricsRingBuffer<T> {
+
+    // Busy-wait passes before a waiting thread starts to park, a slot is usually published (or freed) within a few
+    private static final int SPIN_LIMIT = 100;
+    private static final long MIN_PARK_NANOS = 10_000;
+
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    MetricsRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // False when the ring is full, the caller decides how to wait
+    boolean offer(T item) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, item);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // Slot still holds the item from the previous lap
+                return false;
+            }
+            // else another producer got this slot first, try the next one
+        }
+    }
+
+    // Moves up to max items into the list, returns how many. Single consumer only
+    int drainTo(List<T> target, int max) {
+        int drained = 0;
+        while (drained < max) {
+            long position = head.get();
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;  // empty, or the producer claimed the slot but hasn't written it yet
+            }
+
+            target.add(slots.get(index));
+            slots.set(index, null);
+            head.set(position + 1);
+            sequences.set(index, position + mask + 1);
+            drained++;
+        }
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    // One wait of a thread that can't move on yet (consumer on a claimed but unwritten slot, producer on a full ring):
+    // spin first, then park for a doubling time up to maxParkNanos. attempt counts the waits so far
+    static void backOff(int attempt, long maxParkNanos) {
+        if (attempt < SPIN_LIMIT) {
+            Thread.onSpinWait();
+            return;
+        }
+        int doublings = Math.min(attempt - SPIN_LIMIT, 30);
+        LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << doublings, maxParkNanos));
+    }
+}
@@ -0,0 +1,112 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.v4.Content_analytics_system.service.MetricsRollupService.CONTENT;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.DAY;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.PLATFORM;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.USER;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.WEEK;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.utcDay;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.weekOf;
+
+// Adds each written snapshot to its day and week rollups with $inc / $max upserts. When that (or the snapshot
+// write) fails the days go dirty and MetricsRollupRebuilder redoes them from the raw snapshots
+@Component
+public class MetricsRollupIngest {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRollupIngest.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsRollupState state;
+
+    public MetricsRollupIngest(MongoTemplate mongoTemplate, MetricsRollupState state) {
+        this.mongoTemplate = mongoTemplate;
+        this.state = state;
+    }
+
+    // Called after the snapshots are stored. Snapshots folded into a previous document count too, like in the raw sums
+    public void record(List<ContentMetrics> docs) {
+        if (!state.isActive() || docs.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, RollupTotals> rollups = new LinkedHashMap<>();
+            Set<LocalDate> days = new TreeSet<>();
+            for (ContentMetrics doc : docs) {
+                if (doc.getUserId() == null || doc.getRetrievalTimestamp() == null) {
+                    continue;
+                }
+                LocalDate day = utcDay(doc.getRetrievalTimestamp());
+                days.add(day);
+                for (String grain : List.of(DAY, WEEK)) {
+                    String period = (DAY.equals(grain) ? day : weekOf(day)).toString();
+                    for (String level : List.of(USER, PLATFORM, CONTENT)) {
+                        rollups.computeIfAbsent(MetricsRollupService.rollupId(grain, level, period, doc.getUserId(), doc.getPlatform(), doc.getPlatformContentId()),
+                                        id -> new RollupTotals(grain, level, period, doc.getUserId(), doc.getPlatform(), doc.getPlatformContentId()))
+                                .add(doc.getViews(), doc.getLikes(), doc.getComments(), 1, doc.getViews(), doc.getLikes(),
+                                        doc.getComments(), doc.getRetrievalTimestamp());
+                    }
+                }
+            }
+
+            // Only writes when a new day starts
+            state.notePending(days);
+
+            // One upsert per rollup document, however many snapshots of the batch went into it
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetricsRollup.class);
+            for (RollupTotals rollup : rollups.values()) {
+                ops.upsert(Query.query(Criteria.where("_id").is(rollup.id)), rollup.increment());
+            }
+            ops.execute();
+        } catch (Exception e) {
+            // Part of the increments may be in, the job rebuilds these days from the raw snapshots
+            log.error("Rollup update for {} metrics failed, marking their days for a rebuild: {}", docs.size(), e.getMessage());
+            markDirty(docs);
+        }
+    }
+
+    // The snapshots' write failed or partly failed, the rollups can't know which ones are in
+    public void markDirty(List<ContentMetrics> docs) {
+        if (!state.isActive()) {
+            return;
+        }
+        Set<String> days = new TreeSet<>();
+        for (ContentMetrics doc : docs) {
+            if (doc.getRetrievalTimestamp() != null) {
+                days.add(utcDay(doc.getRetrievalTimestamp()).toString());
+            }
+        }
+        if (days.isEmpty()) {
+            return;
+        }
+        try {
+            // A compacted day has no raw snapshots left to rebuild it from, it stays as it is
+            LocalDate compactedThrough = state.compactedThrough();
+            if (compactedThrough != null) {
+                days.removeIf(day -> !LocalDate.parse(day).isAfter(compactedThrough));
+                if (days.isEmpty()) {
+                    return;
+                }
+            }
+            state.addDirty(days);
+        } catch (Exception e) {
+            log.error("Could not mark rollup days {} dirty: {}", days, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.v4.Content_analytics_system.service;
+
+import com.mongodb.client.MongoCursor;
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.v4.Content_analytics_system.service.MetricsRollupService.COLLECTION;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.CONTENT;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.DAY;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.HOUR;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.PLATFORM;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.USER;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.WEEK;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.longOf;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.toDate;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.utcDay;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.utcStart;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.weekOf;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.weightedSum;
+
+// Rebuilds rollup documents from the raw snapshots: closed days (and the weeks they complete) for the catch-up job,
+// the per hour content documents for the compaction. Rebuilt documents replace what ingest wrote
+@Component
+public class MetricsRollupRebuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRollupRebuilder.class);
+
+    private static final int WRITE_CHUNK = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsStorageConfig storageConfig;
+    private final MetricsRollupState state;
+
+    // A day is rebuilt only this long after it ended, so snapshots still in the write-behind buffer at midnight are in
+    @Value("${metrics.rollups.settle-minutes:30}")
+    private long settleMinutes;
+
+    public MetricsRollupRebuilder(MongoTemplate mongoTemplate, MetricsStorageConfig storageConfig, MetricsRollupState state) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageConfig = storageConfig;
+        this.state = state;
+    }
+
+    // Rebuilds up to maxDays closed days in date order, the dirty ones and those after the last rebuilt one,
+    // then the weeks they complete. Returns the number of days rebuilt
+    public int catchUp(int maxDays) {
+        if (!state.isActive()) {
+            return 0;
+        }
+        MetricsRollupState.State current = state.state();
+        LocalDate lastClosed = utcDay(LocalDateTime.now().minusMinutes(settleMinutes)).minusDays(1);
+
+        LocalDate watermark = current.rebuiltThrough();
+        if (watermark == null) {
+            LocalDate earliest = earliestRawDay();
+            if (earliest == null) {
+                state.saveWatermark(lastClosed);
+                return 0;
+            }
+            watermark = earliest.minusDays(1);
+        }
+
+        TreeSet<LocalDate> todo = new TreeSet<>();
+        for (LocalDate day : current.dirty()) {
+            if (!day.isAfter(lastClosed) && !current.compacted(day)) {
+                todo.add(day);
+            }
+        }
+        for (LocalDate day = watermark.plusDays(1); !day.isAfter(lastClosed) && !day.isAfter(watermark.plusDays(maxDays)); day = day.plusDays(1)) {
+            todo.add(day);
+        }
+
+        // In date order, so the days after the watermark stay contiguous when the run stops at maxDays
+        int rebuilt = 0;
+        Set<LocalDate> weeks = new TreeSet<>();
+        for (LocalDate day : todo) {
+            if (rebuilt >= maxDays) {
+                break;
+            }
+            rebuildDay(day);
+            rebuilt++;
+            weeks.add(weekOf(day));
+            if (day.isAfter(watermark)) {
+                watermark = day;
+                state.saveWatermark(watermark);
+            }
+        }
+
+        // A week is rebuilt from its days once all of them are rebuilt and clean
+        MetricsRollupState.State after = state.state();
+        for (LocalDate week : weeks) {
+            LocalDate sunday = week.plusDays(6);
+            boolean complete = !sunday.isAfter(watermark);
+            for (LocalDate day = week; complete && !day.isAfter(sunday); day = day.plusDays(1)) {
+                complete = !after.dirty().contains(day);
+            }
+            if (complete) {
+                try {
+                    rebuildWeek(week);
+                } catch (Exception e) {
+                    // Its Sunday goes dirty, so the week is done again with it on the next run
+                    log.error("Rebuilding the rollups of the week of {} failed: {}", week, e.getMessage());
+                    state.addDirty(sunday);
+                }
+            }
+        }
+
+        if (rebuilt > 0) {
+            log.info("Rebuilt {} rollup days, complete through {}", rebuilt, watermark);
+        }
+        return rebuilt;
+    }
+
+    // Replaces the day's rollups with totals from the raw snapshots. Marked dirty while it runs so reads go raw
+    public void rebuildDay(LocalDate day) {
+        String period = day.toString();
+        if (state.state().compacted(day)) {
+            log.warn("Not rebuilding the rollups of {}, its raw snapshots are compacted", period);
+            state.removeDirty(day);
+            return;
+        }
+        state.addDirty(day);
+        mongoTemplate.remove(Query.query(Criteria.where("grain").is(DAY).and("period").is(period)), ContentMetricsRollup.class);
+
+        Map<String, RollupTotals> upper = new HashMap<>();
+        List<RollupTotals> contents = new ArrayList<>();
+        try (MongoCursor<Document> cursor = rawContentTotals(day)) {
+            while (cursor.hasNext()) {
+                Document total = cursor.next();
+                Document key = total.get("_id", Document.class);
+                Long userId = longOf(key.get("u"));
+                String platform = key.getString("p");
+                String contentId = key.getString("c");
+
+                for (String level : List.of(PLATFORM, USER)) {
+                    upper.computeIfAbsent(MetricsRollupService.rollupId(DAY, level, period, userId, platform, contentId),
+                            id -> new RollupTotals(DAY, level, period, userId, platform, contentId)).add(total);
+                }
+                RollupTotals content = new RollupTotals(DAY, CONTENT, period, userId, platform, contentId);
+                content.add(total);
+                contents.add(content);
+                if (contents.size() >= WRITE_CHUNK) {
+                    replace(contents);
+                    contents.clear();
+                }
+            }
+        }
+        replace(contents);
+        replace(new ArrayList<>(upper.values()));
+
+        state.removeDirty(day);
+    }
+
+    // Week totals are the sums of its day rollups (all levels at once)
+    public void rebuildWeek(LocalDate monday) {
+        String period = monday.toString();
+        mongoTemplate.remove(Query.query(Criteria.where("grain").is(WEEK).and("period").is(period)), ContentMetricsRollup.class);
+
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("grain", DAY)
+                        .append("period", new Document("$gte", period).append("$lte", monday.plusDays(6).toString()))),
+                new Document("$group", new Document("_id", new Document("level", "$level")
+                        .append("u", "$userId").append("p", "$platform").append("c", "$platformContentId"))
+                        .append("views", new Document("$sum", "$views"))
+                        .append("likes", new Document("$sum", "$likes"))
+                        .append("comments", new Document("$sum", "$comments"))
+                        .append("samples", new Document("$sum", "$samples"))
+                        .append("maxViews", new Document("$max", "$maxViews"))
+                        .append("maxLikes", new Document("$max", "$maxLikes"))
+                        .append("maxComments", new Document("$max", "$maxComments"))
+                        .append("lastAt", new Document("$max", "$lastAt"))));
+
+        List<RollupTotals> weeks = new ArrayList<>();
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(COLLECTION).aggregate(pipeline).allowDiskUse(true).cursor()) {
+            while (cursor.hasNext()) {
+                Document total = cursor.next();
+                Document key = total.get("_id", Document.class);
+                RollupTotals week = new RollupTotals(WEEK, key.getString("level"), period, longOf(key.get("u")),
+                        key.getString("p"), key.getString("c"));
+                week.add(total);
+                weeks.add(week);
+                if (weeks.size() >= WRITE_CHUNK) {
+                    replace(weeks);
+                    weeks.clear();
+                }
+            }
+        }
+        replace(weeks);
+    }
+
+    // Per hour content documents of the day from its raw snapshots, replacing any left from an interrupted run.
+    // Hours are UTC like the days, so the hours of a day add up to its day documents
+    public void rebuildHours(LocalDate day) {
+        mongoTemplate.remove(Query.query(Criteria.where("grain").is(HOUR)
+                .and("period").gte(day.toString()).lt(day.plusDays(1).toString())), ContentMetricsRollup.class);
+
+        List<RollupTotals> hours = new ArrayList<>();
+        try (MongoCursor<Document> cursor = rawHourTotals(day)) {
+            while (cursor.hasNext()) {
+                Document total = cursor.next();
+                Document key = total.get("_id", Document.class);
+                RollupTotals hour = new RollupTotals(HOUR, CONTENT, key.getString("h"), longOf(key.get("u")),
+                        key.getString("p"), key.getString("c"));
+                hour.add(total);
+                hours.add(hour);
+                if (hours.size() >= WRITE_CHUNK) {
+                    replace(hours);
+                    hours.clear();
+                }
+            }
+        }
+        replace(hours);
+    }
+
+    LocalDate earliestRawDay() {
+        if (storageConfig.isBuckets()) {
+            Document first = mongoTemplate.getCollection(MetricsStorageConfig.BUCKET_COLLECTION)
+                    .find().sort(new Document("day", 1)).limit(1).first();
+            return first != null ? LocalDate.parse(first.getString("day")) : null;
+        }
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "retrievalTimestamp")).limit(1);
+        query.fields().include("retrievalTimestamp");
+        ContentMetrics first = mongoTemplate.findOne(query, ContentMetrics.class);
+        return first != null && first.getRetrievalTimestamp() != null ? utcDay(first.getRetrievalTimestamp()) : null;
+    }
+
+    // Per content item totals of one day, straight from the snapshots (validUntil is when a folded snapshot was last seen)
+    private MongoCursor<Document> rawContentTotals(LocalDate day) {
+        Document key = new Document("u", "$userId").append("p", "$platform").append("c", "$platformContentId");
+        List<Document> pipeline;
+        if (storageConfig.isBuckets()) {
+            pipeline = List.of(
+                    new Document("$match", new Document("day", day.toString()).append("userId", new Document("$ne", null))),
+                    new Document("$group", new Document("_id", key)
+                            .append("views", new Document("$sum", new Document("$sum", "$samples.v")))
+                            .append("likes", new Document("$sum", new Document("$sum", "$samples.l")))
+                            .append("comments", new Document("$sum", new Document("$sum", "$samples.c")))
+                            .append("samples", new Document("$sum", "$count"))
+                            .append("maxViews", new Document("$max", "$max.views"))
+                            .append("maxLikes", new Document("$max", "$max.likes"))
+                            .append("maxComments", new Document("$max", "$max.comments"))
+                            .append("lastAt", new Document("$max", "$lastAt"))));
+        } else {
+            pipeline = List.of(
+                    new Document("$match", new Document("retrievalTimestamp",
+                            new Document("$gte", toDate(utcStart(day))).append("$lt", toDate(utcStart(day.plusDays(1)))))
+                            .append("userId", new Document("$ne", null))),
+                    new Document("$group", new Document("_id", key)
+                            .append("views", weightedSum("$views"))
+                            .append("likes", weightedSum("$likes"))
+                            .append("comments", weightedSum("$comments"))
+                            .append("samples", new Document("$sum", new Document("$ifNull", List.of("$sampleCount", 1))))
+                            .append("maxViews", new Document("$max", "$views"))
+                            .append("maxLikes", new Document("$max", "$likes"))
+                            .append("maxComments", new Document("$max", "$comments"))
+                            .append("lastAt", new Document("$max", new Document("$ifNull", List.of("$validUntil", "$retrievalTimestamp"))))));
+        }
+        String collection = storageConfig.isBuckets() ? MetricsStorageConfig.BUCKET_COLLECTION : storageConfig.getCollectionName();
+        return mongoTemplate.getCollection(collection).aggregate(pipeline).allowDiskUse(true).cursor();
+    }
+
+    // Per content item and UTC hour totals of one day, straight from the snapshots (bucket samples one by one)
+    private MongoCursor<Document> rawHourTotals(LocalDate day) {
+        List<Document> pipeline;
+        if (storageConfig.isBuckets()) {
+            Document key = new Document("u", "$userId").append("p", "$platform").append("c", "$platformContentId")
+                    .append("h", hourOf("$samples.t"));
+            pipeline = List.of(
+                    new Document("$match", new Document("day", day.toString()).append("userId", new Document("$ne", null))),
+                    new Document("$unwind", "$samples"),
+                    new Document("$group", new Document("_id", key)
+                            .append("views", new Document("$sum", "$samples.v"))
+                            .append("likes", new Document("$sum", "$samples.l"))
+                            .append("comments", new Document("$sum", "$samples.c"))
+                            .append("samples", new Document("$sum", 1))
+                            .append("maxViews", new Document("$max", "$samples.v"))
+                            .append("maxLikes", new Document("$max", "$samples.l"))
+                            .append("maxComments", new Document("$max", "$samples.c"))
+                            .append("lastAt", new Document("$max", "$samples.t"))));
+        } else {
+            Document key = new Document("u", "$userId").append("p", "$platform").append("c", "$platformContentId")
+                    .append("h", hourOf("$retrievalTimestamp"));
+            pipeline = List.of(
+                    new Document("$match", new Document("retrievalTimestamp",
+                            new Document("$gte", toDate(utcStart(day))).append("$lt", toDate(utcStart(day.plusDays(1)))))
+                            .append("userId", new Document("$ne", null))),
+                    new Document("$group", new Document("_id", key)
+                            .append("views", weightedSum("$views"))
+                            .append("likes", weightedSum("$likes"))
+                            .append("comments", weightedSum("$comments"))
+                            .append("samples", new Document("$sum", new Document("$ifNull", List.of("$sampleCount", 1))))
+                            .append("maxViews", new Document("$max", "$views"))
+                            .append("maxLikes", new Document("$max", "$likes"))
+                            .append("maxComments", new Document("$max", "$comments"))
+                            .append("lastAt", new Document("$max", new Document("$ifNull", List.of("$validUntil", "$retrievalTimestamp"))))));
+        }
+        String collection = storageConfig.isBuckets() ? MetricsStorageConfig.BUCKET_COLLECTION : storageConfig.getCollectionName();
+        return mongoTemplate.getCollection(collection).aggregate(pipeline).allowDiskUse(true).cursor();
+    }
+
+    private void replace(List<RollupTotals> rollups) {
+        if (rollups.isEmpty()) {
+            return;
+        }
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetricsRollup.class);
+        for (RollupTotals rollup : rollups) {
+            ops.upsert(Query.query(Criteria.where("_id").is(rollup.id)), rollup.replacement());
+        }
+        ops.execute();
+    }
+
+    // yyyy-MM-ddTHH in UTC, sorts (and compares to a yyyy-MM-dd day) as a string
+    private static Document hourOf(String field) {
+        return new Document("$dateToString", new Document("format", "%Y-%m-%dT%H").append("date", field));
+    }
+}
@@ -0,0 +1,288 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Daily and weekly totals per user, user + platform and content item, so the time series endpoints read one small
+// document per day instead of grouping every raw snapshot since the start date.
+// Ingest adds each written snapshot with $inc / $max upserts (MetricsRollupIngest). The catch-up job rebuilds
+// closed days from the raw snapshots (MetricsRollupRebuilder), which also fixes days where an ingest update failed
+// (those are marked dirty in MetricsRollupState). A day is only read from the rollups when it is known to be
+// complete, everything else comes from the raw pipeline, so the numbers are always the same as before.
+// With retention on (MetricsRetentionService) closed days past the raw horizon are compacted: their raw snapshots
+// are replaced by per hour content documents, which are dropped in turn past the hourly horizon. Compacted days
+// can't be rebuilt any more, their day documents stay as they are (CompactedMetricsReader reads them back)
+@Service
+public class MetricsRollupService {
+
+    public static final String HOUR = "hour";
+    public static final String DAY = "day";
+    public static final String WEEK = "week";
+
+    public static final String USER = "user";
+    public static final String PLATFORM = "platform";
+    public static final String CONTENT = "content";
+
+    public static final String COLLECTION = "content_metrics_rollups";
+
+    static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH");
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsStorageConfig storageConfig;
+    private final MetricsBucketStore bucketStore;
+    private final MetricsRollupState rollupState;
+
+    public MetricsRollupService(MongoTemplate mongoTemplate, MetricsStorageConfig storageConfig,
+                                MetricsBucketStore bucketStore, MetricsRollupState rollupState) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageConfig = storageConfig;
+        this.bucketStore = bucketStore;
+        this.rollupState = rollupState;
+    }
+
+
+    // Same output as IContentMetricsRepository.getTimeSeriesData / getTimeSeriesDataByPlatform (platform null = all)
+    public List<Map<String, Object>> getTimeSeriesData(Long userId, String platform, LocalDateTime startDate) {
+        return getDailySeries(new Scope(userId, platform, null), startDate);
+    }
+
+    // Per day totals since the start: complete days from the rollups, the partial first day and every day the
+    // rollups can't vouch for from the raw snapshots
+    public List<Map<String, Object>> getDailySeries(Scope scope, LocalDateTime startDate) {
+        LocalDate startDay = utcDay(startDate);
+        LocalDate today = utcToday();
+        LocalDateTime firstFullDay = utcStart(startDay.plusDays(1));
+
+        MetricsRollupState.State state = rollupState.readState();
+        List<Map<String, Object>> points = new ArrayList<>(state.compacted(startDay)
+                ? compactedDay(scope, startDate, state)
+                : rawDaily(scope, startDate, startDay.isBefore(today) ? firstFullDay : null));
+        if (startDay.isBefore(today)) {
+            Map<String, ContentMetricsRollup> rolled = rollups(scope, DAY, startDay.plusDays(1));
+
+            LocalDate rawFrom = null;
+            for (LocalDate day = startDay.plusDays(1); !day.isAfter(today); day = day.plusDays(1)) {
+                if (!state.covers(day)) {
+                    rawFrom = rawFrom != null ? rawFrom : day;
+                    continue;
+                }
+                if (rawFrom != null) {
+                    points.addAll(rawDaily(scope, utcStart(rawFrom), utcStart(day)));
+                    rawFrom = null;
+                }
+                ContentMetricsRollup rollup = rolled.get(day.toString());
+                if (rollup != null) {
+                    points.add(point(day.toString(), rollup.getViews(), rollup.getLikes(), rollup.getComments()));
+                }
+            }
+            if (rawFrom != null) {
+                points.addAll(rawDaily(scope, utcStart(rawFrom), null));
+            }
+        }
+
+        points.sort(Comparator.comparing(point -> point.get("date").toString()));
+        return points;
+    }
+
+    // Per ISO week totals (date = the Monday). Weeks the rollups fully cover come from the week documents,
+    // the others are summed from the daily series
+    public List<Map<String, Object>> getWeeklySeries(Scope scope, LocalDateTime startDate) {
+        LocalDate startDay = utcDay(startDate);
+        LocalDate today = utcToday();
+        MetricsRollupState.State state = rollupState.readState();
+        Map<String, ContentMetricsRollup> rolled = rollups(scope, WEEK, weekOf(startDay));
+
+        Map<String, Map<String, Object>> daily = null;
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (LocalDate week = weekOf(startDay); !week.isAfter(today); week = week.plusWeeks(1)) {
+            if (week.isAfter(startDay) && state.coversWeek(week, today)) {
+                ContentMetricsRollup rollup = rolled.get(week.toString());
+                if (rollup != null) {
+                    points.add(point(week.toString(), rollup.getViews(), rollup.getLikes(), rollup.getComments()));
+                }
+                continue;
+            }
+
+            if (daily == null) {
+                daily = new HashMap<>();
+                for (Map<String, Object> point : getDailySeries(scope, startDate)) {
+                    daily.put(point.get("date").toString(), point);
+                }
+            }
+            long views = 0, likes = 0, comments = 0;
+            boolean any = false;
+            for (LocalDate day = week; !day.isAfter(week.plusDays(6)); day = day.plusDays(1)) {
+                Map<String, Object> point = daily.get(day.toString());
+                if (point != null) {
+                    views += numberOf(point.get("views"));
+                    likes += numberOf(point.get("likes"));
+                    comments += numberOf(point.get("comments"));
+                    any = true;
+                }
+            }
+            if (any) {
+                points.add(point(week.toString(), views, likes, comments));
+            }
+        }
+        return points;
+    }
+
+    // The raw pipeline of the storage layout over [from, to) (to null = open ended), grouped by UTC day
+    List<Map<String, Object>> rawDaily(Scope scope, LocalDateTime from, LocalDateTime to) {
+        if (storageConfig.isBuckets()) {
+            return bucketStore.dailyTotals(scope.match(), from, to);
+        }
+
+        Document time = new Document("$gte", toDate(from));
+        if (to != null) {
+            time.append("$lt", toDate(to));
+        }
+        List<Document> pipeline = List.of(
+                new Document("$match", scope.match().append("retrievalTimestamp", time)),
+                new Document("$group", new Document("_id", new Document("$dateToString",
+                        new Document("format", "%Y-%m-%d").append("date", "$retrievalTimestamp")))
+                        .append("views", weightedSum("$views"))
+                        .append("likes", weightedSum("$likes"))
+                        .append("comments", weightedSum("$comments"))),
+                new Document("$project", new Document("_id", 0).append("date", "$_id")
+                        .append("views", 1).append("likes", 1).append("comments", 1)));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        mongoTemplate.getCollection(storageConfig.getCollectionName()).aggregate(pipeline).forEach(result::add);
+        return result;
+    }
+
+    // The partial first day of a series when its raw snapshots are compacted: its hours from the one the start
+    // falls in, or the whole day once the hours are dropped too
+    private List<Map<String, Object>> compactedDay(Scope scope, LocalDateTime from, MetricsRollupState.State state) {
+        LocalDate day = utcDay(from);
+        if (state.hoursKeptFrom() != null && day.isBefore(state.hoursKeptFrom())) {
+            ContentMetricsRollup rollup = rollups(scope, DAY, day).get(day.toString());
+            return rollup != null ? List.of(point(day.toString(), rollup.getViews(), rollup.getLikes(), rollup.getComments()))
+                    : List.of();
+        }
+
+        String firstHour = from.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).format(HOUR_FORMAT);
+        List<Document> pipeline = List.of(
+                new Document("$match", scope.match().append("grain", HOUR).append("level", CONTENT)
+                        .append("period", new Document("$gte", firstHour).append("$lt", day.plusDays(1).toString()))),
+                new Document("$group", new Document("_id", null)
+                        .append("views", new Document("$sum", "$views"))
+                        .append("likes", new Document("$sum", "$likes"))
+                        .append("comments", new Document("$sum", "$comments"))));
+        Document total = mongoTemplate.getCollection(COLLECTION).aggregate(pipeline).first();
+        return total != null ? List.of(point(day.toString(), longOf(total.get("views")), longOf(total.get("likes")),
+                longOf(total.get("comments")))) : List.of();
+    }
+
+    private Map<String, ContentMetricsRollup> rollups(Scope scope, String grain, LocalDate from) {
+        Criteria criteria = Criteria.where("grain").is(grain).and("level").is(scope.level())
+                .and("userId").is(scope.userId())
+                .and("period").gte(from.toString());
+        if (scope.platform() != null) {
+            criteria.and("platform").is(scope.platform());
+        }
+        if (scope.platformContentId() != null) {
+            criteria.and("platformContentId").is(scope.platformContentId());
+        }
+
+        Map<String, ContentMetricsRollup> byPeriod = new HashMap<>();
+        for (ContentMetricsRollup rollup : mongoTemplate.find(Query.query(criteria), ContentMetricsRollup.class)) {
+            byPeriod.put(rollup.getPeriod(), rollup);
+        }
+        return byPeriod;
+    }
+
+    // Same ids from ingest and from the rebuilds, so both update the same document
+    static String rollupId(String grain, String level, String period, Long userId, String platform, String platformContentId) {
+        String key = switch (level) {
+            case USER -> String.valueOf(userId);
+            case PLATFORM -> userId + ":" + Objects.toString(platform, "");
+            default -> userId + ":" + Objects.toString(platform, "") + ":" + Objects.toString(platformContentId, "");
+        };
+        return grain + ":" + level + ":" + key + ":" + period;
+    }
+
+    static Document weightedSum(String field) {
+        return new Document("$sum", new Document("$multiply", List.of(field, new Document("$ifNull", List.of("$sampleCount", 1)))));
+    }
+
+    private static Map<String, Object> point(String date, Long views, Long likes, Long comments) {
+        Map<String, Object> point = new LinkedHashMap<>();
+        point.put("date", date);
+        point.put("views", views != null ? views : 0L);
+        point.put("likes", likes != null ? likes : 0L);
+        point.put("comments", comments != null ? comments : 0L);
+        return point;
+    }
+
+    static LocalDate weekOf(LocalDate day) {
+        return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    static LocalDate utcToday() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    static LocalDate utcDay(LocalDateTime timestamp) {
+        return MetricsBucketStore.utcDay(timestamp);
+    }
+
+    // Start of the UTC day as a local timestamp, the way the snapshots store their time
+    static LocalDateTime utcStart(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    static Date toDate(LocalDateTime timestamp) {
+        return MetricsBucketStore.toDate(timestamp);
+    }
+
+    static Long longOf(Object value) {
+        return value instanceof Number number ? number.longValue() : null;
+    }
+
+    static long numberOf(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+
+    // A user, one of their platforms, or one of their content items (platformContentId set, platform optional)
+    public record Scope(Long userId, String platform, String platformContentId) {
+
+        String level() {
+            return platformContentId != null ? CONTENT : platform != null ? PLATFORM : USER;
+        }
+
+        Document match() {
+            Document match = new Document("userId", userId);
+            if (platform != null) {
+                match.append("platform", platform);
+            }
+            if (platformContentId != null) {
+                match.append("platformContentId", platformContentId);
+            }
+            return match;
+        }
+    }
+}
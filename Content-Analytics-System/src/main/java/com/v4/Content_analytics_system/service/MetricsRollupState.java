@@ -0,0 +1,250 @@
+package com.v4.Content_analytics_system.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// The one state document of the metrics rollups (content_metrics_rollup_state): which days the rollups can vouch
+// for (rebuilt, live, dirty) and how far retention has compacted. Shared by ingest, the rebuilds, the reads and
+// the compaction
+@Component
+public class MetricsRollupState {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRollupState.class);
+
+    public static final String COLLECTION = "content_metrics_rollup_state";
+    private static final String STATE_ID = "rollups";
+
+    private final MongoTemplate mongoTemplate;
+    private final String nodeKey;
+
+    // Days this node has listed as pending, so ingest writes the state only when a new day starts
+    private Set<LocalDate> noted = Set.of();
+
+    @Value("${metrics.rollups.enabled:true}")
+    private boolean enabled;
+
+    // The pending days have to be found again after a restart, so the host name rather than the lease manager's
+    // per start id. Nodes sharing a host need metrics.refresh.cluster.node-id set
+    public MetricsRollupState(MongoTemplate mongoTemplate, @Value("${metrics.refresh.cluster.node-id:}") String nodeId) {
+        this.mongoTemplate = mongoTemplate;
+        // Field name under pending, dots would make it a path
+        this.nodeKey = (nodeId == null || nodeId.isBlank() ? hostName() : nodeId).replace('.', '_');
+    }
+
+    // Ingest updates count from the first start with the rollups on: that day is incomplete until the job rebuilds
+    // it, and the days between the last rebuilt one and it are read raw until then. Later starts keep liveSince,
+    // only the days this node had pending when it went down unclean (increments maybe lost) go dirty.
+    // A node with the rollups off writes snapshots without increments, so it takes liveSince away
+    @PostConstruct
+    public void markLive() {
+        try {
+            if (!enabled) {
+                mongoTemplate.updateFirst(stateQuery(), new Update().unset("liveSince"), COLLECTION);
+                return;
+            }
+            String today = MetricsRollupService.utcToday().toString();
+            try {
+                mongoTemplate.upsert(stateQuery().addCriteria(Criteria.where("liveSince").exists(false)),
+                        new Update().set("liveSince", today).addToSet("dirty", today), COLLECTION);
+            } catch (DuplicateKeyException e) {
+                // Live already
+            }
+
+            Document doc = mongoTemplate.findById(STATE_ID, Document.class, COLLECTION);
+            Document pending = doc != null ? doc.get("pending", Document.class) : null;
+            Object days = pending != null ? pending.get(nodeKey) : null;
+            if (days instanceof List<?> list && !list.isEmpty()) {
+                LocalDate compactedThrough = dateOf(doc.getString("compactedThrough"));
+                List<String> dirty = new ArrayList<>();
+                for (Object day : list) {
+                    if (compactedThrough == null || LocalDate.parse(day.toString()).isAfter(compactedThrough)) {
+                        dirty.add(day.toString());
+                    }
+                }
+                if (!dirty.isEmpty()) {
+                    log.warn("Last run of this node ended without a clean shutdown, rebuilding the rollups of {}", dirty);
+                    addDirty(dirty);
+                }
+            }
+            mongoTemplate.updateFirst(stateQuery(), new Update().unset("pending." + nodeKey), COLLECTION);
+            // Before the first snapshot of this run is written
+            notePending(List.of(MetricsRollupService.utcToday()));
+        } catch (Exception e) {
+            log.error("Could not mark metrics rollups live: {}", e.getMessage());
+        }
+    }
+
+    // Everything this node ingested is in (the bulk writers flush before this bean goes), nothing to rebuild
+    @PreDestroy
+    public void clearPending() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            mongoTemplate.updateFirst(stateQuery(), new Update().unset("pending." + nodeKey), COLLECTION);
+        } catch (Exception e) {
+            log.warn("Could not clear the pending rollup days: {}", e.getMessage());
+        }
+    }
+
+    // Listed before the increments of these days go out, so a node that dies between a snapshot write and its
+    // increments rebuilds those days on its next start instead of today on every start. The next day is listed
+    // along so the first batch after midnight is covered too. Only the last few days stay listed
+    synchronized void notePending(Collection<LocalDate> days) {
+        Set<LocalDate> next = new HashSet<>(noted);
+        for (LocalDate day : days) {
+            next.add(day);
+            next.add(day.plusDays(1));
+        }
+        if (next.isEmpty()) {
+            return;
+        }
+        LocalDate newest = next.stream().max(LocalDate::compareTo).orElseThrow();
+        next.removeIf(day -> day.isBefore(newest.minusDays(2)));
+        if (next.equals(noted)) {
+            return;
+        }
+        mongoTemplate.upsert(stateQuery(), new Update().set("pending." + nodeKey,
+                next.stream().sorted().map(LocalDate::toString).toList()), COLLECTION);
+        noted = next;
+    }
+
+    public boolean isActive() {
+        return enabled;
+    }
+
+    State state() {
+        Document doc = mongoTemplate.findById(STATE_ID, Document.class, COLLECTION);
+        if (doc == null) {
+            return new State(null, null, Set.of(), null, null);
+        }
+        Set<LocalDate> dirty = new HashSet<>();
+        for (Object day : doc.getList("dirty", Object.class, List.of())) {
+            dirty.add(LocalDate.parse(day.toString()));
+        }
+        return new State(dateOf(doc.getString("rebuiltThrough")), dateOf(doc.getString("liveSince")), dirty,
+                dateOf(doc.getString("compactedThrough")), dateOf(doc.getString("hoursKeptFrom")));
+    }
+
+    // With the rollups off nothing counts as covered (the documents may be left from when they were on), all reads go raw
+    State readState() {
+        return enabled ? state() : new State(null, null, Set.of(), null, null);
+    }
+
+    void addDirty(Collection<String> days) {
+        mongoTemplate.upsert(stateQuery(), new Update().addToSet("dirty").each(days.toArray()), COLLECTION);
+    }
+
+    void addDirty(LocalDate day) {
+        mongoTemplate.upsert(stateQuery(), new Update().addToSet("dirty", day.toString()), COLLECTION);
+    }
+
+    void removeDirty(LocalDate day) {
+        mongoTemplate.updateFirst(stateQuery(), new Update().pull("dirty", day.toString()), COLLECTION);
+    }
+
+    void saveWatermark(LocalDate day) {
+        mongoTemplate.upsert(stateQuery(), new Update().set("rebuiltThrough", day.toString()), COLLECTION);
+    }
+
+    // Rebuilt and not dirty, so the day documents are final and the raw snapshots can go
+    public boolean isRebuilt(LocalDate day) {
+        State state = state();
+        return state.rebuiltThrough() != null && !day.isAfter(state.rebuiltThrough()) && !state.dirty().contains(day);
+    }
+
+    // From here on the day (and every one before it) is read from the hour and day documents only. Set before the
+    // raw snapshots are deleted, so reads never see a half deleted day
+    public void markCompacted(LocalDate day) {
+        mongoTemplate.upsert(stateQuery(), new Update().max("compactedThrough", day.toString()), COLLECTION);
+    }
+
+    // Same for the hour documents before the given day, their days are read from the day documents only
+    public void markHoursDroppedBefore(LocalDate day) {
+        mongoTemplate.upsert(stateQuery(), new Update().max("hoursKeptFrom", day.toString()), COLLECTION);
+    }
+
+    public LocalDate compactedThrough() {
+        return state().compactedThrough();
+    }
+
+    // Raw snapshots before this are compacted (or about to be deleted), null when nothing is
+    public LocalDateTime rawKeptFrom() {
+        LocalDate compactedThrough = readState().compactedThrough();
+        return compactedThrough != null ? MetricsRollupService.utcStart(compactedThrough.plusDays(1)) : null;
+    }
+
+    private static Query stateQuery() {
+        return Query.query(Criteria.where("_id").is(STATE_ID));
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "node";
+        }
+    }
+
+    private static LocalDate dateOf(String day) {
+        return day != null ? LocalDate.parse(day) : null;
+    }
+
+
+    // Days at or before rebuiltThrough were rebuilt from the raw snapshots, days after liveSince have had every
+    // ingest update. Dirty days are neither until rebuilt. Days at or before compactedThrough were rebuilt before
+    // their raw snapshots went, their hour documents are kept from hoursKeptFrom on
+    record State(LocalDate rebuiltThrough, LocalDate liveSince, Set<LocalDate> dirty,
+                 LocalDate compactedThrough, LocalDate hoursKeptFrom) {
+
+        boolean compacted(LocalDate day) {
+            return compactedThrough != null && !day.isAfter(compactedThrough);
+        }
+
+        boolean covers(LocalDate day) {
+            if (compacted(day)) {
+                return true;
+            }
+            if (dirty.contains(day)) {
+                return false;
+            }
+            return (rebuiltThrough != null && !day.isAfter(rebuiltThrough)) || (liveSince != null && day.isAfter(liveSince));
+        }
+
+        // The week document is either rebuilt from complete days or has had every ingest update since Monday,
+        // a week with days of both kinds is only complete once rebuilt
+        boolean coversWeek(LocalDate monday, LocalDate today) {
+            LocalDate sunday = monday.plusDays(6);
+            boolean rebuilt = rebuiltThrough != null && !sunday.isAfter(rebuiltThrough);
+            boolean live = liveSince != null && monday.isAfter(liveSince);
+            if (!rebuilt && !live) {
+                return false;
+            }
+            for (LocalDate day = monday; !day.isAfter(sunday) && !day.isAfter(today); day = day.plusDays(1)) {
+                if (dirty.contains(day)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
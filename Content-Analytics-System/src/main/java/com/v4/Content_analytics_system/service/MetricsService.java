@@ -1,23 +1,30 @@
 package com.v4.Content_analytics_system.service;
 
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
 import com.v4.Content_analytics_system.exception.MetricsFetchException;
+import com.v4.Content_analytics_system.fetcher.FetcherRegistry;
+import com.v4.Content_analytics_system.fetcher.PlatformMetricsFetcher;
+import com.v4.Content_analytics_system.model.DTO.MetricsBatchResult;
 import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
 import com.v4.Content_analytics_system.model.entity.sql.Content;
-import com.v4.Content_analytics_system.repository.mongo.IContentMetricsRepository;
+import com.v4.Content_analytics_system.ratelimit.PlatformThrottle;
 import com.v4.Content_analytics_system.repository.sql.IContentRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.client.RestTemplate;
 
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -27,58 +34,81 @@ public class MetricsService {
 
     private final Logger log = LoggerFactory.getLogger(MetricsService.class);
 
-    private final RestTemplate restTemplate;
-    private final IContentMetricsRepository metricsRepository;
-    private final IContentRepository contentRepository;
+    // Instagram sends 2024-01-31T18:10:00+0000, accept Z and +00:00 too
+    private static final DateTimeFormatter INSTAGRAM_TIMESTAMP = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+            .optionalStart().appendOffset("+HH:MM", "Z").optionalEnd()
+            .optionalStart().appendOffset("+HHMM", "Z").optionalEnd()
+            .toFormatter();
 
-    public MetricsService(RestTemplate restTemplate, IContentMetricsRepository metricsRepository, IContentRepository contentRepository) {
-        this.restTemplate = restTemplate;
-        this.metricsRepository = metricsRepository;
+    private final ContentMetricsHistory metricsHistory;
+    private final IContentRepository contentRepository;
+    private final PlatformThrottle platformThrottle;
+    private final FetcherRegistry fetchers;
+    private final SnapshotDeduplicator deduplicator;
+    private final MongoTemplate mongoTemplate;
+
+    public MetricsService(ContentMetricsHistory metricsHistory, IContentRepository contentRepository,
+                          PlatformThrottle platformThrottle, FetcherRegistry fetchers,
+                          SnapshotDeduplicator deduplicator, MongoTemplate mongoTemplate) {
+        this.metricsHistory = metricsHistory;
         this.contentRepository = contentRepository;
+        this.platformThrottle = platformThrottle;
+        this.fetchers = fetchers;
+        this.deduplicator = deduplicator;
+        this.mongoTemplate = mongoTemplate;
     }
 
-    @Value("${youtube.api.key}")
-    private String youtubeApiKey;
-
-    @Value("${youtube.api.base-url}")
-    private String youtubeBaseUrl;
-
     // Fetching metrics based on platforms
     public ContentMetrics fetchMetricsForContent(Content content) {
+        return saveMetrics(fetchMetrics(content));
+    }
+
+    // Same fetch without the save, for callers that persist in bulk
+    public ContentMetrics fetchMetrics(Content content) {
 
         log.info("Fetching metrics for content ID: {}, Platform: {}",
                 content.getId(), content.getPlatform().getPlatformName());
 
         String platform = content.getPlatform().getPlatformName();
         String contentId = content.getPlatformContentId();
+        PlatformMetricsFetcher fetcher = fetchers.fetcherFor(platform);
 
+        // Every platform call goes through the per-platform rate / concurrency limits
         ContentMetrics metrics;
-
-        switch (platform.toLowerCase()) {
-            case "youtube":
-                metrics = fetchYoutubeMetrics(contentId);
-                break;
-                case "instagram":
-                    metrics = fetchInstagramMetrics(contentId);
-                    break;
-                    case "tiktok":
-                        metrics = fetchTiktokMetrics(contentId);
-                        break;
-                        default:
-                            throw new MetricsFetchException("Unsupported platform: " + platform);
+        try {
+            metrics = platformThrottle.call(platform, () -> fetcher.fetch(List.of(content))).get(contentId);
+        } catch (MetricsFetchException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MetricsFetchException("Failed to fetch " + platform + " metrics: " + e.getMessage());
         }
+        if (metrics == null) {
+            throw new MetricsFetchException("Content not found on " + platform + ": " + contentId);
+        }
+
+        completeMetrics(content, metrics);
+
+        log.info("Successfully fetched metrics for content ID: {}", content.getId());
 
-        // Setting common fields
+        return metrics;
+    }
+
+    // Setting the fields every platform shares (package-private for the reactive ingestion path)
+    void completeMetrics(Content content, ContentMetrics metrics) {
         metrics.setUserId(content.getUser().getId());
-        metrics.setPlatform(platform);
-        metrics.setPlatformContentId(contentId);
+        metrics.setPlatform(content.getPlatform().getPlatformName());
+        metrics.setPlatformContentId(content.getPlatformContentId());
         metrics.setRetrievalTimestamp(LocalDateTime.now());
+        if (MetricsStorageConfig.isTimeSeries(storageLayout)) {
+            metrics.setMeta(new ContentMetrics.SeriesMeta(metrics.getUserId(), metrics.getPlatform(), metrics.getPlatformContentId()));
+        }
 
         // Calc engagement rate
         calculateEngagementRate(metrics);
+    }
 
-        log.info("Successfully fetched metrics for content ID: {}", content.getId());
-
+    private ContentMetrics saveMetrics(ContentMetrics metrics) {
         if (enableMetricsDebug) {
             log.info("Saving metrics to MongoDB: platform={}, contentId={}, views={}, likes={}, comments={}, engagementRate={}%",
                     metrics.getPlatform(), metrics.getPlatformContentId(),
@@ -86,21 +116,44 @@ public class MetricsService {
                     metrics.getEngagementRate());
         }
 
+        // Same numbers as the last stored snapshot: extend that document instead of adding another one
+        String previousId = deduplicator.matchPrevious(metrics);
+        if (previousId != null) {
+            ContentMetrics extended = mongoTemplate.findAndModify(deduplicator.previousDocument(previousId),
+                    deduplicator.extension(metrics), FindAndModifyOptions.options().returnNew(true), ContentMetrics.class);
+            if (extended != null) {
+                metricsHistory.recordUnchanged(metrics);
+                log.info("Metrics unchanged, extended MongoDB ID: {} ({} samples)", extended.getId(), extended.getSampleCount());
+                return extended;
+            }
+            // Previous document is gone, store this one normally
+            deduplicator.forget(metrics);
+            deduplicator.matchPrevious(metrics);
+        }
+
         // Saving to MongoDb
-        ContentMetrics savedMetrics = metricsRepository.save(metrics);
-        log.info("Successfully saved metrics with MongoDB ID: {}", savedMetrics.getId());
-        return savedMetrics;
+        try {
+            ContentMetrics savedMetrics = metricsHistory.save(metrics);
+            log.info("Successfully saved metrics with MongoDB ID: {}", savedMetrics.getId());
+            return savedMetrics;
+        } catch (RuntimeException e) {
+            deduplicator.forget(metrics);
+            throw e;
+        }
     }
 
     @Value("${logging.level.metrics-debug:false}")
     private boolean enableMetricsDebug;
 
+    @Value("${metrics.storage.layout:plain}")
+    private String storageLayout;
+
 
 
     // Fetching overall metrics for a specific platform
     public List<ContentMetrics> fetchMetricsForPlatform(Long platformId, Long userId) {
 
-        List<Content> contents = contentRepository.findByPlatformIdAndUserId(platformId, userId);
+        List<Content> contents = contentRepository.findByPlatformIdAndUserIdWithPlatformAndUser(platformId, userId);
 
         return contents.stream()
                 .map(this::fetchMetricsForContent)
@@ -111,7 +164,7 @@ public class MetricsService {
     // Fetching metrics for all content for the user
     public List<ContentMetrics> fetchAllUserMetrics(Long userId) {
 
-        List<Content> contents = contentRepository.findByUserId(userId);
+        List<Content> contents = contentRepository.findByUserIdWithPlatformAndUser(userId);
 
         return contents.stream()
                 .map(this::fetchMetricsForContent)
@@ -131,25 +184,26 @@ public class MetricsService {
         String platformName = content.getPlatform().getPlatformName();
 
         // Getting metrics
-        List<ContentMetrics> metrics = metricsRepository.findByUserIdAndPlatform(userId, platformName);
+        List<ContentMetrics> metrics = metricsHistory.findByUserIdAndPlatform(userId, platformName);
 
         // calcing the totals
+        // (every document counts once per retrieval it stands for)
         long totalViews = metrics.stream()
-                .mapToLong(m -> m.getViews() != null ? m.getViews() : 0)
+                .mapToLong(m -> (m.getViews() != null ? m.getViews() : 0) * m.sampleWeight())
                 .sum();
 
         long totalLikes = metrics.stream()
-                .mapToLong(m -> m.getLikes() != null ? m.getLikes() : 0)
+                .mapToLong(m -> (m.getLikes() != null ? m.getLikes() : 0) * m.sampleWeight())
                 .sum();
 
         long totalComments = metrics.stream()
-                .mapToLong(m -> m.getComments() != null ? m.getComments() : 0)
+                .mapToLong(m -> (m.getComments() != null ? m.getComments() : 0) * m.sampleWeight())
                 .sum();
 
-        double avgEngagementRate = metrics.stream()
-                .mapToDouble(m -> m.getEngagementRate() != null ? m.getEngagementRate() : 0)
-                .average()
-                .orElse(0.0);
+        long samples = metrics.stream().mapToLong(ContentMetrics::sampleWeight).sum();
+        double avgEngagementRate = samples == 0 ? 0.0 : metrics.stream()
+                .mapToDouble(m -> (m.getEngagementRate() != null ? m.getEngagementRate() : 0) * m.sampleWeight())
+                .sum() / samples;
 
         // Creating the summary
         summ.put("totalViews", totalViews);
@@ -185,121 +239,69 @@ public class MetricsService {
         String platformName = content.getPlatform().getPlatformName();
 
         LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        return metricsRepository.getTimeSeriesDataByPlatform(userId, platformName, thirtyDaysAgo);
+        return metricsHistory.getTimeSeriesDataByPlatform(userId, platformName, thirtyDaysAgo);
     }
 
 
-    // Updated the fetchYoutubeMetrics method for improved handling of likes
-    private ContentMetrics fetchYoutubeMetrics(String videoId) {
-        try {
-            // Constructing the API URL
-            String apiUrl = String.format(
-                    "%s/videos?part=statistics,snippet&id=%s&key=%s",
-                    youtubeBaseUrl, videoId, youtubeApiKey);
-
-            // Making the API call
-            ResponseEntity<Map> response = restTemplate.getForEntity(apiUrl, Map.class);
-            Map<String, Object> body = response.getBody();
-
-            // Log full response for debugging
-            log.debug("YouTube  API response for video {}: {}", videoId, body);
-
-            if (body == null || !body.containsKey("items")) {
-                throw new MetricsFetchException("Youtube API returned no results");
-            }
-
-            List<Map<String, Object>> items = (List<Map<String, Object>>) body.get("items");
-            if (items.isEmpty()) {
-                throw new MetricsFetchException("Video not found: " + videoId);
-            }
-
-            Map<String, Object> vidData = items.get(0);
-            Map<String, Object> stats = (Map<String, Object>) vidData.get("statistics");
-            Map<String, Object> snipps = (Map<String, Object>) vidData.get("snippet");
-
-            log.debug("YouTube API statistics: {}", stats);
-
-            // metrics object to saving to the collection
-            ContentMetrics metrics = new ContentMetrics();
-
-            // Basic metrics
-            metrics.setViews(parseLong(stats.get("viewCount")));
-
-            // Handle case where likeCount might not be available
-            metrics.setLikes(stats.containsKey("likeCount") ?
-                    parseLong(stats.get("likeCount")) :
-                    estimateLikesFromViews(parseLong(stats.get("viewCount"))));
+    // Fetching metrics for up to the platform's batch size of items (all of one platform) with a single call (not saved)
+    public MetricsBatchResult fetchMetricsBatch(List<Content> contents) {
 
-            metrics.setComments(parseLong(stats.get("commentCount")));
+        MetricsBatchResult result = new MetricsBatchResult();
+        if (contents.isEmpty()) {
+            return result;
+        }
 
-            // Setting platform specific metrics
-            Map<String, Object> platSpecMetrics = new HashMap<>();
-            platSpecMetrics.put("favoriteCount", stats.get("favoriteCount"));
-            platSpecMetrics.put("channelId", snipps.get("channelId"));
-            platSpecMetrics.put("publishedAt", snipps.get("publishedAt"));
-            platSpecMetrics.put("channelTitle", snipps.get("channelTitle"));
-            platSpecMetrics.put("title", snipps.get("title"));
-            metrics.setPlatformSpecMetrics(platSpecMetrics);
+        String platform = contents.get(0).getPlatform().getPlatformName();
+        int batchSize = fetchers.batchSize(platform);
+        if (contents.size() > batchSize) {
+            throw new IllegalArgumentException(platform + " takes at most " + batchSize + " items per call, got " + contents.size());
+        }
 
-            return metrics;
+        Map<String, ContentMetrics> metricsById;
+        try {
+            PlatformMetricsFetcher fetcher = fetchers.fetcherFor(platform);
+            // One call for the whole batch, so it takes a single rate token
+            metricsById = platformThrottle.call(platform, () -> fetcher.fetch(contents));
         } catch (Exception e) {
-            throw new MetricsFetchException("Failed to fetch Youtube metrics: " + e.getMessage());
+            // The whole call failed, so every item in the batch failed with it
+            log.error("{} batch call failed for {} items: {}", platform, contents.size(), e.getMessage());
+            contents.forEach(c -> result.addFailure(c.getId(), "Failed to fetch " + platform + " metrics: " + e.getMessage()));
+            return result;
         }
-    }
-    // HELPER method to estimate likes when not available
-    private Long estimateLikesFromViews(Long views) {
-        if (views == null || views == 0) {
-            return 0L;
-        }
-        // Typical YouTube engagement rate is around 2-5% for likes
-        // Use a conservative estimate
-        return Math.round(views * 0.02);
-    }
-
-
-    // Instagram
-    private ContentMetrics fetchInstagramMetrics(String contentId) {
 
+        log.debug("{} batch returned {} of {} requested items", platform, metricsById.size(), contents.size());
 
-        // placeholder before try to get the real API
-        ContentMetrics metrics = new ContentMetrics();
-        metrics.setViews(0L); // Instagram doesn't provide view counts for all content types
-        metrics.setLikes((long)(Math.random() * 100 + 10));
-        metrics.setComments((long)(Math.random() * 20 + 5));
+        // Mapping the results back to each content, missing ones are reported one by one
+        for (Content content : contents) {
+            ContentMetrics fetched = metricsById.get(content.getPlatformContentId());
+            if (fetched == null) {
+                log.warn("Content not found on {}: {} (content ID: {})", platform, content.getPlatformContentId(), content.getId());
+                result.addFailure(content.getId(), "Content not found: " + content.getPlatformContentId());
+                continue;
+            }
 
-        Map<String, Object> platformSpecific = new HashMap<>();
-        platformSpecific.put("impressions", (long)(Math.random() * 500 + 50));
-        platformSpecific.put("reach", (long)(Math.random() * 300 + 30));
-        platformSpecific.put("saves", (long)(Math.random() * 20 + 2));
-        metrics.setPlatformSpecMetrics(platformSpecific);
+            // The same id twice in one batch gets its own copy, each content is stored on its own
+            ContentMetrics metrics = result.getMetrics().stream().anyMatch(m -> m == fetched) ? copyOf(fetched) : fetched;
+            completeMetrics(content, metrics);
+            result.addMetrics(metrics);
+        }
 
-        return metrics;
+        return result;
     }
 
-
-    // TikTok
-    private ContentMetrics fetchTiktokMetrics(String contentId) {
-
-        //Placeholder
-        ContentMetrics metrics = new ContentMetrics();
-        metrics.setViews((long)(Math.random() * 1000 + 100));
-        metrics.setLikes((long)(Math.random() * 200 + 20));
-        metrics.setComments((long)(Math.random() * 50 + 5));
-        metrics.setShares((long)(Math.random() * 30 + 3));
-
-        Map<String, Object> platformSpecific = new HashMap<>();
-        platformSpecific.put("playCount", (long)(Math.random() * 1000 + 100));
-        platformSpecific.put("forwardCount", (long)(Math.random() * 30 + 3));
-        platformSpecific.put("whatsappShareCount", (long)(Math.random() * 10 + 1));
-        metrics.setPlatformSpecMetrics(platformSpecific);
-
-        return metrics;
-
+    private ContentMetrics copyOf(ContentMetrics source) {
+        ContentMetrics copy = new ContentMetrics();
+        copy.setViews(source.getViews());
+        copy.setLikes(source.getLikes());
+        copy.setComments(source.getComments());
+        copy.setShares(source.getShares());
+        copy.setPlatformSpecMetrics(source.getPlatformSpecMetrics() != null ? new HashMap<>(source.getPlatformSpecMetrics()) : null);
+        return copy;
     }
 
 
-    // HELPER to clac any platform's engagement rate
-    private void calculateEngagementRate(ContentMetrics metrics) {
+    // HELPER to clac any platform's engagement rate (also used for snapshots read back from buckets)
+    static void calculateEngagementRate(ContentMetrics metrics) {
 
         if (metrics.getViews() == null || metrics.getViews() == 0) {
             metrics.setEngagementRate(0.0);
@@ -326,7 +328,7 @@ public class MetricsService {
         LocalDateTime published = getPublishDateForContent(content);
 
         // Get actual metrics records
-        List<ContentMetrics> metrics = metricsRepository.findByPlatformContentIdOrderByRetrievalTimestampAsc(platformContentId);
+        List<ContentMetrics> metrics = metricsHistory.findByPlatformContentIdOrderByRetrievalTimestampAsc(platformContentId);
 
         // Build complete time series
         return buildTimeSeriesData(metrics, published);
@@ -341,8 +343,7 @@ public class MetricsService {
 
         // Try to get from platform metadata for YouTube
         if ("YouTube".equalsIgnoreCase(content.getPlatform().getPlatformName())) {
-            Optional<ContentMetrics> latest = metricsRepository
-                    .findTopByPlatformContentIdOrderByRetrievalTimestampDesc(content.getPlatformContentId());
+            Optional<ContentMetrics> latest = metricsHistory.findLatest(content);
 
             if (latest.isPresent() && latest.get().getPlatformSpecMetrics() != null) {
                 Map<String, Object> specMetrics = latest.get().getPlatformSpecMetrics();
@@ -376,6 +377,10 @@ public class MetricsService {
 
             for (ContentMetrics cm : metrics) {
                 viewsByDate.put(cm.getRetrievalTimestamp(), cm.getViews());
+                // Folded unchanged snapshots: the value held until validUntil
+                if (cm.getValidUntil() != null) {
+                    viewsByDate.put(cm.getValidUntil(), cm.getViews());
+                }
             }
 
             // Ensure we have today's data point
@@ -437,7 +442,7 @@ public class MetricsService {
         log.info("Using publish date for content ID {}: {}", contentId, published);
 
         // Getting all metrics for this content
-        List<ContentMetrics> metrics = metricsRepository.findByPlatformContentIdOrderByRetrievalTimestampAsc(platformContentId);
+        List<ContentMetrics> metrics = metricsHistory.findByPlatformContentIdOrderByRetrievalTimestampAsc(platformContentId);
 
         // Returning completed time series data
         return buildTimeSeriesForContent(metrics, published);
@@ -446,11 +451,9 @@ public class MetricsService {
     public LocalDateTime getActualPublishDateForContent(Content content) {
 
         String platformName = content.getPlatform().getPlatformName();
-        String PlatformContentId = content.getPlatformContentId();
 
         // Trying to get the published date from metadata
-        Optional<ContentMetrics> latestMetrics = metricsRepository
-                .findTopByPlatformContentIdOrderByRetrievalTimestampDesc(PlatformContentId);
+        Optional<ContentMetrics> latestMetrics = metricsHistory.findLatest(content);
 
         if (latestMetrics.isPresent() && latestMetrics.get().getPlatformSpecMetrics() != null) {
             Map<String, Object> specMetrics = latestMetrics.get().getPlatformSpecMetrics();
@@ -463,20 +466,21 @@ public class MetricsService {
                 } catch (Exception e) {
                     log.warn("Could not parse YouTube publish date: {}", e.getMessage());
                 }
-            } else if (platformName.equalsIgnoreCase("Instagram") && specMetrics.containsKey("timestamp")) {
+            } else if (platformName.equalsIgnoreCase("Instagram") && specMetrics.containsKey("publishedAt")) {
                 try {
-                    Long timestamp = (Long) specMetrics.get("timestamp");
-                    return LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(timestamp),
-                            ZoneId.systemDefault()
-                    );
+                    // The media timestamp as Instagram sends it, ISO with an offset (+0000)
+                    String publishedAt = (String) specMetrics.get("publishedAt");
+                    return OffsetDateTime.parse(publishedAt, INSTAGRAM_TIMESTAMP)
+                            .withOffsetSameInstant(ZoneOffset.UTC)
+                            .toLocalDateTime();
                 } catch (Exception e) {
                     log.warn("Could not parse Instagram timestamp: {}", e.getMessage());
                 }
             } else if (platformName.equalsIgnoreCase("TikTok") && specMetrics.containsKey("createTime")) {
                 try {
-                    String createTime = (String) specMetrics.get("createTime");
-                    return LocalDateTime.parse(createTime);
+                    // create_time is in epoch seconds
+                    long createTime = ((Number) specMetrics.get("createTime")).longValue();
+                    return LocalDateTime.ofEpochSecond(createTime, 0, ZoneOffset.UTC);
                 } catch (Exception e) {
                     log.warn("Could not parse TikTok create time: {}", e.getMessage());
                 }
@@ -560,21 +564,4 @@ public class MetricsService {
     }
 
 
-    // Parse long value from API response
-    private Long parseLong(Object value) {
-
-        if (value == null) {
-            return 0L;
-        }
-        if (value instanceof Number) {
-            return ((Number) value).longValue();
-        }
-        try {
-            return Long.parseLong(value.toString());
-        } catch (NumberFormatException e) {
-            return 0L;
-        }
-    }
-
-
 }
@@ -3,7 +3,6 @@ package com.v4.Content_analytics_system.service;
 import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
 import com.v4.Content_analytics_system.model.entity.sql.Content;
 import com.v4.Content_analytics_system.model.entity.sql.Platform;
-import com.v4.Content_analytics_system.repository.mongo.IContentMetricsRepository;
 import com.v4.Content_analytics_system.repository.sql.IContentRepository;
 import com.v4.Content_analytics_system.repository.sql.IPlatformRepository;
 import com.v4.Content_analytics_system.repository.sql.IUserRepository;
@@ -24,21 +23,21 @@ public class PlatformService {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private final IContentMetricsRepository metricsRepository;
+    private final ContentMetricsHistory metricsHistory;
     private final IUserRepository userRepository;
     private final IPlatformRepository platformRepository;
     private final IContentRepository contentRepository;
     private final MetricsService metricsService;
 
     @Autowired
-    public PlatformService(IContentMetricsRepository metricsRepository,
+    public PlatformService(ContentMetricsHistory metricsHistory,
                            IUserRepository userRepository,
                            IPlatformRepository platformRepository,
                            IContentRepository contentRepository,
                            MetricsService metricsService) {
 
 
-        this.metricsRepository = metricsRepository;
+        this.metricsHistory = metricsHistory;
         this.userRepository = userRepository;
         this.platformRepository = platformRepository;
         this.contentRepository = contentRepository;
@@ -82,7 +81,17 @@ public class PlatformService {
 
     // Getting all content for a platform with their metrics
     public List<Map<String, Object>> getPlatformContentWithMetrics(Long platformId, Long userId) {
-        List<Content> contents = contentRepository.findByPlatformIdAndUserId(platformId, userId);
+        List<Content> contents = contentRepository.findByPlatformIdAndUserIdWithPlatformAndUser(platformId, userId);
+
+        // Latest metrics of all the content in one query
+        Map<Long, ContentMetrics> latestMetrics;
+        try {
+            latestMetrics = metricsHistory.findLatest(contents);
+        } catch (Exception e) {
+            log.error("Error fetching metrics for platform {} content: {}", platformId, e.getMessage());
+            latestMetrics = Map.of();
+        }
+        Map<Long, ContentMetrics> metricsByContent = latestMetrics;
 
         return contents.stream().map(content -> {
             Map<String, Object> contentData = new HashMap<>();
@@ -93,28 +102,15 @@ public class PlatformService {
             contentData.put("publishedDate", content.getPublishedDate());
 
             // Getting the latest metrics for this content
-            try {
-                Optional<ContentMetrics> metricsOpt = metricsRepository.findTopByPlatformContentIdOrderByRetrievalTimestampDesc(
-                        content.getPlatformContentId());
-
-                if (metricsOpt.isPresent()) {
-                    ContentMetrics metrics = metricsOpt.get();
-                    contentData.put("views", metrics.getViews());
-                    contentData.put("likes", metrics.getLikes());
-                    contentData.put("comments", metrics.getComments());
-                    contentData.put("shares", metrics.getShares());
-                    contentData.put("engagementRate", metrics.getEngagementRate());
-                } else {
-                    // Setting defaults if no metrics found
-                    contentData.put("views", 0);
-                    contentData.put("likes", 0);
-                    contentData.put("comments", 0);
-                    contentData.put("shares", 0);
-                    contentData.put("engagementRate", 0.0);
-                }
-            } catch (Exception e) {
-                log.error("Error fetching metrics for content {}: {}", content.getId(), e.getMessage());
-                // Setting defaults if error
+            ContentMetrics metrics = metricsByContent.get(content.getId());
+            if (metrics != null) {
+                contentData.put("views", metrics.getViews());
+                contentData.put("likes", metrics.getLikes());
+                contentData.put("comments", metrics.getComments());
+                contentData.put("shares", metrics.getShares());
+                contentData.put("engagementRate", metrics.getEngagementRate());
+            } else {
+                // Setting defaults if no metrics found (or the lookup failed)
                 contentData.put("views", 0);
                 contentData.put("likes", 0);
                 contentData.put("comments", 0);
@@ -136,10 +132,10 @@ public class PlatformService {
         try {
             ContentMetrics metrics = metricsService.fetchMetricsForContent(content);
 
-            // Last sync time
+            // Last sync time (the metrics are already saved by fetchMetricsForContent)
             Platform p = content.getPlatform();
             p.setLastSyncTime(LocalDateTime.now());
-            metricsRepository.save(metrics);
+            platformRepository.save(p);
 
             log.info("Updated metrics for content ID: {} on platform: {}",
                     contentId, content.getPlatform().getPlatformName());
@@ -165,7 +161,7 @@ public class PlatformService {
             stats.put("contentCount", contentCount);
 
             // Calculate total views (requires integrating with your metrics system)
-            long totalViews = metricsRepository.sumViewsByPlatform(platformType);
+            long totalViews = metricsHistory.sumViewsByPlatform(platformType);
             stats.put("totalViews", totalViews);
 
             result.put(platformType, stats);
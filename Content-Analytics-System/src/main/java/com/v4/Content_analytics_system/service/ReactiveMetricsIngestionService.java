@@ -0,0 +1,290 @@
+package com.v4.Content_analytics_system.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.v4.Content_analytics_system.fetcher.FetcherRegistry;
+import com.v4.Content_analytics_system.fetcher.YoutubeMetricsFetcher;
+import com.v4.Content_analytics_system.model.DTO.MetricsBatchResult;
+import com.v4.Content_analytics_system.model.DTO.YoutubeVideoListResponse;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsBucket;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.ratelimit.PlatformThrottle;
+import com.v4.Content_analytics_system.scheduler.RefreshListener;
+import com.v4.Content_analytics_system.scheduler.RefreshRunSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Reactive ingestion mode: WebClient fetches + reactive Mongo inserts, with bounded concurrency and backpressure
+@Service
+public class ReactiveMetricsIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveMetricsIngestionService.class);
+
+    private final WebClient platformWebClient;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MetricsService metricsService;
+    private final SnapshotDeduplicator deduplicator;
+    private final MetricsBucketStore bucketStore;
+    private final ContentMetricsHistory metricsHistory;
+    private final FetcherRegistry fetchers;
+    private final YoutubeMetricsFetcher youtubeFetcher;
+    private final PlatformThrottle platformThrottle;
+
+    // In-flight YouTube batch calls
+    @Value("${metrics.refresh.reactive.youtube-concurrency:64}")
+    private int youtubeConcurrency;
+
+    // In-flight calls for the platforms that still go through the blocking fetchers
+    @Value("${metrics.refresh.reactive.other-concurrency:32}")
+    private int otherConcurrency;
+
+    @Value("${metrics.write.batch-size:500}")
+    private int writeBatchSize;
+
+    @Value("${metrics.write.flush-interval-ms:2000}")
+    private long flushIntervalMs;
+
+    public ReactiveMetricsIngestionService(WebClient platformWebClient,
+                                           ReactiveMongoTemplate reactiveMongoTemplate,
+                                           MetricsService metricsService,
+                                           SnapshotDeduplicator deduplicator,
+                                           MetricsBucketStore bucketStore,
+                                           ContentMetricsHistory metricsHistory,
+                                           FetcherRegistry fetchers,
+                                           YoutubeMetricsFetcher youtubeFetcher,
+                                           PlatformThrottle platformThrottle) {
+        this.platformWebClient = platformWebClient;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.metricsService = metricsService;
+        this.deduplicator = deduplicator;
+        this.bucketStore = bucketStore;
+        this.metricsHistory = metricsHistory;
+        this.fetchers = fetchers;
+        this.youtubeFetcher = youtubeFetcher;
+        this.platformThrottle = platformThrottle;
+    }
+
+    // Pages are pulled on demand (JPA is blocking, so on boundedElastic), fetched and written without blocking
+    public Mono<RefreshRunSummary> refresh(Iterator<List<Content>> pages) {
+        return refresh(pages, metrics -> { });
+    }
+
+    // The listener sees every snapshot that was fetched (before it is buffered for the write) and every finished item
+    public Mono<RefreshRunSummary> refresh(Iterator<List<Content>> pages, RefreshListener listener) {
+        RefreshRunSummary summary = new RefreshRunSummary("reactive");
+
+        Iterable<List<Content>> pageSource = () -> pages;
+        Flux<Content> contents = Flux.fromIterable(pageSource)
+                .subscribeOn(Schedulers.boundedElastic())
+                .concatMapIterable(page -> page)
+                .doOnNext(c -> summary.recordSubmitted());
+
+        return contents
+                .groupBy(content -> content.getPlatform().getPlatformName().toLowerCase())
+                .flatMap(group -> "youtube".equals(group.key())
+                        ? fetchYoutube(group, summary, listener)
+                        : fetchOthers(group, fetchers.batchSize(group.key()), summary, listener))
+                .doOnNext(listener::onFetched)
+                .bufferTimeout(writeBatchSize, Duration.ofMillis(flushIntervalMs))
+                .concatMap(batch -> write(batch, summary))
+                .then(Mono.fromCallable(() -> {
+                    summary.finish();
+                    return summary;
+                }));
+    }
+
+    private Flux<ContentMetrics> fetchYoutube(Flux<Content> youtube, RefreshRunSummary summary, RefreshListener listener) {
+        return youtube
+                .buffer(fetchers.batchSize("youtube"))
+                .flatMap(batch -> fetchYoutubeBatch(batch, summary, listener), youtubeConcurrency);
+    }
+
+    private Flux<ContentMetrics> fetchYoutubeBatch(List<Content> batch, RefreshRunSummary summary, RefreshListener listener) {
+        String ids = batch.stream()
+                .map(Content::getPlatformContentId)
+                .distinct()
+                .collect(Collectors.joining(","));
+
+        // Same rate / AIMD limits as the blocking fetchers, a 429 or quota 403 halves the limit
+        return platformThrottle.callReactive("youtube", () -> platformWebClient.get()
+                        .uri(youtubeFetcher.videosUrl(ids))
+                        .retrieve()
+                        .onStatus(HttpStatusCode::isError, response -> response.bodyToMono(String.class)
+                                .defaultIfEmpty("")
+                                .map(body -> youtubeFetcher.callError(response.statusCode().value(), body)))
+                        .bodyToMono(YoutubeVideoListResponse.class)
+                        .elapsed()
+                        .map(timed -> {
+                            summary.recordFetch(TimeUnit.MILLISECONDS.toNanos(timed.getT1()));
+                            return timed.getT2();
+                        }))
+                .flatMapIterable(body -> toMetrics(batch, body, summary, listener))
+                .onErrorResume(e -> {
+                    log.error("YouTube batch call failed for {} videos: {}", batch.size(), e.getMessage());
+                    batch.forEach(c -> {
+                        summary.recordFailure();
+                        listener.onFinished(c, false);
+                    });
+                    return Flux.empty();
+                });
+    }
+
+    // Mapping items back to each content, missing videos count as failures one by one
+    private List<ContentMetrics> toMetrics(List<Content> batch, YoutubeVideoListResponse body, RefreshRunSummary summary,
+                                           RefreshListener listener) {
+        Map<String, YoutubeVideoListResponse.Item> itemsById = new HashMap<>();
+        if (body.items() != null) {
+            for (YoutubeVideoListResponse.Item item : body.items()) {
+                itemsById.put(item.id(), item);
+            }
+        }
+
+        List<ContentMetrics> result = new ArrayList<>();
+        for (Content content : batch) {
+            YoutubeVideoListResponse.Item item = itemsById.get(content.getPlatformContentId());
+            if (item == null) {
+                log.warn("Video not found: {} (content ID: {})", content.getPlatformContentId(), content.getId());
+                summary.recordFailure();
+                listener.onFinished(content, false);
+                continue;
+            }
+
+            try {
+                ContentMetrics metrics = youtubeFetcher.toMetrics(item);
+                metricsService.completeMetrics(content, metrics);
+                result.add(metrics);
+                summary.recordSuccess();
+                listener.onFinished(content, true);
+            } catch (Exception e) {
+                log.error("Error reading metrics for content ID: {}: {}", content.getId(), e.getMessage());
+                summary.recordFailure();
+                listener.onFinished(content, false);
+            }
+        }
+        return result;
+    }
+
+    // The other platforms go through their blocking fetchers, batched as each one declares,
+    // on boundedElastic so they never touch the event loop
+    private Flux<ContentMetrics> fetchOthers(Flux<Content> others, int batchSize, RefreshRunSummary summary,
+                                             RefreshListener listener) {
+        return others
+                .buffer(batchSize)
+                .flatMap(batch -> Mono.fromCallable(() -> {
+                            long start = System.nanoTime();
+                            MetricsBatchResult result = metricsService.fetchMetricsBatch(batch);
+                            summary.recordFetch(System.nanoTime() - start);
+                            return result;
+                        })
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMapIterable(result -> {
+                            result.getFailures().forEach((contentId, reason) -> {
+                                log.error("Error updating metrics for content ID: {}: {}", contentId, reason);
+                                summary.recordFailure();
+                            });
+                            result.getMetrics().forEach(m -> summary.recordSuccess());
+                            for (Content content : batch) {
+                                listener.onFinished(content, !result.getFailures().containsKey(content.getId()));
+                            }
+                            return result.getMetrics();
+                        })
+                        .onErrorResume(e -> {
+                            // Only this batch is lost, not the whole run
+                            log.error("Batch fetch failed for {} items: {}", batch.size(), e.getMessage());
+                            batch.forEach(c -> {
+                                summary.recordFailure();
+                                listener.onFinished(c, false);
+                            });
+                            return Flux.empty();
+                        }), otherConcurrency);
+    }
+
+    // One unordered bulk write per buffer, concatMap keeps a single write in flight and pushes back on the fetchers.
+    // Unchanged snapshots extend the previous document, same as the blocking bulk writer
+    private Mono<BulkWriteResult> write(List<ContentMetrics> batch, RefreshRunSummary summary) {
+        if (bucketStore.isActive()) {
+            return writeBuckets(batch, summary);
+        }
+
+        ReactiveBulkOperations ops = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetrics.class);
+        for (ContentMetrics metrics : batch) {
+            String previousId = deduplicator.matchPrevious(metrics);
+            if (previousId != null) {
+                ops.updateOne(deduplicator.previousDocument(previousId), deduplicator.extension(metrics));
+            } else {
+                ops.insert(metrics);
+            }
+        }
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return ops.execute()
+                    .doOnNext(result -> summary.recordFlush(result.getInsertedCount(), result.getMatchedCount(),
+                            batch.size() - result.getInsertedCount() - result.getMatchedCount(), System.nanoTime() - start))
+                    .flatMap(result -> afterWrite(batch, result.getInsertedCount() + result.getMatchedCount() == batch.size())
+                            .thenReturn(result))
+                    .onErrorResume(e -> {
+                        log.error("Reactive bulk write of {} metrics failed: {}", batch.size(), e.getMessage());
+                        batch.forEach(deduplicator::forget);
+                        summary.recordFlush(0, 0, batch.size(), System.nanoTime() - start);
+                        return afterWrite(batch, false).then(Mono.empty());
+                    });
+        });
+    }
+
+    // Bucket layout: every snapshot is pushed into its day bucket, an upsert that created or matched it counts as stored
+    private Mono<BulkWriteResult> writeBuckets(List<ContentMetrics> batch, RefreshRunSummary summary) {
+        ReactiveBulkOperations ops = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ContentMetricsBucket.class);
+        for (ContentMetrics metrics : batch) {
+            ops.upsert(MetricsBucketStore.bucketOf(metrics), MetricsBucketStore.sampleUpdate(metrics));
+        }
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return ops.execute()
+                    .doOnNext(result -> {
+                        int stored = result.getUpserts().size() + result.getMatchedCount();
+                        summary.recordFlush(stored, 0, batch.size() - stored, System.nanoTime() - start);
+                    })
+                    .flatMap(result -> afterWrite(batch, result.getUpserts().size() + result.getMatchedCount() == batch.size())
+                            .thenReturn(result))
+                    .onErrorResume(e -> {
+                        log.error("Reactive bucket write of {} metrics failed: {}", batch.size(), e.getMessage());
+                        summary.recordFlush(0, 0, batch.size(), System.nanoTime() - start);
+                        return afterWrite(batch, false).then(Mono.empty());
+                    });
+        });
+    }
+
+    // Rollups and latest snapshots go through the blocking template, so off the event loop. A write that didn't
+    // fully land only marks its days for a rebuild and drops its latest snapshots
+    private Mono<Void> afterWrite(List<ContentMetrics> batch, boolean complete) {
+        return Mono.<Void>fromRunnable(() -> {
+                    if (complete) {
+                        metricsHistory.written(batch);
+                    } else {
+                        metricsHistory.writeFailed(batch);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,187 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.scheduler.RefreshListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One background refresh (a platform or all content of a user). Counts the finished items as the engine
+// reports them and pushes progress to the SSE subscribers, at most every progressIntervalMs
+public class RefreshJob implements RefreshListener {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshJob.class);
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String jobId;
+    private final Long userId;
+    private final String scope;
+    private final Long platformId;
+    private final long progressIntervalMs;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile int total;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong lastPublishedAt = new AtomicLong();
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+
+    public RefreshJob(String jobId, Long userId, String scope, Long platformId, long progressIntervalMs) {
+        this.jobId = jobId;
+        this.userId = userId;
+        this.scope = scope;
+        this.platformId = platformId;
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    public void start(int total) {
+        this.total = total;
+        this.startedAt = LocalDateTime.now();
+        this.status = Status.RUNNING;
+        publish("progress");
+    }
+
+    public void complete() {
+        finish(Status.COMPLETED, null);
+    }
+
+    public void fail(String error) {
+        finish(Status.FAILED, error);
+    }
+
+    @Override
+    public void onFetched(ContentMetrics metrics) {
+    }
+
+    @Override
+    public void onFinished(Content content, boolean success) {
+        if (success) {
+            completed.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+
+        // Only the thread that wins the slot sends, the rest of the workers carry on
+        long now = System.currentTimeMillis();
+        long last = lastPublishedAt.get();
+        if (now - last >= progressIntervalMs && lastPublishedAt.compareAndSet(last, now)) {
+            publish("progress");
+        }
+    }
+
+    // Sends the current progress right away, a finished job also ends the stream
+    public synchronized void subscribe(SseEmitter emitter) {
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        emitter.onError(e -> subscribers.remove(emitter));
+
+        if (!send(emitter, isDone() ? "done" : "progress")) {
+            return;
+        }
+        if (isDone()) {
+            emitter.complete();
+        } else {
+            subscribers.add(emitter);
+        }
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public Map<String, Object> toProgress() {
+        int done = completed.get();
+        int failures = failed.get();
+
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("jobId", jobId);
+        progress.put("scope", scope);
+        progress.put("platformId", platformId);
+        progress.put("status", status);
+        progress.put("total", total);
+        progress.put("completed", done);
+        progress.put("failed", failures);
+        progress.put("remaining", Math.max(0, total - done - failures));
+        progress.put("createdAt", createdAt);
+        progress.put("startedAt", startedAt);
+        progress.put("finishedAt", finishedAt);
+        progress.put("error", error);
+        return progress;
+    }
+
+    private synchronized void finish(Status finalStatus, String error) {
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+        this.status = finalStatus;
+
+        for (SseEmitter emitter : subscribers) {
+            if (send(emitter, "done")) {
+                emitter.complete();
+            }
+        }
+        subscribers.clear();
+    }
+
+    private void publish(String event) {
+        for (SseEmitter emitter : subscribers) {
+            if (!send(emitter, event)) {
+                subscribers.remove(emitter);
+            }
+        }
+    }
+
+    // A client that went away just drops out of the subscribers
+    private boolean send(SseEmitter emitter, String event) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(toProgress()));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping progress subscriber of job {}: {}", jobId, e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    // GETTERS
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public Long getPlatformId() {
+        return platformId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+}
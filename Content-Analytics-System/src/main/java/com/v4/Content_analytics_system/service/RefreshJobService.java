@@ -0,0 +1,133 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.repository.sql.IContentRepository;
+import com.v4.Content_analytics_system.scheduler.MetricsRefreshEngine;
+import com.v4.Content_analytics_system.scheduler.RefreshRunSummary;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Platform and user wide refreshes as background jobs, so the request returns right away instead of holding
+// a Tomcat thread for the whole channel. Jobs run on a small fixed pool with a bounded queue, past that they are refused.
+// Jobs are kept in memory (per node) for retention-minutes after they finish
+@Service
+public class RefreshJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshJobService.class);
+
+    private final MetricsRefreshEngine refreshEngine;
+    private final IContentRepository contentRepository;
+
+    private final Map<String, RefreshJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    // Each job fans out on the engine's virtual threads, so a couple of job threads are enough
+    @Value("${metrics.refresh.jobs.threads:2}")
+    private int threads;
+
+    @Value("${metrics.refresh.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${metrics.refresh.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${metrics.refresh.jobs.progress-interval-ms:500}")
+    private long progressIntervalMs;
+
+    @Value("${metrics.refresh.jobs.sse-timeout-ms:600000}")
+    private long sseTimeoutMs;
+
+    public RefreshJobService(MetricsRefreshEngine refreshEngine, IContentRepository contentRepository) {
+        this.refreshEngine = refreshEngine;
+        this.contentRepository = contentRepository;
+    }
+
+    @PostConstruct
+    public void startExecutor() {
+        int size = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("refresh-job-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    public RefreshJob submitPlatformRefresh(Long userId, Long platformId) {
+        return submit(userId, "platform", platformId,
+                () -> contentRepository.findByPlatformIdAndUserIdWithPlatformAndUser(platformId, userId));
+    }
+
+    public RefreshJob submitUserRefresh(Long userId) {
+        return submit(userId, "user", null, () -> contentRepository.findByUserIdWithPlatformAndUser(userId));
+    }
+
+    // Only the owner sees a job, for anyone else it doesn't exist
+    public Optional<RefreshJob> findJob(String jobId, Long userId) {
+        RefreshJob job = jobs.get(jobId);
+        return job != null && Objects.equals(job.getUserId(), userId) ? Optional.of(job) : Optional.empty();
+    }
+
+    public SseEmitter subscribe(RefreshJob job) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        job.subscribe(emitter);
+        return emitter;
+    }
+
+    // The same refresh already waiting or running is handed back instead of starting a second one.
+    // Throws RejectedExecutionException when the queue is full
+    private synchronized RefreshJob submit(Long userId, String scope, Long platformId, Supplier<List<Content>> contents) {
+        removeExpiredJobs();
+
+        for (RefreshJob job : jobs.values()) {
+            if (!job.isDone() && Objects.equals(job.getUserId(), userId)
+                    && job.getScope().equals(scope) && Objects.equals(job.getPlatformId(), platformId)) {
+                return job;
+            }
+        }
+
+        RefreshJob job = new RefreshJob(UUID.randomUUID().toString(), userId, scope, platformId, progressIntervalMs);
+        executor.execute(() -> run(job, contents));
+        jobs.put(job.getJobId(), job);
+        log.info("Queued {} refresh job {} for user {} ({} waiting)", scope, job.getJobId(), userId, executor.getQueue().size());
+        return job;
+    }
+
+    private void run(RefreshJob job, Supplier<List<Content>> contents) {
+        try {
+            List<Content> items = contents.get();
+            job.start(items.size());
+            RefreshRunSummary summary = refreshEngine.refresh(items, job);
+            job.complete();
+            log.info("Refresh job {} done: {}", job.getJobId(), summary);
+        } catch (Exception e) {
+            log.error("Refresh job {} failed: {}", job.getJobId(), e.getMessage(), e);
+            job.fail(e.getMessage());
+        }
+    }
+
+    private void removeExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.isDone() && job.getFinishedAt().isBefore(cutoff));
+    }
+}
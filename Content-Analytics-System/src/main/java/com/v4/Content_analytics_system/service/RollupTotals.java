@@ -0,0 +1,118 @@
+package com.v4.Content_analytics_system.service;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static com.v4.Content_analytics_system.service.MetricsRollupService.CONTENT;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.USER;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.longOf;
+import static com.v4.Content_analytics_system.service.MetricsRollupService.numberOf;
+
+// Totals of one rollup document, built up from snapshots (ingest) or from grouped raw totals (rebuild)
+final class RollupTotals {
+
+    final String id;
+    private final String grain;
+    private final String level;
+    private final String period;
+    private final Long userId;
+    private final String platform;
+    private final String platformContentId;
+
+    private long views;
+    private long likes;
+    private long comments;
+    private long samples;
+    private Long maxViews;
+    private Long maxLikes;
+    private Long maxComments;
+    private LocalDateTime lastAt;
+
+    RollupTotals(String grain, String level, String period, Long userId, String platform, String platformContentId) {
+        this.id = MetricsRollupService.rollupId(grain, level, period, userId, platform, platformContentId);
+        this.grain = grain;
+        this.level = level;
+        this.period = period;
+        this.userId = userId;
+        // Only the key fields of the level, so a user rollup doesn't carry the first content item it saw
+        this.platform = USER.equals(level) ? null : platform;
+        this.platformContentId = CONTENT.equals(level) ? platformContentId : null;
+    }
+
+    void add(Long views, Long likes, Long comments, long samples, Long maxViews, Long maxLikes, Long maxComments,
+             LocalDateTime lastAt) {
+        this.views += views != null ? views : 0;
+        this.likes += likes != null ? likes : 0;
+        this.comments += comments != null ? comments : 0;
+        this.samples += samples;
+        this.maxViews = max(this.maxViews, maxViews);
+        this.maxLikes = max(this.maxLikes, maxLikes);
+        this.maxComments = max(this.maxComments, maxComments);
+        if (lastAt != null && (this.lastAt == null || lastAt.isAfter(this.lastAt))) {
+            this.lastAt = lastAt;
+        }
+    }
+
+    // A $group result with views / likes / comments / samples sums, the max fields and lastAt
+    void add(Document total) {
+        Date last = total.get("lastAt", Date.class);
+        add(longOf(total.get("views")), longOf(total.get("likes")), longOf(total.get("comments")),
+                numberOf(total.get("samples")), longOf(total.get("maxViews")), longOf(total.get("maxLikes")),
+                longOf(total.get("maxComments")),
+                last != null ? LocalDateTime.ofInstant(last.toInstant(), ZoneId.systemDefault()) : null);
+    }
+
+    Update increment() {
+        Update update = keys(new Update())
+                .inc("views", views)
+                .inc("likes", likes)
+                .inc("comments", comments)
+                .inc("samples", samples);
+        if (maxViews != null) {
+            update.max("maxViews", maxViews);
+        }
+        if (maxLikes != null) {
+            update.max("maxLikes", maxLikes);
+        }
+        if (maxComments != null) {
+            update.max("maxComments", maxComments);
+        }
+        if (lastAt != null) {
+            update.max("lastAt", lastAt);
+        }
+        return update;
+    }
+
+    Update replacement() {
+        return keys(new Update())
+                .set("views", views)
+                .set("likes", likes)
+                .set("comments", comments)
+                .set("samples", samples)
+                .set("maxViews", maxViews)
+                .set("maxLikes", maxLikes)
+                .set("maxComments", maxComments)
+                .set("lastAt", lastAt);
+    }
+
+    private Update keys(Update update) {
+        return update
+                .setOnInsert("grain", grain)
+                .setOnInsert("level", level)
+                .setOnInsert("period", period)
+                .setOnInsert("userId", userId)
+                .setOnInsert("platform", platform)
+                .setOnInsert("platformContentId", platformContentId);
+    }
+
+    private static Long max(Long current, Long value) {
+        if (value == null) {
+            return current;
+        }
+        return current == null || value > current ? value : current;
+    }
+}
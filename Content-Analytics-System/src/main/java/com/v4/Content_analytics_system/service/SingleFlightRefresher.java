@@ -0,0 +1,133 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.exception.MetricsFetchException;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Coalesces refreshes of the same content: callers that come in while a fetch is running wait for it and get
+// the same snapshot, and for fresh-ms after a fetch the snapshot is handed out again without calling the platform.
+// Only the caller that really fetched stores the snapshot, so a dashboard click during a scheduled run is one document
+@Component
+public class SingleFlightRefresher {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleFlightRefresher.class);
+
+    private final MetricsService metricsService;
+
+    private final Map<String, CompletableFuture<ContentMetrics>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Recent> recent = new ConcurrentHashMap<>();
+
+    @Value("${metrics.refresh.single-flight.fresh-ms:10000}")
+    private long freshMs;
+
+    // Past this many remembered snapshots the expired ones are dropped
+    @Value("${metrics.refresh.single-flight.max-recent:10000}")
+    private int maxRecent;
+
+    public SingleFlightRefresher(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    // Fetch and save for the manual refresh endpoints
+    public ContentMetrics refresh(Content content) {
+        return execute(content, () -> metricsService.fetchMetricsForContent(content)).metrics();
+    }
+
+    // Runs fetch unless the same content is being fetched right now (waits for that one instead)
+    // or was fetched within the freshness window. shared = someone else's result, don't store it again
+    public Result execute(Content content, Supplier<ContentMetrics> fetch) {
+        String key = keyOf(content.getPlatform().getPlatformName(), content.getPlatformContentId());
+
+        ContentMetrics fresh = freshSnapshot(key);
+        if (fresh != null) {
+            return new Result(fresh, true);
+        }
+
+        CompletableFuture<ContentMetrics> mine = new CompletableFuture<>();
+        CompletableFuture<ContentMetrics> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            log.debug("Joining in-flight refresh of {}", key);
+            return new Result(await(running), true);
+        }
+
+        try {
+            // A flight may have finished between the first look and the putIfAbsent
+            fresh = freshSnapshot(key);
+            if (fresh != null) {
+                mine.complete(fresh);
+                return new Result(fresh, true);
+            }
+
+            ContentMetrics metrics = fetch.get();
+            remember(key, metrics);
+            mine.complete(metrics);
+            return new Result(metrics, false);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    // Snapshots fetched outside of execute() (the batched YouTube calls) count as fresh as well
+    public void remember(ContentMetrics metrics) {
+        remember(keyOf(metrics.getPlatform(), metrics.getPlatformContentId()), metrics);
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private void remember(String key, ContentMetrics metrics) {
+        if (freshMs <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (recent.size() >= maxRecent) {
+            recent.values().removeIf(r -> !r.isFresh(now, freshMs));
+        }
+        recent.put(key, new Recent(metrics, now));
+    }
+
+    private ContentMetrics freshSnapshot(String key) {
+        Recent hit = recent.get(key);
+        return hit != null && hit.isFresh(System.nanoTime(), freshMs) ? hit.metrics() : null;
+    }
+
+    // Rethrows the leader's exception as it was, so followers fail the same way
+    private ContentMetrics await(CompletableFuture<ContentMetrics> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new MetricsFetchException("Shared refresh failed: " + e.getCause());
+        }
+    }
+
+    private static String keyOf(String platform, String platformContentId) {
+        return platform + ":" + platformContentId;
+    }
+
+    public record Result(ContentMetrics metrics, boolean shared) {
+    }
+
+    private record Recent(ContentMetrics metrics, long fetchedAtNanos) {
+
+        boolean isFresh(long nowNanos, long freshMs) {
+            return nowNanos - fetchedAtNanos < freshMs * 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.scheduler.PartitionLeaseManager;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps the last stored snapshot per content so an unchanged one can extend that document instead of adding a new one.
+// Only snapshots of the same (UTC) day are folded together, so the per-day time series groups still see every retrieval.
+// In a cluster another node stores the snapshots of the partitions it holds, so the cache is dropped whenever this
+// node's partitions change. Entries don't know their partition, every one of them goes
+@Component
+public class SnapshotDeduplicator {
+
+    private final Map<String, LastSnapshot> latest = new ConcurrentHashMap<>();
+    private final PartitionLeaseManager leases;
+    // PartitionLeaseManager version the cache was built under
+    private final AtomicInteger leaseVersion = new AtomicInteger();
+
+    @Value("${metrics.dedupe.enabled:true}")
+    private boolean enabled;
+
+    // Time series collections compress repeated values themselves (and updating a measurement there
+    // means rewriting its whole bucket), buckets keep compact samples, so only the plain layout folds
+    @Value("${metrics.storage.layout:plain}")
+    private String storageLayout;
+
+    // Past this many contents new ones are just inserted, known ones keep being deduplicated
+    @Value("${metrics.dedupe.max-entries:500000}")
+    private int maxEntries;
+
+    public SnapshotDeduplicator(PartitionLeaseManager leases) {
+        this.leases = leases;
+        this.leaseVersion.set(leases.getVersion());
+    }
+
+    // Id of the stored document this snapshot repeats, or null when it has to be inserted.
+    // A snapshot that will be inserted gets its id here and becomes the new latest one
+    public String matchPrevious(ContentMetrics metrics) {
+        if (!enabled || !MetricsStorageConfig.foldsUnchangedSnapshots(storageLayout) || metrics.getPlatformContentId() == null || metrics.getRetrievalTimestamp() == null) {
+            return null;
+        }
+
+        // After a partition moved away (or came back) the last document we know may not be the last one stored
+        int version = leases.getVersion();
+        int seen = leaseVersion.get();
+        if (version != seen && leaseVersion.compareAndSet(seen, version)) {
+            latest.clear();
+        }
+
+        String key = keyOf(metrics);
+        LastSnapshot previous = latest.get(key);
+        if (previous != null && previous.sameAs(metrics)) {
+            return previous.documentId();
+        }
+
+        if (metrics.getId() == null) {
+            metrics.setId(new ObjectId().toHexString());
+        }
+        metrics.setSampleCount(1);
+
+        if (previous != null || latest.size() < maxEntries) {
+            latest.put(key, LastSnapshot.of(metrics));
+        }
+        return null;
+    }
+
+    // Write failed, so the cache may point at a document that is not there
+    public void forget(ContentMetrics metrics) {
+        if (metrics.getPlatformContentId() != null) {
+            latest.remove(keyOf(metrics));
+        }
+    }
+
+    public Query previousDocument(String documentId) {
+        return Query.query(Criteria.where("_id").is(documentId));
+    }
+
+    public Update extension(ContentMetrics metrics) {
+        return new Update()
+                .inc("sampleCount", 1)
+                .set("validUntil", metrics.getRetrievalTimestamp());
+    }
+
+    public int size() {
+        return latest.size();
+    }
+
+    private String keyOf(ContentMetrics metrics) {
+        return metrics.getPlatform() + ":" + metrics.getPlatformContentId();
+    }
+
+    // $dateToString in the time series aggregations groups by UTC day
+    private static LocalDate utcDay(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+    }
+
+
+    private record LastSnapshot(String documentId, LocalDate day, Long views, Long likes, Long comments,
+                                Long shares, Map<String, Object> platformSpecMetrics) {
+
+        static LastSnapshot of(ContentMetrics metrics) {
+            return new LastSnapshot(metrics.getId(), utcDay(metrics.getRetrievalTimestamp()),
+                    metrics.getViews(), metrics.getLikes(), metrics.getComments(), metrics.getShares(),
+                    metrics.getPlatformSpecMetrics() != null ? new HashMap<>(metrics.getPlatformSpecMetrics()) : Map.of());
+        }
+
+        boolean sameAs(ContentMetrics metrics) {
+            Map<String, Object> spec = metrics.getPlatformSpecMetrics() != null ? metrics.getPlatformSpecMetrics() : Map.of();
+            return day.equals(utcDay(metrics.getRetrievalTimestamp()))
+                    && Objects.equals(views, metrics.getViews())
+                    && Objects.equals(likes, metrics.getLikes())
+                    && Objects.equals(comments, metrics.getComments())
+                    && Objects.equals(shares, metrics.getShares())
+                    && platformSpecMetrics.equals(spec);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.v4.Content_analytics_system.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Copies the snapshots of the plain content_metrics collection into the time series collection, in _id order and in batches.
+// How far it got is kept in storage_migrations, so a restart continues where it stopped. The plain collection is left
+// as it is, drop it by hand once the numbers check out
+@Component
+public class TimeSeriesMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeSeriesMigration.class);
+
+    private static final String PROGRESS_COLLECTION = "storage_migrations";
+    private static final String MIGRATION_ID = MetricsStorageConfig.PLAIN_COLLECTION + "->" + MetricsStorageConfig.TIME_SERIES_COLLECTION;
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsStorageConfig storageConfig;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Runs in the background after startup, only when the time series layout is active
+    @Value("${metrics.storage.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${metrics.storage.migration.batch-size:1000}")
+    private int batchSize;
+
+    // Pause between batches so the copy doesn't crowd out the refresh writes
+    @Value("${metrics.storage.migration.pause-ms:50}")
+    private long pauseMs;
+
+    public TimeSeriesMigration(MongoTemplate mongoTemplate, MetricsStorageConfig storageConfig) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageConfig = storageConfig;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnReady() {
+        if (enabled && storageConfig.isTimeSeries()) {
+            Thread.ofVirtual().name("metrics-ts-migration").start(this::migrate);
+        }
+    }
+
+    // Returns the number of documents copied by this call
+    public long migrate() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Time series migration already running");
+            return 0;
+        }
+        try {
+            return copyAll();
+        } catch (Exception e) {
+            log.error("Time series migration stopped: {}", e.getMessage(), e);
+            return 0;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long copyAll() throws InterruptedException {
+        Document progress = mongoTemplate.findById(MIGRATION_ID, Document.class, PROGRESS_COLLECTION);
+        if (progress != null && "COMPLETED".equals(progress.getString("status"))) {
+            log.info("Time series migration already completed at {}", progress.get("finishedAt"));
+            return 0;
+        }
+
+        Object lastId = progress != null ? progress.get("lastId") : null;
+        long copied = progress != null ? progress.get("copied", Number.class).longValue() : 0;
+        long skipped = progress != null ? progress.get("skipped", Number.class).longValue() : 0;
+        long copiedNow = 0;
+        // A crash between the insert and the progress update would copy that batch twice, so the first batch after a resume
+        // leaves out what is already there
+        boolean resumed = lastId != null;
+
+        log.info("Time series migration {} from {}", resumed ? "resuming after _id " + lastId : "starting", MetricsStorageConfig.PLAIN_COLLECTION);
+
+        while (true) {
+            Query query = (lastId != null ? Query.query(Criteria.where("_id").gt(lastId)) : new Query())
+                    .with(Sort.by(Sort.Direction.ASC, "_id"))
+                    .limit(batchSize);
+            List<Document> batch = mongoTemplate.find(query, Document.class, MetricsStorageConfig.PLAIN_COLLECTION);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            Set<Object> alreadyCopied = resumed ? existingIds(batch) : Set.of();
+            resumed = false;
+
+            List<Document> converted = new ArrayList<>();
+            for (Document doc : batch) {
+                // The time field is required in a time series collection
+                if (doc.get(MetricsStorageConfig.TIME_FIELD) == null) {
+                    skipped++;
+                } else if (!alreadyCopied.contains(doc.get("_id"))) {
+                    converted.add(toTimeSeries(doc));
+                }
+            }
+
+            insert(converted);
+            copied += converted.size();
+            copiedNow += converted.size();
+            lastId = batch.get(batch.size() - 1).get("_id");
+            saveProgress(lastId, copied, skipped, "RUNNING");
+
+            log.debug("Time series migration copied {} documents so far (last _id {})", copied, lastId);
+            Thread.sleep(pauseMs);
+        }
+
+        saveProgress(lastId, copied, skipped, "COMPLETED");
+        log.info("Time series migration completed: {} documents copied ({} this run), {} without a timestamp skipped",
+                copied, copiedNow, skipped);
+        return copiedNow;
+    }
+
+    // Same document plus the meta field, the top level fields stay for the queries
+    private Document toTimeSeries(Document doc) {
+        Document meta = new Document("userId", doc.get("userId"))
+                .append("platform", doc.get("platform"))
+                .append("platformContentId", doc.get("platformContentId"));
+        return new Document(doc).append(MetricsStorageConfig.META_FIELD, meta);
+    }
+
+    private void insert(List<Document> docs) {
+        if (docs.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.getCollection(MetricsStorageConfig.TIME_SERIES_COLLECTION)
+                    .insertMany(docs, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Unordered: the rest of the batch is in, the progress still moves past it
+            log.error("Time series migration could not copy {} of {} documents: {}",
+                    e.getWriteErrors().size(), docs.size(), e.getMessage());
+        }
+    }
+
+    private Set<Object> existingIds(List<Document> batch) {
+        List<Object> ids = batch.stream().map(doc -> doc.get("_id")).toList();
+        Query query = Query.query(Criteria.where("_id").in(ids));
+        query.fields().include("_id");
+
+        Set<Object> existing = new HashSet<>();
+        for (Document doc : mongoTemplate.find(query, Document.class, MetricsStorageConfig.TIME_SERIES_COLLECTION)) {
+            existing.add(doc.get("_id"));
+        }
+        return existing;
+    }
+
+    private void saveProgress(Object lastId, long copied, long skipped, String status) {
+        Update update = new Update()
+                .set("lastId", lastId)
+                .set("copied", copied)
+                .set("skipped", skipped)
+                .set("status", status)
+                .set("updatedAt", LocalDateTime.now());
+        if ("COMPLETED".equals(status)) {
+            update.set("finishedAt", LocalDateTime.now());
+        }
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(MIGRATION_ID)), update, PROGRESS_COLLECTION);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+}
@@ -0,0 +1,49 @@
+package com.v4.Content_analytics_system.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.v4.Content_analytics_system.model.DTO.YoutubeVideoListResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams a videos.list response: binds one item at a time and skips every other top-level field unread
+@Component
+public class YoutubeResponseParser {
+
+    private final ObjectMapper objectMapper;
+
+    public YoutubeResponseParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public List<YoutubeVideoListResponse.Item> parseItems(InputStream in) throws IOException {
+        List<YoutubeVideoListResponse.Item> items = new ArrayList<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object from videos.list");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        items.add(objectMapper.readValue(parser, YoutubeVideoListResponse.Item.class));
+                    }
+                } else {
+                    // kind, etag, pageInfo, ... never get materialised
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return items;
+    }
+}
@@ -0,0 +1,278 @@
+package com.v4.Content_analytics_system.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.v4.Content_analytics_system.ratelimit.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process stand-in for the platform APIs, so the fetch path can be load tested without keys or network.
+// Serves YouTube videos.list, the Instagram media endpoint and TikTok video/query with the same JSON shapes,
+// each with its own latency, error rate and 429 throttling. The numbers are made up but stable per id
+// and they grow over time, like a real video that keeps getting views:
+//   /youtube/v3/videos?id=a,b   /instagram/{media-id}   POST /tiktok/v2/video/query/
+public class PlatformApiSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(PlatformApiSimulator.class);
+
+    // z-score of the 99th percentile, turns median + p99 into the log-normal sigma
+    private static final double Z_99 = 2.3263;
+
+    private final int requestedPort;
+    private final Map<String, Behaviour> platforms = new HashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long startMillis = System.currentTimeMillis();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public PlatformApiSimulator(int port, List<SimulatedPlatform> platforms) {
+        this.requestedPort = port;
+        for (SimulatedPlatform platform : platforms) {
+            this.platforms.put(platform.name().toLowerCase(), new Behaviour(platform));
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", requestedPort), 1024);
+        // Latency is a sleep, so one virtual thread per request keeps thousands of slow calls cheap
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/youtube/v3/videos", exchange -> handle(exchange, "youtube", this::youtubeVideos));
+        server.createContext("/instagram/", exchange -> handle(exchange, "instagram", this::instagramMedia));
+        server.createContext("/tiktok/v2/video/query/", exchange -> handle(exchange, "tiktok", this::tiktokVideos));
+        server.start();
+        log.info("Platform API simulator listening on {}", baseUrl());
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.close();
+            server = null;
+            log.info("Platform API simulator stopped: {}", stats());
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    // Requests, 429s and 500s per platform since start
+    public Map<String, Map<String, Long>> stats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        platforms.forEach((name, behaviour) -> stats.put(name, Map.of(
+                "requests", behaviour.requests.get(),
+                "throttled", behaviour.throttled.get(),
+                "errors", behaviour.errors.get())));
+        return stats;
+    }
+
+    private interface Responder {
+        Object respond(HttpExchange exchange) throws IOException;
+    }
+
+    // Throttle first (a 429 comes back fast, like the real thing), then latency, then the random 500s
+    private void handle(HttpExchange exchange, String platform, Responder responder) throws IOException {
+        try (exchange) {
+            Behaviour behaviour = platforms.getOrDefault(platform, new Behaviour(SimulatedPlatform.instant(platform)));
+            behaviour.requests.incrementAndGet();
+
+            if (behaviour.rateLimit != null && !behaviour.rateLimit.tryAcquire()) {
+                behaviour.throttled.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                write(exchange, 429, error(429, "rateLimitExceeded"));
+                return;
+            }
+
+            Thread.sleep(behaviour.sampleLatencyMs());
+
+            if (behaviour.settings.errorRate() > 0 && ThreadLocalRandom.current().nextDouble() < behaviour.settings.errorRate()) {
+                behaviour.errors.incrementAndGet();
+                write(exchange, 500, error(500, "backendError"));
+                return;
+            }
+
+            write(exchange, 200, responder.respond(exchange));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Simulator failed to answer {}: {}", exchange.getRequestURI(), e.getMessage());
+            write(exchange, 500, error(500, e.getMessage()));
+        }
+    }
+
+    private Object youtubeVideos(HttpExchange exchange) {
+        String ids = query(exchange).getOrDefault("id", "");
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            if (id.isBlank()) {
+                continue;
+            }
+            Counts counts = countsFor(id);
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            // Counts as strings, like YouTube sends them
+            statistics.put("viewCount", String.valueOf(counts.views()));
+            statistics.put("likeCount", String.valueOf(counts.likes()));
+            statistics.put("favoriteCount", "0");
+            statistics.put("commentCount", String.valueOf(counts.comments()));
+
+            Map<String, Object> snippet = new LinkedHashMap<>();
+            snippet.put("publishedAt", counts.publishedAt().toString());
+            snippet.put("channelId", "UC-simulated");
+            snippet.put("title", "Simulated video " + id);
+            snippet.put("channelTitle", "Simulator");
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("kind", "youtube#video");
+            item.put("id", id);
+            item.put("snippet", snippet);
+            item.put("statistics", statistics);
+            items.add(item);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("kind", "youtube#videoListResponse");
+        response.put("items", items);
+        response.put("pageInfo", Map.of("totalResults", items.size(), "resultsPerPage", items.size()));
+        return response;
+    }
+
+    private Object instagramMedia(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        String mediaId = path.substring(path.lastIndexOf('/') + 1);
+        Counts counts = countsFor(mediaId);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", mediaId);
+        response.put("like_count", counts.likes());
+        response.put("comments_count", counts.comments());
+        response.put("timestamp", counts.publishedAt().toString());
+        response.put("insights", Map.of("data", List.of(
+                insight("impressions", counts.views()),
+                insight("reach", counts.views() * 6 / 10),
+                insight("saved", counts.shares()))));
+        return response;
+    }
+
+    private Object tiktokVideos(HttpExchange exchange) throws IOException {
+        JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+        List<Map<String, Object>> videos = new ArrayList<>();
+        for (JsonNode id : body.path("filters").path("video_ids")) {
+            Counts counts = countsFor(id.asText());
+            Map<String, Object> video = new LinkedHashMap<>();
+            video.put("id", id.asText());
+            video.put("view_count", counts.views());
+            video.put("like_count", counts.likes());
+            video.put("comment_count", counts.comments());
+            video.put("share_count", counts.shares());
+            video.put("create_time", counts.publishedAt().getEpochSecond());
+            videos.add(video);
+        }
+        return Map.of(
+                "data", Map.of("videos", videos, "has_more", false),
+                "error", Map.of("code", "ok", "message", ""));
+    }
+
+    // Stable base numbers from the id, plus views that keep coming at an id specific pace (some ids stay flat)
+    private Counts countsFor(String id) {
+        long mixed = id.hashCode() * 0x9E3779B97F4A7C15L;
+        long seed = mixed ^ (mixed >>> 29);
+        long baseViews = 1_000 + Math.floorMod(seed, 1_000_000L);
+        double viewsPerSecond = Math.floorMod(seed >>> 20, 50L) / 10.0;
+        long elapsedSeconds = (System.currentTimeMillis() - startMillis) / 1000;
+
+        long views = baseViews + (long) (viewsPerSecond * elapsedSeconds);
+        Instant publishedAt = Instant.ofEpochSecond(1_600_000_000L + Math.floorMod(seed >>> 7, 100_000_000L));
+        return new Counts(views, views * 4 / 100, views / 200, views / 500, publishedAt);
+    }
+
+    private Map<String, Object> insight(String name, long value) {
+        return Map.of("name", name, "values", List.of(Map.of("value", value)));
+    }
+
+    private Map<String, Object> error(int code, String reason) {
+        return Map.of("error", Map.of("code", code, "message", String.valueOf(reason),
+                "errors", List.of(Map.of("reason", String.valueOf(reason)))));
+    }
+
+    private Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private void write(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private record Counts(long views, long likes, long comments, long shares, Instant publishedAt) {
+    }
+
+    private static class Behaviour {
+        private final SimulatedPlatform settings;
+        private final TokenBucket rateLimit;
+        private final double mu;
+        private final double sigma;
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        Behaviour(SimulatedPlatform settings) {
+            this.settings = settings;
+            this.rateLimit = settings.rateLimitPerSecond() > 0
+                    ? new TokenBucket(settings.rateLimitPerSecond(), settings.burst())
+                    : null;
+            double median = Math.max(0, settings.latencyMedianMs());
+            this.mu = median > 0 ? Math.log(median) : 0;
+            this.sigma = median > 0 && settings.latencyP99Ms() > median
+                    ? Math.log(settings.latencyP99Ms() / median) / Z_99
+                    : 0;
+        }
+
+        long sampleLatencyMs() {
+            if (settings.latencyMedianMs() <= 0) {
+                return 0;
+            }
+            return Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.v4.Content_analytics_system.simulator;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
+
+// Starts the simulator with the app under the simulator profile (part of the test and benchmark groups),
+// application-simulator.properties points the *.api.base-url properties at it
+@Configuration
+@Profile("simulator")
+public class PlatformApiSimulatorConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public PlatformApiSimulator platformApiSimulator(Environment environment) {
+        int port = environment.getProperty("platform.simulator.port", Integer.class, 18089);
+        return new PlatformApiSimulator(port, List.of(
+                settings(environment, "youtube"),
+                settings(environment, "instagram"),
+                settings(environment, "tiktok")));
+    }
+
+    // platform.simulator.<platform>.*, falling back to platform.simulator.default.*
+    private SimulatedPlatform settings(Environment environment, String platform) {
+        return new SimulatedPlatform(platform,
+                property(environment, platform, "latency-median-ms", 50.0),
+                property(environment, platform, "latency-p99-ms", 400.0),
+                property(environment, platform, "error-rate", 0.01),
+                property(environment, platform, "rate-limit-per-second", 0.0),
+                property(environment, platform, "burst", 50.0).intValue());
+    }
+
+    private Double property(Environment environment, String platform, String key, double defaultValue) {
+        Double value = environment.getProperty("platform.simulator." + platform + "." + key, Double.class);
+        return value != null ? value : environment.getProperty("platform.simulator.default." + key, Double.class, defaultValue);
+    }
+}
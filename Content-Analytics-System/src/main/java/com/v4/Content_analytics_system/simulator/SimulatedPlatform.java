@@ -0,0 +1,16 @@
+package com.v4.Content_analytics_system.simulator;
+
+// How one simulated platform behaves: log-normal latency (median / p99), a share of 500s,
+// and a token bucket past which requests get 429. rateLimitPerSecond <= 0 means never throttled
+public record SimulatedPlatform(
+        String name,
+        double latencyMedianMs,
+        double latencyP99Ms,
+        double errorRate,
+        double rateLimitPerSecond,
+        int burst) {
+
+    public static SimulatedPlatform instant(String name) {
+        return new SimulatedPlatform(name, 0, 0, 0, 0, 1);
+    }
+}
@@ -0,0 +1,131 @@
+package com.v4.Content_analytics_system.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.v4.Content_analytics_system.fetcher.FetcherRegistry;
+import com.v4.Content_analytics_system.fetcher.YoutubeMetricsFetcher;
+import com.v4.Content_analytics_system.model.DTO.MetricsBatchResult;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.model.entity.sql.Platform;
+import com.v4.Content_analytics_system.model.entity.sql.User;
+import com.v4.Content_analytics_system.ratelimit.PlatformThrottle;
+import com.v4.Content_analytics_system.scheduler.PartitionLeaseManager;
+import com.v4.Content_analytics_system.service.MetricsService;
+import com.v4.Content_analytics_system.service.SnapshotDeduplicator;
+import com.v4.Content_analytics_system.service.YoutubeResponseParser;
+import com.v4.Content_analytics_system.simulator.PlatformApiSimulator;
+import com.v4.Content_analytics_system.simulator.SimulatedPlatform;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// MetricsService fetch path (HTTP call, parsing, mapping) against the in-process platform simulator, offline and repeatable.
+// One call per video vs one videos.list call per 50, with and without simulated platform latency.
+// Throughput is calls/s, multiply the batch numbers by 50 for videos/s
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+public class FetchPathBenchmark {
+
+    @Param({"0", "50"})
+    private double latencyMedianMs;
+
+    private PlatformApiSimulator simulator;
+    private MetricsService metricsService;
+    private List<Content> batch;
+    private final AtomicLong nextId = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        simulator = new PlatformApiSimulator(0, List.of(
+                new SimulatedPlatform("youtube", latencyMedianMs, latencyMedianMs * 4, 0, 0, 1)));
+        simulator.start();
+
+        // Our own limits out of the way, this measures the fetch path and the simulated platform
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "metrics.ratelimit.default.permits-per-second", "100000",
+                "metrics.ratelimit.default.burst", "1000",
+                "metrics.refresh.concurrency.default", "64")));
+
+        PlatformThrottle throttle = new PlatformThrottle(environment, new SimpleMeterRegistry());
+        YoutubeMetricsFetcher youtubeFetcher = new YoutubeMetricsFetcher(
+                new RestTemplate(new JdkClientHttpRequestFactory()), new YoutubeResponseParser(new ObjectMapper()));
+        ReflectionTestUtils.setField(youtubeFetcher, "youtubeBaseUrl", simulator.baseUrl() + "/youtube/v3");
+        ReflectionTestUtils.setField(youtubeFetcher, "youtubeApiKey", "benchmark");
+
+        metricsService = new MetricsService(null, null, throttle,
+                new FetcherRegistry(List.of(youtubeFetcher), throttle, environment),
+                new SnapshotDeduplicator(new PartitionLeaseManager(null, false, 1, 30000, "benchmark")), null);
+
+        batch = new ArrayList<>();
+        for (int i = 0; i < YoutubeMetricsFetcher.MAX_BATCH; i++) {
+            batch.add(content("video" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        simulator.stop();
+    }
+
+    @Benchmark
+    public ContentMetrics singleVideo() {
+        return metricsService.fetchMetrics(content("video" + nextId.incrementAndGet() % 10_000));
+    }
+
+    @Benchmark
+    public MetricsBatchResult batchOf50() {
+        return metricsService.fetchMetricsBatch(batch);
+    }
+
+    private static Content content(String videoId) {
+        Platform platform = new Platform();
+        platform.setPlatformName("YouTube");
+        User user = new User();
+        user.setId(1L);
+
+        Content content = new Content();
+        content.setId(1L);
+        content.setPlatformContentId(videoId);
+        content.setPlatform(platform);
+        content.setUser(user);
+        return content;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FetchPathBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
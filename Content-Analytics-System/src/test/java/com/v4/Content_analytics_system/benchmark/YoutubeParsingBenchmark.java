@@ -0,0 +1,118 @@
+package com.v4.Content_analytics_system.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.v4.Content_analytics_system.model.DTO.YoutubeVideoListResponse;
+import com.v4.Content_analytics_system.service.YoutubeResponseParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Map-based parsing (the old fetchYoutubeMetrics path) vs typed records vs streaming, on a realistic videos.list body.
+// Run main() and compare gc.alloc.rate.norm (bytes per op) next to the timings.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YoutubeParsingBenchmark {
+
+    @Param({"1", "50"})
+    private int videos;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final YoutubeResponseParser streamingParser = new YoutubeResponseParser(objectMapper);
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = buildResponse(videos).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void mapPath(Blackhole bh) throws IOException {
+        Map<String, Object> response = objectMapper.readValue(body, Map.class);
+        List<Map<String, Object>> items = (List<Map<String, Object>>) response.get("items");
+        for (Map<String, Object> item : items) {
+            Map<String, Object> stats = (Map<String, Object>) item.get("statistics");
+            Map<String, Object> snippet = (Map<String, Object>) item.get("snippet");
+            bh.consume(Long.parseLong(stats.get("viewCount").toString()));
+            bh.consume(Long.parseLong(stats.get("likeCount").toString()));
+            bh.consume(Long.parseLong(stats.get("commentCount").toString()));
+            bh.consume(snippet.get("publishedAt"));
+        }
+    }
+
+    @Benchmark
+    public void typedPath(Blackhole bh) throws IOException {
+        YoutubeVideoListResponse response = objectMapper.readValue(body, YoutubeVideoListResponse.class);
+        for (YoutubeVideoListResponse.Item item : response.items()) {
+            consume(item, bh);
+        }
+    }
+
+    @Benchmark
+    public void streamingPath(Blackhole bh) throws IOException {
+        for (YoutubeVideoListResponse.Item item : streamingParser.parseItems(new ByteArrayInputStream(body))) {
+            consume(item, bh);
+        }
+    }
+
+    private void consume(YoutubeVideoListResponse.Item item, Blackhole bh) {
+        bh.consume(item.statistics().viewCount());
+        bh.consume(item.statistics().likeCount());
+        bh.consume(item.statistics().commentCount());
+        bh.consume(item.snippet().publishedAt());
+    }
+
+    // Shaped like a real response, with the description/thumbnails/tags we never read
+    private static String buildResponse(int count) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"kind\":\"youtube#videoListResponse\",\"etag\":\"abc\",\"items\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"kind\":\"youtube#video\",\"etag\":\"e").append(i).append("\",\"id\":\"vid").append(i).append("\",")
+                    .append("\"snippet\":{\"publishedAt\":\"2024-01-0").append(i % 9 + 1).append("T10:00:00Z\",")
+                    .append("\"channelId\":\"UC123\",\"title\":\"Video ").append(i).append("\",")
+                    .append("\"description\":\"").append("Lorem ipsum dolor sit amet. ".repeat(40)).append("\",")
+                    .append("\"thumbnails\":{\"default\":{\"url\":\"https://i.ytimg.com/vi/x/default.jpg\",\"width\":120,\"height\":90},")
+                    .append("\"high\":{\"url\":\"https://i.ytimg.com/vi/x/hq.jpg\",\"width\":480,\"height\":360}},")
+                    .append("\"channelTitle\":\"Channel\",\"tags\":[\"a\",\"b\",\"c\",\"d\"],\"categoryId\":\"22\",")
+                    .append("\"localized\":{\"title\":\"Video\",\"description\":\"").append("Localized text. ".repeat(20)).append("\"}},")
+                    .append("\"statistics\":{\"viewCount\":\"").append(1000 + i).append("\",\"likeCount\":\"").append(50 + i)
+                    .append("\",\"favoriteCount\":\"0\",\"commentCount\":\"").append(5 + i).append("\"}}");
+        }
+        sb.append("],\"pageInfo\":{\"totalResults\":").append(count).append(",\"resultsPerPage\":").append(count).append("}}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(YoutubeParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,164 @@
+package com.v4.Content_analytics_system.repository.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.config.MongoIndexConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.client.model.Aggregates.group;
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Every IContentMetricsRepository query shape has to be answered from an index, never with a collection scan
+@DataMongoTest
+@Import({MetricsStorageConfig.class, MongoIndexConfig.class})
+class ContentMetricsIndexTest {
+
+    private static final int USERS = 5;
+    private static final int ITEMS_PER_USER = 20;
+    private static final int SNAPSHOTS_PER_ITEM = 10;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoIndexConfig indexConfig;
+
+    private MongoCollection<Document> collection;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(ContentMetrics.class);
+        indexConfig.ensureContentMetricsIndexes();
+
+        List<ContentMetrics> snapshots = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.now().minusDays(SNAPSHOTS_PER_ITEM);
+        for (long user = 1; user <= USERS; user++) {
+            for (int item = 0; item < ITEMS_PER_USER; item++) {
+                for (int i = 0; i < SNAPSHOTS_PER_ITEM; i++) {
+                    ContentMetrics metrics = new ContentMetrics();
+                    metrics.setUserId(user);
+                    metrics.setPlatform(item % 2 == 0 ? "YouTube" : "TikTok");
+                    metrics.setPlatformContentId("video-" + user + "-" + item);
+                    metrics.setRetrievalTimestamp(start.plusDays(i));
+                    metrics.setViews((long) i * 100);
+                    metrics.setEngagementRate(i / 10.0);
+                    snapshots.add(metrics);
+                }
+            }
+        }
+        mongoTemplate.insertAll(snapshots);
+
+        collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ContentMetrics.class));
+    }
+
+    @Test
+    void everyIndexIsCreatedAtStartup() {
+        List<String> missing = MongoIndexConfig.missingIndexes(mongoTemplate.indexOps(ContentMetrics.class));
+        assertTrue(missing.isEmpty(), "Missing indexes: " + missing);
+    }
+
+    @Test
+    void startupCheckReportsDroppedIndex() {
+        mongoTemplate.indexOps(ContentMetrics.class).dropIndex("userId_retrievalTimestamp");
+
+        List<String> missing = MongoIndexConfig.missingIndexes(mongoTemplate.indexOps(ContentMetrics.class));
+        assertEquals(List.of("{\"userId\": 1, \"retrievalTimestamp\": 1}"), missing);
+    }
+
+    @Test
+    void noRepositoryQueryScansTheCollection() {
+        Date from = toDate(LocalDateTime.now().minusDays(5));
+        Date to = toDate(LocalDateTime.now());
+
+        // Same filters / sorts the derived queries and @Aggregation pipelines of IContentMetricsRepository run
+        Map<String, Document> plans = new LinkedHashMap<>();
+        plans.put("findByUserId", explain(eq("userId", 1L), null, 0));
+        plans.put("findByPlatform", explain(eq("platform", "YouTube"), null, 0));
+        plans.put("findByUserIdAndPlatform", explain(and(eq("userId", 1L), eq("platform", "YouTube")), null, 0));
+        plans.put("findByRetrievalTimestampBetween",
+                explain(and(gt("retrievalTimestamp", from), lt("retrievalTimestamp", to)), null, 0));
+        plans.put("findByUserIdAndRetrievalTimestampBetween",
+                explain(and(eq("userId", 1L), gt("retrievalTimestamp", from), lt("retrievalTimestamp", to)), null, 0));
+        plans.put("findByUserIdAndRetrievalTimestampAfter",
+                explain(and(eq("userId", 1L), gt("retrievalTimestamp", from)), null, 0));
+        plans.put("findTop5ByUserIdOrderByViewsDesc", explain(eq("userId", 1L), descending("views"), 5));
+        plans.put("findTop5ByUserIdOrderByEngagementRateDesc", explain(eq("userId", 1L), descending("engagementRate"), 5));
+        plans.put("findTopByPlatformContentIdOrderByRetrievalTimestampDesc",
+                explain(eq("platformContentId", "video-1-1"), descending("retrievalTimestamp"), 1));
+        plans.put("findTopByPlatformContentIdAndRetrievalTimestampBeforeOrderByRetrievalTimestampDesc",
+                explain(and(eq("platformContentId", "video-1-1"), lt("retrievalTimestamp", to)), descending("retrievalTimestamp"), 1));
+        plans.put("findByPlatformContentId", explain(eq("platformContentId", "video-1-1"), null, 0));
+        plans.put("findByPlatformContentIdOrderByRetrievalTimestampAsc",
+                explain(eq("platformContentId", "video-1-1"), ascending("retrievalTimestamp"), 0));
+
+        plans.put("sumViewsByUserId / platform comparison", explainAggregate(eq("userId", 1L)));
+        plans.put("getTimeSeriesData", explainAggregate(and(eq("userId", 1L), gte("retrievalTimestamp", from))));
+        plans.put("getTimeSeriesDataByPlatform",
+                explainAggregate(and(eq("userId", 1L), eq("platform", "YouTube"), gte("retrievalTimestamp", from))));
+        plans.put("sumViewsByPlatform", explainAggregate(eq("platform", "YouTube")));
+
+        List<String> scans = new ArrayList<>();
+        plans.forEach((query, plan) -> {
+            List<Document> winningPlans = new ArrayList<>();
+            collectWinningPlans(plan, winningPlans);
+            assertFalse(winningPlans.isEmpty(), "No winning plan in the explain output of " + query);
+            if (winningPlans.stream().anyMatch(winning -> winning.toJson().contains("COLLSCAN"))) {
+                scans.add(query);
+            }
+        });
+        assertTrue(scans.isEmpty(), "Queries doing a COLLSCAN: " + scans);
+    }
+
+    private Document explain(Bson filter, Bson sort, int limit) {
+        return collection.find(filter).sort(sort).limit(limit).explain();
+    }
+
+    private Document explainAggregate(Bson filter) {
+        return collection.aggregate(List.of(match(filter), group(null))).explain();
+    }
+
+    // Plain finds have queryPlanner.winningPlan at the top, aggregations nest it per stage (and per shard on a cluster)
+    private void collectWinningPlans(Object node, List<Document> winningPlans) {
+        if (node instanceof Document document) {
+            document.forEach((key, value) -> {
+                if ("winningPlan".equals(key) && value instanceof Document plan) {
+                    winningPlans.add(plan);
+                } else {
+                    collectWinningPlans(value, winningPlans);
+                }
+            });
+        } else if (node instanceof List<?> list) {
+            list.forEach(element -> collectWinningPlans(element, winningPlans));
+        }
+    }
+
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
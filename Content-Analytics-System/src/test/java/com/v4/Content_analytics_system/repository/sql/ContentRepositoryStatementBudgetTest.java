@@ -0,0 +1,117 @@
+package com.v4.Content_analytics_system.repository.sql;
+
+import com.v4.Content_analytics_system.model.entity.sql.Content;
+import com.v4.Content_analytics_system.model.entity.sql.Platform;
+import com.v4.Content_analytics_system.model.entity.sql.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Checks the refresh/dashboard/platform content queries stay within a SQL statement budget
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ContentRepositoryStatementBudgetTest {
+
+    private static final int CONTENT_COUNT = 10;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private IContentRepository contentRepository;
+
+    private Long userId;
+    private Long platformId;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setUsername("budget");
+        user.setEmail("budget@example.com");
+        user.setPassword("secret");
+        user.setName("Budget User");
+        entityManager.persist(user);
+
+        Platform platform = new Platform();
+        platform.setPlatformName("YouTube");
+        platform.setUser(user);
+        entityManager.persist(platform);
+
+        for (int i = 0; i < CONTENT_COUNT; i++) {
+            Content content = new Content();
+            content.setTitle("Video " + i);
+            content.setPlatformContentId("vid" + i);
+            content.setContentType(Content.ContentType.VIDEO);
+            content.setPlatform(platform);
+            content.setUser(user);
+            entityManager.persist(content);
+        }
+
+        // Starting every test with an empty persistence context, like a new request
+        entityManager.flush();
+        entityManager.clear();
+
+        userId = user.getId();
+        platformId = platform.getId();
+    }
+
+    @Test
+    void refreshQueryLoadsPlatformAndUserInOneStatement() {
+        assertStatementBudget(1, () -> touchAssociations(contentRepository.findAllWithPlatformAndUser()));
+    }
+
+    @Test
+    void dashboardQueryLoadsPlatformAndUserInOneStatement() {
+        assertStatementBudget(1, () -> touchAssociations(contentRepository.findByUserIdWithPlatformAndUser(userId)));
+    }
+
+    @Test
+    void platformContentQueryLoadsPlatformAndUserInOneStatement() {
+        assertStatementBudget(1, () -> touchAssociations(
+                contentRepository.findByPlatformIdAndUserIdWithPlatformAndUser(platformId, userId)));
+    }
+
+    @Test
+    void plainFindAllBlowsTheBudget() {
+        // The lazy associations of the plain query cost extra selects, which the budget has to catch
+        assertThrows(AssertionError.class,
+                () -> assertStatementBudget(1, () -> touchAssociations(contentRepository.findAll())));
+    }
+
+    // Same accesses MetricsService does per item
+    private void touchAssociations(List<Content> contents) {
+        assertTrue(contents.size() == CONTENT_COUNT, "expected every seeded content item");
+        for (Content c : contents) {
+            c.getPlatform().getPlatformName();
+            c.getUser().getUsername();
+        }
+    }
+
+    // Fails when the block prepares more SQL statements than the budget allows
+    private void assertStatementBudget(long budget, Runnable block) {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        block.run();
+
+        long used = stats.getPrepareStatementCount();
+        if (used > budget) {
+            throw new AssertionError("Statement budget exceeded: " + used + " statements, budget " + budget);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.v4.Content_analytics_system.scheduler;
+
+import com.v4.Content_analytics_system.model.entity.mongo.PartitionLease;
+import com.v4.Content_analytics_system.model.entity.mongo.RefreshNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two "app instances" sharing one Mongo: every content id must be fetched by exactly one of them,
+// and the survivor must take over when the other one stops heartbeating
+@DataMongoTest
+class PartitionLeaseManagerTest {
+
+    private static final int PARTITIONS = 8;
+    private static final long LEASE_TTL_MS = 1500;
+    private static final int CONTENT_COUNT = 1000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private PartitionLeaseManager nodeA;
+    private PartitionLeaseManager nodeB;
+
+    @BeforeEach
+    void setUp() {
+        clearCollections();
+        nodeA = new PartitionLeaseManager(mongoTemplate, true, PARTITIONS, LEASE_TTL_MS, "node-a");
+        nodeB = new PartitionLeaseManager(mongoTemplate, true, PARTITIONS, LEASE_TTL_MS, "node-b");
+    }
+
+    @AfterEach
+    void tearDown() {
+        clearCollections();
+    }
+
+    @Test
+    void twoNodesSplitThePartitionsWithoutDuplicateFetches() {
+        // A starts alone and takes everything, B joins, A gives back the extras, B picks them up
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+
+        Set<Integer> ownedByA = nodeA.getOwnedPartitions();
+        Set<Integer> ownedByB = nodeB.getOwnedPartitions();
+        assertEquals(PARTITIONS / 2, ownedByA.size());
+        assertEquals(PARTITIONS / 2, ownedByB.size());
+
+        Set<Integer> overlap = new HashSet<>(ownedByA);
+        overlap.retainAll(ownedByB);
+        assertTrue(overlap.isEmpty(), "Partitions held by both nodes: " + overlap);
+
+        Map<Long, AtomicInteger> fetches = simulateRefresh(List.of(nodeA, nodeB));
+        assertEquals(CONTENT_COUNT, fetches.size(), "Some content was not fetched by any node");
+        fetches.forEach((contentId, count) ->
+                assertEquals(1, count.get(), "Content " + contentId + " fetched " + count.get() + " times"));
+    }
+
+    @Test
+    void survivorTakesOverTheLeasesOfAStoppedNode() throws InterruptedException {
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+
+        // A stops heartbeating (crash, not a clean shutdown), its node entry and leases run out
+        Thread.sleep(LEASE_TTL_MS + 500);
+        nodeB.heartbeat();
+
+        assertEquals(PARTITIONS, nodeB.getOwnedPartitions().size());
+
+        // A comes back: it can't renew what B holds now, so there is still no overlap
+        nodeA.heartbeat();
+        Set<Integer> overlap = new HashSet<>(nodeA.getOwnedPartitions());
+        overlap.retainAll(nodeB.getOwnedPartitions());
+        assertTrue(overlap.isEmpty(), "Partitions held by both nodes: " + overlap);
+    }
+
+    @Test
+    void staleNodeStopsFetchingBeforeItsNextHeartbeat() throws InterruptedException {
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+
+        // A's heartbeat is held up (long job, GC pause) past the lease TTL, B takes over its partitions
+        Thread.sleep(LEASE_TTL_MS + 500);
+        nodeB.heartbeat();
+
+        // A hasn't heartbeated since, it must not fetch anything B now owns
+        assertTrue(nodeA.getOwnedPartitions().isEmpty(), "Stale node still claims " + nodeA.getOwnedPartitions());
+        Map<Long, AtomicInteger> fetches = simulateRefresh(List.of(nodeA, nodeB));
+        assertEquals(CONTENT_COUNT, fetches.size(), "Some content was not fetched by any node");
+        fetches.forEach((contentId, count) ->
+                assertEquals(1, count.get(), "Content " + contentId + " fetched " + count.get() + " times"));
+    }
+
+    // Each node "fetches" the content it owns, like MetricsScheduler does with leases.owns()
+    private Map<Long, AtomicInteger> simulateRefresh(List<PartitionLeaseManager> nodes) {
+        Map<Long, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        for (PartitionLeaseManager node : nodes) {
+            IntStream.rangeClosed(1, CONTENT_COUNT).parallel()
+                    .mapToObj(Long::valueOf)
+                    .filter(node::owns)
+                    .forEach(contentId -> fetches.computeIfAbsent(contentId, id -> new AtomicInteger()).incrementAndGet());
+        }
+        return fetches;
+    }
+
+    private void clearCollections() {
+        mongoTemplate.dropCollection(PartitionLease.class);
+        mongoTemplate.dropCollection(RefreshNode.class);
+    }
+}
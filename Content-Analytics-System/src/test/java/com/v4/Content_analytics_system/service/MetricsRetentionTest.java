@@ -0,0 +1,160 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Compaction may only change the resolution of the history, never the totals the endpoints show
+@DataMongoTest
+@Import({MetricsStorageConfig.class, MetricsBucketStore.class, MetricsRollupState.class,
+        MetricsRollupService.class, MetricsRollupIngest.class, MetricsRollupRebuilder.class, CompactedMetricsReader.class,
+        MetricsRetentionService.class, LatestMetricsStore.class, ContentMetricsHistory.class})
+@TestPropertySource(properties = {
+        "metrics.retention.enabled=true",
+        "metrics.retention.raw-days=2",
+        "metrics.retention.hourly-days=5",
+        "metrics.retention.batch-size=50",
+        "metrics.retention.pause-ms=0"
+})
+class MetricsRetentionTest {
+
+    private static final int DAYS = 12;
+    private static final int HOURS_BETWEEN_SNAPSHOTS = 5;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MetricsRollupService rollups;
+
+    @Autowired
+    private MetricsRollupState rollupState;
+
+    @Autowired
+    private MetricsRollupRebuilder rebuilder;
+
+    @Autowired
+    private MetricsRetentionService retention;
+
+    @Autowired
+    private ContentMetricsHistory history;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(ContentMetrics.class);
+        mongoTemplate.dropCollection(ContentMetricsRollup.class);
+        mongoTemplate.dropCollection(MetricsRollupState.COLLECTION);
+        mongoTemplate.dropCollection(LatestMetricsStore.COLLECTION);
+        rollupState.markLive();
+
+        List<ContentMetrics> stored = new ArrayList<>();
+        for (int item = 0; item < 3; item++) {
+            String platform = item == 2 ? "TikTok" : "YouTube";
+            int i = 0;
+            for (LocalDateTime at = now.minusDays(DAYS).plusHours(item); at.isBefore(now); at = at.plusHours(HOURS_BETWEEN_SNAPSHOTS), i++) {
+                ContentMetrics metrics = new ContentMetrics();
+                metrics.setUserId(1L);
+                metrics.setPlatform(platform);
+                metrics.setPlatformContentId("video-" + item);
+                metrics.setRetrievalTimestamp(at);
+                metrics.setViews(i * 37L + item);
+                metrics.setLikes(i * 3L);
+                metrics.setComments("TikTok".equals(platform) ? null : (long) i);
+                // Every third document stands for two unchanged retrievals
+                if (i % 3 == 0) {
+                    metrics.setSampleCount(2);
+                    metrics.setValidUntil(at.plusMinutes(5));
+                }
+                stored.add(metrics);
+            }
+        }
+        mongoTemplate.insertAll(stored);
+        rebuilder.catchUp(DAYS + 5);
+    }
+
+    @Test
+    void compactionKeepsTheTotals() throws InterruptedException {
+        LocalDateTime start = now.minusDays(DAYS + 1);
+        // In the hourly tier after the compaction
+        LocalDateTime partialStart = now.minusDays(4).truncatedTo(ChronoUnit.HOURS);
+        Map<String, List<Long>> series = totals(rollups.getTimeSeriesData(1L, null, start));
+        Map<String, List<Long>> platformSeries = totals(rollups.getTimeSeriesData(1L, "YouTube", partialStart));
+        long platformViews = history.sumViewsByPlatform("YouTube");
+        List<ContentMetrics> before = history.findByUserIdAndPlatform(1L, "YouTube");
+
+        assertTrue(retention.compact(DAYS + 5) > 0);
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        assertEquals(today.minusDays(3), rollupState.compactedThrough());
+        assertEquals(0, mongoTemplate.count(Query.query(Criteria.where("retrievalTimestamp").lt(rollupState.rawKeptFrom())), ContentMetrics.class));
+        assertEquals(0, mongoTemplate.count(Query.query(Criteria.where("grain").is(MetricsRollupService.HOUR)
+                .and("period").lt(today.minusDays(5).toString())), ContentMetricsRollup.class));
+
+        assertEquals(series, totals(rollups.getTimeSeriesData(1L, null, start)));
+        assertEquals(platformViews, history.sumViewsByPlatform("YouTube"));
+
+        // Hours start at the full hour, so a start on one gives the same partial first day
+        assertEquals(platformSeries, totals(rollups.getTimeSeriesData(1L, "YouTube", partialStart)));
+
+        // Coarser documents, same retrievals, and the mean counters lose at most the rounding
+        List<ContentMetrics> after = history.findByUserIdAndPlatform(1L, "YouTube");
+        assertTrue(after.size() < before.size());
+        assertEquals(samples(before), samples(after));
+        long views = weightedViews(before);
+        assertTrue(weightedViews(after) <= views && views - weightedViews(after) < samples(before));
+
+        // Oldest first across the tiers
+        List<ContentMetrics> item = history.findByPlatformContentIdOrderByRetrievalTimestampAsc("video-0");
+        for (int i = 1; i < item.size(); i++) {
+            assertTrue(!item.get(i).getRetrievalTimestamp().isBefore(item.get(i - 1).getRetrievalTimestamp()));
+        }
+
+        // Nothing left to do, nothing changes
+        assertEquals(0, retention.compact(DAYS + 5));
+        assertEquals(series, totals(rollups.getTimeSeriesData(1L, null, start)));
+    }
+
+    private static Map<String, List<Long>> totals(List<Map<String, Object>> series) {
+        Map<String, List<Long>> totals = new TreeMap<>();
+        for (Map<String, Object> point : series) {
+            totals.put(point.get("date").toString(), List.of(number(point.get("views")), number(point.get("likes")),
+                    number(point.get("comments"))));
+        }
+        return totals;
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    private static long samples(List<ContentMetrics> metrics) {
+        return metrics.stream().mapToLong(ContentMetrics::sampleWeight).sum();
+    }
+
+    private static long weightedViews(List<ContentMetrics> metrics) {
+        return metrics.stream().mapToLong(m -> (m.getViews() != null ? m.getViews() : 0) * m.sampleWeight()).sum();
+    }
+}
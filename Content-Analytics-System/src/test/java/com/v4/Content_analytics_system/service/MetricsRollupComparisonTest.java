@@ -0,0 +1,196 @@
+package com.v4.Content_analytics_system.service;
+
+import com.v4.Content_analytics_system.config.MetricsStorageConfig;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetrics;
+import com.v4.Content_analytics_system.model.entity.mongo.ContentMetricsRollup;
+import com.v4.Content_analytics_system.repository.mongo.IContentMetricsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// The rollups have to give exactly the numbers of the raw time series pipelines of IContentMetricsRepository
+@DataMongoTest
+@Import({MetricsStorageConfig.class, MetricsBucketStore.class, MetricsRollupState.class,
+        MetricsRollupService.class, MetricsRollupIngest.class, MetricsRollupRebuilder.class})
+class MetricsRollupComparisonTest {
+
+    private static final long USERS = 3;
+    private static final int ITEMS_PER_USER = 4;
+    private static final int DAYS = 20;
+    private static final int HOURS_BETWEEN_SNAPSHOTS = 7;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private IContentMetricsRepository metricsRepository;
+
+    @Autowired
+    private MetricsRollupService rollups;
+
+    @Autowired
+    private MetricsRollupState rollupState;
+
+    @Autowired
+    private MetricsRollupIngest rollupIngest;
+
+    @Autowired
+    private MetricsRollupRebuilder rebuilder;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    // Stored documents (unchanged retrievals folded into one with a sampleCount) and what ingest saw for them
+    private final List<ContentMetrics> stored = new ArrayList<>();
+    private final List<ContentMetrics> ingested = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(ContentMetrics.class);
+        mongoTemplate.dropCollection(ContentMetricsRollup.class);
+        mongoTemplate.dropCollection(MetricsRollupState.COLLECTION);
+        rollupState.markLive();
+
+        for (long user = 1; user <= USERS; user++) {
+            for (int item = 0; item < ITEMS_PER_USER; item++) {
+                String platform = item % 2 == 0 ? "YouTube" : "TikTok";
+                String contentId = "video-" + user + "-" + item;
+                int i = 0;
+                for (LocalDateTime at = now.minusDays(DAYS).plusHours(item); at.isBefore(now); at = at.plusHours(HOURS_BETWEEN_SNAPSHOTS), i++) {
+                    long views = i * 100L + user * 10 + item;
+                    // Every fourth document stands for three unchanged retrievals
+                    int samples = i % 4 == 0 ? 3 : 1;
+
+                    ContentMetrics doc = snapshot(user, platform, contentId, at, views);
+                    if (samples > 1) {
+                        doc.setSampleCount(samples);
+                        doc.setValidUntil(at);
+                    }
+                    stored.add(doc);
+                    for (int k = 0; k < samples; k++) {
+                        ingested.add(snapshot(user, platform, contentId, at, views));
+                    }
+                }
+            }
+        }
+        mongoTemplate.insertAll(stored);
+    }
+
+    @Test
+    void rebuiltRollupsGiveTheRawNumbers() {
+        rebuilder.catchUp(DAYS + 5);
+
+        List<LocalDateTime> starts = List.of(now.minusDays(DAYS + 1), now.minusDays(10).withHour(13).withMinute(37), now.minusHours(3));
+        for (long user = 1; user <= USERS; user++) {
+            for (LocalDateTime start : starts) {
+                assertSameSeries(metricsRepository.getTimeSeriesData(user, start),
+                        rollups.getTimeSeriesData(user, null, start));
+                for (String platform : List.of("YouTube", "TikTok")) {
+                    assertSameSeries(metricsRepository.getTimeSeriesDataByPlatform(user, platform, start),
+                            rollups.getTimeSeriesData(user, platform, start));
+                }
+
+                MetricsRollupService.Scope content = new MetricsRollupService.Scope(user, "YouTube", "video-" + user + "-0");
+                assertSameSeries(rollups.rawDaily(content, start, null), rollups.getDailySeries(content, start));
+            }
+        }
+    }
+
+    @Test
+    void ingestIncrementsMatchTheRebuild() {
+        // What the writers hand over after each flush, in one go here
+        rollupIngest.record(ingested);
+        Map<String, List<Long>> fromIngest = rollupTotals();
+
+        // Replaces every closed day and week with totals from the raw documents
+        rebuilder.catchUp(DAYS + 5);
+
+        assertEquals(fromIngest, rollupTotals());
+    }
+
+    @Test
+    void closedDaysAreReadFromTheRollups() {
+        rebuilder.catchUp(DAYS + 5);
+        LocalDateTime start = now.minusDays(DAYS + 1);
+        List<Map<String, Object>> before = rollups.getTimeSeriesData(1L, null, start);
+        assertFalse(before.isEmpty());
+
+        // Raw snapshots up to the day before yesterday (always rebuilt by now) are gone, their days come from the rollups
+        LocalDateTime cutoff = LocalDate.now(ZoneOffset.UTC).minusDays(1).atStartOfDay(ZoneOffset.UTC)
+                .withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        mongoTemplate.remove(Query.query(Criteria.where("retrievalTimestamp").lt(cutoff)), ContentMetrics.class);
+
+        assertSameSeries(before, rollups.getTimeSeriesData(1L, null, start));
+    }
+
+    @Test
+    void weeklySeriesAddsUpTheRawDays() {
+        rebuilder.catchUp(DAYS + 5);
+        LocalDateTime start = now.minusDays(DAYS - 3).withHour(5);
+
+        Map<String, List<Long>> expected = new TreeMap<>();
+        totals(metricsRepository.getTimeSeriesData(2L, start)).forEach((date, values) -> {
+            String week = LocalDate.parse(date).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).toString();
+            expected.merge(week, values, (a, b) -> List.of(a.get(0) + b.get(0), a.get(1) + b.get(1), a.get(2) + b.get(2)));
+        });
+
+        assertEquals(expected, totals(rollups.getWeeklySeries(new MetricsRollupService.Scope(2L, null, null), start)));
+    }
+
+    private ContentMetrics snapshot(long user, String platform, String contentId, LocalDateTime at, long views) {
+        ContentMetrics metrics = new ContentMetrics();
+        metrics.setUserId(user);
+        metrics.setPlatform(platform);
+        metrics.setPlatformContentId(contentId);
+        metrics.setRetrievalTimestamp(at);
+        metrics.setViews(views);
+        metrics.setLikes(views / 10);
+        // TikTok doesn't send comments here, the sums have to skip them the same way
+        metrics.setComments("TikTok".equals(platform) ? null : views / 50);
+        return metrics;
+    }
+
+    private Map<String, List<Long>> rollupTotals() {
+        Map<String, List<Long>> totals = new TreeMap<>();
+        for (ContentMetricsRollup rollup : mongoTemplate.findAll(ContentMetricsRollup.class)) {
+            totals.put(rollup.getId(), List.of(rollup.getViews(), rollup.getLikes(), rollup.getComments(),
+                    rollup.getSamples(), rollup.getMaxViews(), rollup.getMaxLikes()));
+        }
+        return totals;
+    }
+
+    private void assertSameSeries(List<Map<String, Object>> expected, List<Map<String, Object>> actual) {
+        assertEquals(totals(expected), totals(actual));
+    }
+
+    private static Map<String, List<Long>> totals(List<Map<String, Object>> series) {
+        Map<String, List<Long>> totals = new TreeMap<>();
+        for (Map<String, Object> point : series) {
+            totals.put(point.get("date").toString(), List.of(number(point.get("views")), number(point.get("likes")),
+                    number(point.get("comments"))));
+        }
+        return totals;
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+}
@@ -0,0 +1,92 @@
+package com.v4.Content_analytics_system.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.v4.Content_analytics_system.model.DTO.InstagramMediaResponse;
+import com.v4.Content_analytics_system.model.DTO.TiktokVideoQueryResponse;
+import com.v4.Content_analytics_system.model.DTO.YoutubeVideoListResponse;
+import com.v4.Content_analytics_system.service.YoutubeResponseParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The simulator must answer in the shapes our parsers read, and throttle / fail the way it was told to
+class PlatformApiSimulatorTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private PlatformApiSimulator simulator;
+
+    @AfterEach
+    void tearDown() {
+        simulator.stop();
+    }
+
+    @Test
+    void servesEveryPlatformInTheShapeOurParsersRead() throws Exception {
+        start(SimulatedPlatform.instant("youtube"), SimulatedPlatform.instant("instagram"), SimulatedPlatform.instant("tiktok"));
+
+        HttpResponse<byte[]> youtube = get("/youtube/v3/videos?part=statistics,snippet&id=a1,b2,c3&key=x");
+        List<YoutubeVideoListResponse.Item> items = new YoutubeResponseParser(objectMapper)
+                .parseItems(new ByteArrayInputStream(youtube.body()));
+        assertEquals(200, youtube.statusCode());
+        assertEquals(List.of("a1", "b2", "c3"), items.stream().map(YoutubeVideoListResponse.Item::id).toList());
+        assertTrue(items.get(0).statistics().viewCount() > 0);
+
+        HttpResponse<byte[]> instagram = get("/instagram/17890?fields=id,like_count&access_token=x");
+        InstagramMediaResponse media = objectMapper.readValue(instagram.body(), InstagramMediaResponse.class);
+        assertEquals("17890", media.id());
+        assertTrue(media.insight("impressions") > 0);
+
+        HttpResponse<byte[]> tiktok = client.send(HttpRequest.newBuilder(uri("/tiktok/v2/video/query/?fields=id,view_count"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"filters\":{\"video_ids\":[\"v1\",\"v2\"]}}"))
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        TiktokVideoQueryResponse videos = objectMapper.readValue(tiktok.body(), TiktokVideoQueryResponse.class);
+        assertEquals(2, videos.data().videos().size());
+    }
+
+    @Test
+    void answers429OncePastTheRateLimit() throws Exception {
+        start(new SimulatedPlatform("youtube", 0, 0, 0, 1, 3));
+
+        int throttled = 0;
+        for (int i = 0; i < 10; i++) {
+            if (get("/youtube/v3/videos?id=a1").statusCode() == 429) {
+                throttled++;
+            }
+        }
+
+        assertTrue(throttled >= 6, "Only " + throttled + " of 10 calls over a burst of 3 were throttled");
+        assertEquals((long) throttled, simulator.stats().get("youtube").get("throttled"));
+    }
+
+    @Test
+    void failsEveryCallAtFullErrorRate() throws Exception {
+        start(new SimulatedPlatform("instagram", 0, 0, 1.0, 0, 1));
+
+        assertEquals(500, get("/instagram/17890").statusCode());
+        assertEquals(1L, simulator.stats().get("instagram").get("errors"));
+    }
+
+    private void start(SimulatedPlatform... platforms) throws Exception {
+        simulator = new PlatformApiSimulator(0, List.of(platforms));
+        simulator.start();
+    }
+
+    private HttpResponse<byte[]> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private URI uri(String path) {
+        return URI.create(simulator.baseUrl() + path);
+    }
+}